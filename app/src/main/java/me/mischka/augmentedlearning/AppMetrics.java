@@ -0,0 +1,36 @@
+package me.mischka.augmentedlearning;
+
+import me.mischka.common.metrics.Metrics;
+
+/** The {@link Metrics} sections, counters and gauges recorded by the app. */
+final class AppMetrics {
+    // Sections.
+    static final int FRAME = Metrics.section("frame");
+    static final int TOUCH = Metrics.section("touch");
+    static final int HIT_TEST = Metrics.section("hitTest");
+    static final int ANCHOR = Metrics.section("anchor");
+    static final int MODEL_LOAD = Metrics.section("modelLoad");
+    static final int IMAGE_ADD = Metrics.section("imageAdd");
+    static final int DATABASE_RESTORE = Metrics.section("databaseRestore");
+
+    // Counters.
+    static final int COALESCED_MOVES = Metrics.counter("coalescedMoves");
+    static final int IMAGE_UPDATES = Metrics.counter("imageUpdates");
+    static final int ANCHORS_CREATED = Metrics.counter("anchorsCreated");
+    static final int DRIFT_REANCHORS = Metrics.counter("driftReanchors");
+    static final int NODES_SUSPENDED = Metrics.counter("nodesSuspended");
+    static final int NODES_RELEASED = Metrics.counter("nodesReleased");
+    static final int MODEL_EVICTIONS = Metrics.counter("modelEvictions");
+    static final int MODEL_LOAD_FAILURES = Metrics.counter("modelLoadFailures");
+    static final int TRANSLATE_UPDATES = Metrics.counter("translateUpdates");
+    static final int TWIST_UPDATES = Metrics.counter("twistUpdates");
+    static final int VERTICAL_ROTATE_UPDATES = Metrics.counter("verticalRotateUpdates");
+
+    // Gauges.
+    static final int MODEL_BUDGET_KB = Metrics.gauge("modelBudgetKb");
+    static final int MODEL_USED_KB = Metrics.gauge("modelUsedKb");
+    static final int LIVE_MODELS = Metrics.gauge("liveModels");
+
+    private AppMetrics() {
+    }
+}
@@ -0,0 +1,76 @@
+package me.mischka.augmentedlearning;
+
+import com.google.ar.core.AugmentedImage;
+import com.google.ar.core.Frame;
+import com.google.ar.core.Pose;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/** The augmented images ARCore updated in a {@link Frame}. */
+public class ArCoreTrackableFeed implements TrackableFeed {
+    private final List<AugmentedImage> copy = new ArrayList<>();
+    private List<AugmentedImage> images = copy;
+    private long timestampNanos;
+
+    /** Switches the feed to the images updated in {@code frame}. */
+    public void setFrame(Frame frame) {
+        Collection<AugmentedImage> updated = frame.getUpdatedTrackables(AugmentedImage.class);
+        // ARCore returns an ArrayList, which is read as is; anything else is copied once.
+        if (updated instanceof List && updated instanceof RandomAccess) {
+            // Not an unchecked cast: the element type stays the same.
+            images = (List<AugmentedImage>) updated;
+        } else {
+            copy.clear();
+            copy.addAll(updated);
+            images = copy;
+        }
+        timestampNanos = frame.getTimestamp();
+    }
+
+    /** Returns the ARCore image of {@code update}, to anchor nodes to. */
+    public AugmentedImage getImage(int update) {
+        return images.get(update);
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    @Override
+    public int getUpdateCount() {
+        return images.size();
+    }
+
+    @Override
+    public int getIndex(int update) {
+        return images.get(update).getIndex();
+    }
+
+    @Override
+    public String getName(int update) {
+        return images.get(update).getName();
+    }
+
+    @Override
+    public State getState(int update) {
+        switch (images.get(update).getTrackingState()) {
+            case TRACKING:
+                return State.TRACKING;
+            case STOPPED:
+                return State.STOPPED;
+            default:
+                return State.PAUSED;
+        }
+    }
+
+    @Override
+    public void getCenterPose(int update, float[] translation, float[] rotation) {
+        Pose pose = images.get(update).getCenterPose();
+        pose.getTranslation(translation, 0);
+        pose.getRotationQuaternion(rotation, 0);
+    }
+}
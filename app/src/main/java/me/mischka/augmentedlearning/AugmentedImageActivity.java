@@ -16,26 +16,30 @@
 
 package me.mischka.augmentedlearning;
 
-import android.content.Intent;
 import android.os.Bundle;
+import android.os.Looper;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.*;
 import android.widget.ImageView;
-import com.google.ar.core.AugmentedImage;
+import android.widget.TextView;
 import com.google.ar.core.Frame;
 import com.google.ar.core.TrackingState;
 import com.google.ar.sceneform.FrameTime;
-import com.google.ar.sceneform.HitTestResult;
 import com.google.ar.sceneform.Scene;
 import com.google.ar.sceneform.ux.ArFragment;
 import com.google.ar.sceneform.ux.TransformationSystem;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import me.mischka.common.metrics.Metrics;
+import me.mischka.common.metrics.StartupTrace;
 
 /**
  * This application demonstrates using augmented images to place anchor nodes. app to include image
@@ -44,73 +48,129 @@ import java.util.Map;
 public class AugmentedImageActivity extends AppCompatActivity {
 
     private static final String TAG = "AugmentedImageActivity";
-    private static final Map<String, String> assetPathMap;
-    static {
-        Map<String, String> map = new HashMap<>();
-        map.put("apple", "green-apples.sfb");
-        map.put("banana", "banana.sfb");
-        map.put("orange", "Orange.sfb");
-        map.put("pear", "pear_export.sfb");
-        map.put("pineapple", "pineapple.sfb");
-
-        map.put("blue-tang", "TropicalFish02.sfb");
-        map.put("clarks-anemonefish", "TropicalFish11.sfb");
-        map.put("clownfish", "TropicalFish12.sfb");
-        map.put("convict-cichlid", "TropicalFish06.sfb");
-        map.put("discus", "TropicalFish01.sfb");
-
-        map.put("eiffel-tower", "10067_Eiffel_Tower_v1_max2010_it1.sfb");
-        map.put("pisa", "pisa.sfb");
-        map.put("statue-of-liberty", "LibertStatue.sfb");
-        map.put("taj-mahal", "tajmahal.sfb");
-
-        map.put("arch", "bridge-a.sfb");
-        map.put("beam", "dock(formats).sfb");
-        map.put("simple-suspension", "bridge.sfb");
-        map.put("suspension", "GOLDGATE.sfb");
-
-        assetPathMap = Collections.unmodifiableMap(map);
-    }
+
+    /**
+     * Boolean extra that turns on {@link Metrics} and shows them on screen, e.g.
+     * {@code adb shell am start -n me.mischka.augmentedlearning/.AugmentedImageActivity --ez metrics true}.
+     */
+    public static final String EXTRA_METRICS = "metrics";
+
+    /**
+     * String extra naming the {@link PerformanceProfile} to run instead of the one chosen for the
+     * {@link DeviceTier}, e.g. {@code --es profile low_power}.
+     */
+    public static final String EXTRA_PROFILE = "profile";
+
+    private static final float METRICS_OVERLAY_INTERVAL_SECONDS = 1f;
 
     private ArFragment arFragment;
     private ImageView fitToScanView;
     private FloatingActionButton fab;
+    private TextView metricsOverlay;
+    private final StringBuilder metricsText = new StringBuilder();
+    private float secondsSinceMetricsOverlay;
     private TransformationSystem transformationSystem;
+    private ModelWarmup modelWarmup;
 
     private TwoFingerDragGestureRecognizer twoFingerDragGestureRecognizer;
+    private TwoFingerTwistGestureRecognizer twoFingerTwistGestureRecognizer;
+
+    // Fans peeked touches out to the recognizers, with move events coalesced per frame.
+    private final TouchDispatcher touchDispatcher = new TouchDispatcher();
+
+    // Augmented images and their associated center pose anchors, addressed by database index.
+    private AugmentedImageRegistry registry;
+    private AugmentedImageLifecycleManager lifecycleManager;
+    private VisibilityScheduler visibilityScheduler;
+    private final ArCoreTrackableFeed imageFeed = new ArCoreTrackableFeed();
+    private final ImageFeedProcessor imageFeedProcessor = new ImageFeedProcessor(new ImageFeedProcessor.Listener() {
+        @Override
+        public void onImageTracking(TrackableFeed feed, int update) {
+            trackImage(feed, update);
+        }
 
-    private Scene.OnPeekTouchListener peekTouchListener = new Scene.OnPeekTouchListener() {
         @Override
-        public void onPeekTouch(HitTestResult hitTestResult, MotionEvent motionEvent) {
-            arFragment.onPeekTouch(hitTestResult, motionEvent);
-            twoFingerDragGestureRecognizer.onTouch(hitTestResult, motionEvent);
+        public void onImageStopped(int index) {
+            lifecycleManager.onStopped(index);
         }
-    };
+    });
+    private ModelAdmission modelAdmission;
+    private boolean showingAugmentedImages;
 
-    // Augmented image and its associated center pose anchor, keyed by the augmented image in
-    // the database.
-    private final Map<AugmentedImage, AugmentedImageNodeAnchor> augmentedImageMap = new HashMap<>();
+    // Start-up milestones still to be reached, see StartupTrace.
+    private boolean frameSeen;
+    private boolean trackingReady;
+    private DeviceTier deviceTier;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTrace.mark("activityCreate");
         setContentView(R.layout.activity_main);
+        StartupTrace.mark("contentView");
 
 
         arFragment = (ArFragment) getSupportFragmentManager().findFragmentById(R.id.ux_fragment);
         fitToScanView = findViewById(R.id.image_view_fit_to_scan);
         fab = findViewById(R.id.clear_button);
+        metricsOverlay = findViewById(R.id.metrics_overlay);
+        if (getIntent().getBooleanExtra(EXTRA_METRICS, false)) {
+            Metrics.setEnabled(true);
+            metricsOverlay.setVisibility(View.VISIBLE);
+        }
         fab.setOnClickListener(view -> {
-            resetView();
+            resetView(false);
+        });
+        fab.setOnLongClickListener(view -> {
+            resetView(true);
+            return true;
         });
 
 
+        registry = new AugmentedImageRegistry(ContentManifest.load(this));
+        ContentPacks contentPacks = new ContentPacks(this, registry.getManifest());
+        deviceTier = DeviceTier.of(this);
+        ModelRenderableCache cache = ModelRenderableCache.getInstance(this);
+        cache.setContentPacks(contentPacks);
+        cache.setByteBudget(deviceTier.getModelCacheBytes());
+        modelAdmission = new ModelAdmission(registry, cache, deviceTier.getLiveModelBytes());
+        setPerformanceProfile(PerformanceProfile.parse(
+                getIntent().getStringExtra(EXTRA_PROFILE), PerformanceProfile.forTier(deviceTier)));
+        Log.d(TAG, "Device tier " + deviceTier);
+        modelWarmup = new ModelWarmup(this, registry);
+
         transformationSystem = arFragment.getTransformationSystem();
         twoFingerDragGestureRecognizer = new TwoFingerDragGestureRecognizer(transformationSystem.getGesturePointersUtility());
+        twoFingerTwistGestureRecognizer = new TwoFingerTwistGestureRecognizer(transformationSystem.getGesturePointersUtility());
 
         Scene scene = arFragment.getArSceneView().getScene();
+        lifecycleManager = new AugmentedImageLifecycleManager(
+                this, scene, transformationSystem, twoFingerDragGestureRecognizer, twoFingerTwistGestureRecognizer,
+                registry, modelAdmission);
+        visibilityScheduler = new VisibilityScheduler(registry, lifecycleManager);
+        // Ahead of the fragment, so the twist retains its pointers before Sceneform's own twist
+        // recognizer, which can't be removed, would start on them.
+        touchDispatcher.addListener(twoFingerTwistGestureRecognizer::onTouch);
+        touchDispatcher.addListener(arFragment::onPeekTouch);
+        touchDispatcher.addListener(twoFingerDragGestureRecognizer::onTouch);
+        // Registered first, so gestures have moved the nodes before the frame is updated.
+        scene.addOnUpdateListener(touchDispatcher);
         scene.addOnUpdateListener(this::onUpdateFrame);
-        scene.addOnPeekTouchListener(peekTouchListener);
+        scene.addOnPeekTouchListener(touchDispatcher);
+
+        // Not needed until an image is detected, which can't happen before the image database has
+        // loaded in the background, so it waits for the first idle moment rather than delaying the
+        // first frame.
+        Looper.myQueue().addIdleHandler(() -> {
+            List<String> missingPacks = contentPacks.retainInstalled(registry);
+            if (!missingPacks.isEmpty()) {
+                Log.i(TAG, "Content packs not installed: " + missingPacks);
+            }
+            modelWarmup.load();
+            StartupTrace.mark("deferredInit");
+            return false;
+        });
+        StartupTrace.mark("activityCreated");
         Log.d(TAG, "onCreate");
 
     }
@@ -118,66 +178,198 @@ public class AugmentedImageActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        if (augmentedImageMap.isEmpty()) {
+        if (lifecycleManager.getAttachedNodeCount() == 0) {
             fitToScanView.setVisibility(View.VISIBLE);
             fab.setVisibility(View.GONE);
+            showingAugmentedImages = false;
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        touchDispatcher.cancelPending();
+        modelWarmup.save();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Left before an image was found; report how far start-up got. The camera permission
+        // dialog only pauses the activity, and the ARCore install flow stops it before there is a
+        // session, so neither ends start-up unless the activity is finishing.
+        if (isFinishing() || arFragment.getArSceneView().getSession() != null) {
+            reportStartup(false);
         }
     }
 
     /**
      * Registered with the Sceneform Scene object, this method is called at the start of each frame.
      *
+     * <p>Images are addressed by their database index only, so that once every visible image has
+     * its node the loop does no lookups by name and allocates nothing of its own.
+     *
      * @param frameTime - time since last frame.
      */
     private void onUpdateFrame(FrameTime frameTime) {
+        if (!frameSeen) {
+            frameSeen = true;
+            StartupTrace.mark("firstFrame");
+        }
+        long start = Metrics.begin(AppMetrics.FRAME);
+        updateFrame();
+        Metrics.end(AppMetrics.FRAME, start);
+
+        if (metricsOverlay.getVisibility() == View.VISIBLE) {
+            secondsSinceMetricsOverlay += frameTime.getDeltaSeconds();
+            if (secondsSinceMetricsOverlay >= METRICS_OVERLAY_INTERVAL_SECONDS) {
+                secondsSinceMetricsOverlay = 0;
+                metricsText.setLength(0);
+                Metrics.summarize(metricsText);
+                metricsOverlay.setText(metricsText);
+            }
+        }
+    }
+
+    private void updateFrame() {
         Frame frame = arFragment.getArSceneView().getArFrame();
 
         // If there is no frame or ARCore is not tracking yet, just return.
         if (frame == null || frame.getCamera().getTrackingState() != TrackingState.TRACKING) {
             return;
         }
+        if (!trackingReady) {
+            trackingReady = true;
+            StartupTrace.mark("firstTracking");
+        }
 
-        Collection<AugmentedImage> updatedAugmentedImages =
-                frame.getUpdatedTrackables(AugmentedImage.class);
-        for (AugmentedImage augmentedImage : updatedAugmentedImages) {
-            switch (augmentedImage.getTrackingState()) {
-                case PAUSED:
-                    // When an image is in PAUSED state, but the camera is not PAUSED, it has been detected,
-                    // but not yet tracked.
-                    // String text = "Detected Image " + augmentedImage.getIndex();
-                    // SnackbarHelper.getInstance().showMessage(this, text);
-                    break;
-
-                case TRACKING:
-                    // Have to switch to UI Thread to update View.
-                    fitToScanView.setVisibility(View.GONE);
-                    fab.setVisibility(View.VISIBLE);
-
-                    // Create a new anchor for newly found images.
-                    if (!augmentedImageMap.containsKey(augmentedImage)) {
-                        AugmentedImageNodeAnchor anchorNode = new AugmentedImageNodeAnchor(
-                                this,
-                                transformationSystem,
-                                assetPathMap.get(augmentedImage.getName()),
-                                twoFingerDragGestureRecognizer
-                        );
-                        anchorNode.setImage(augmentedImage);
-                        augmentedImageMap.put(augmentedImage, anchorNode);
-                        arFragment.getArSceneView().getScene().addChild(anchorNode);
-                    }
-                    break;
-
-                case STOPPED:
-                    augmentedImageMap.remove(augmentedImage);
-                    break;
+        imageFeed.setFrame(frame);
+        if (imageFeed.getUpdateCount() > 0) {
+            Metrics.add(AppMetrics.IMAGE_UPDATES, imageFeed.getUpdateCount());
+            imageFeedProcessor.process(imageFeed);
+        }
+        visibilityScheduler.update(frame);
+    }
+
+    private void trackImage(TrackableFeed feed, int update) {
+        if (!showingAugmentedImages) {
+            // Have to switch to UI Thread to update View.
+            fitToScanView.setVisibility(View.GONE);
+            fab.setVisibility(View.VISIBLE);
+            showingAugmentedImages = true;
+            StartupTrace.mark("firstImage");
+            reportStartup(true);
+        }
+
+        // Anchor newly found images, reusing their node if they have been seen before.
+        int index = feed.getIndex(update);
+        if (!registry.isResolved(index)) {
+            // Not in the content manifest, so it was added at runtime, if it has a model at all.
+            String name = feed.getName(update);
+            String modelPath = ((AugmentedImageFragment) arFragment).getImageStore().findModelPath(name);
+            registry.resolve(index, name, modelPath);
+            if (modelPath == null) {
+                Log.w(TAG, "No content for image " + name);
+            }
+        }
+        long timestampNanos = feed.getTimestampNanos();
+        if (lifecycleManager.onTracking(imageFeed.getImage(update), timestampNanos)) {
+            modelWarmup.onImageTracked(index);
+        }
+        visibilityScheduler.onImageUpdated(index, timestampNanos);
+    }
+
+    /**
+     * Logs the start-up milestones, once per process, along with what sets the pace of start-up:
+     * the build, the device tier and the performance profile. Compare runs with {@code make
+     * startup-trace}.
+     */
+    private void reportStartup(boolean complete) {
+        StartupTrace.report("version=" + BuildConfig.VERSION_NAME
+                + " tier=" + deviceTier
+                + " profile=" + ((AugmentedImageFragment) arFragment).getPerformanceProfile()
+                + " complete=" + complete);
+    }
+
+    /**
+     * Adds the image file {@code source}, printed {@code physicalWidth} meters wide, for this and
+     * later launches, showing the model at {@code modelPath} on it. See {@link
+     * AugmentedImageFragment#addImage}.
+     */
+    @SuppressWarnings({"AndroidApiChecker"})
+    public CompletableFuture<Integer> addImage(String name, File source, float physicalWidth, String modelPath) {
+        return ((AugmentedImageFragment) arFragment).addImage(name, source, physicalWidth, modelPath)
+                .thenApply(index -> {
+                    registry.resolve(index, name, modelPath);
+                    return index;
+                });
+    }
+
+    /**
+     * Switches the AR session, the Sceneform view and models loaded from now on to {@code profile}.
+     * Must be called on the UI thread.
+     */
+    private void setPerformanceProfile(PerformanceProfile profile) {
+        ((AugmentedImageFragment) arFragment).setPerformanceProfile(profile);
+        ModelRenderableCache.getInstance(this).setShadowsEnabled(profile.isShadowsEnabled());
+        Log.i(TAG, "Performance profile " + profile);
+    }
+
+    /**
+     * Prints the performance profile and the {@link Metrics}. Pass {@code enable}, {@code disable}
+     * or {@code reset} to change the metrics first, or {@code profile=<name>} to switch profiles, e.g.
+     * {@code adb shell dumpsys activity me.mischka.augmentedlearning/.AugmentedImageActivity reset}.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        List<String> commands = Arrays.asList(args != null ? args : new String[0]);
+        if (commands.contains("enable")) {
+            Metrics.setEnabled(true);
+        }
+        if (commands.contains("disable")) {
+            Metrics.setEnabled(false);
+        }
+        if (commands.contains("reset")) {
+            Metrics.reset();
+        }
+        for (String command : commands) {
+            if (command.startsWith("profile=")) {
+                PerformanceProfile profile = PerformanceProfile.parse(command.substring("profile=".length()), null);
+                if (profile != null) {
+                    // dump is called on a binder thread.
+                    runOnUiThread(() -> setPerformanceProfile(profile));
+                }
             }
         }
+        writer.println(prefix + "Performance profile: "
+                + ((AugmentedImageFragment) arFragment).getPerformanceProfile());
+        writer.println(prefix + "Tracking images: " + imageFeedProcessor.getTrackingCount());
+        Metrics.dump(writer, prefix);
     }
 
-    private void resetView() {
-        Intent i = new Intent(AugmentedImageActivity.this, AugmentedImageActivity.class);
-        i.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK|Intent.FLAG_ACTIVITY_CLEAR_TASK);
-        startActivity(i);
+    /**
+     * Clears every placed model and goes back to the fit-to-scan state, keeping the AR session, the
+     * image database and loaded models.
+     *
+     * @param resetTracking - also make ARCore forget the images it is tracking, so they have to be
+     *     detected again.
+     */
+    private void resetView(boolean resetTracking) {
+        lifecycleManager.releaseAll();
+        registry.clearNodes();
+        modelAdmission.clear();
+        visibilityScheduler.reset();
+        modelWarmup.resetSession();
+
+        if (resetTracking) {
+            ((AugmentedImageFragment) arFragment).resetTracking();
+            imageFeedProcessor.reset();
+        }
+
+        fitToScanView.setVisibility(View.VISIBLE);
+        fab.setVisibility(View.GONE);
+        showingAugmentedImages = false;
     }
 
 }
@@ -16,13 +16,19 @@
 
 package me.mischka.augmentedlearning;
 
+import me.mischka.common.helpers.ByteBufferInputStream;
 import me.mischka.common.helpers.SnackbarHelper;
+import me.mischka.common.metrics.StartupTrace;
 
 import android.app.ActivityManager;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -31,9 +37,20 @@ import android.view.ViewGroup;
 import com.google.ar.core.AugmentedImageDatabase;
 import com.google.ar.core.Config;
 import com.google.ar.core.Session;
+import com.google.ar.core.exceptions.CameraNotAvailableException;
 import com.google.ar.sceneform.ux.ArFragment;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Extend the ArFragment to customize the ARCore session configuration to include Augmented Images.
@@ -45,12 +62,35 @@ public class AugmentedImageFragment extends ArFragment {
   private static final String IMAGE_DATABASE = "models.imgdb";
 
   // Do a runtime check for the OpenGL level available at runtime to avoid Sceneform crashing the
-  // application.
-  private static final double MIN_OPENGL_VERSION = 3.0;
+  // application. Encoded as in ConfigurationInfo.reqGlEsVersion: major version in the upper 16 bits.
+  private static final int MIN_OPENGL_VERSION = 0x30000;
+
+  private static final ExecutorService DATABASE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+  // Raw bytes of IMAGE_DATABASE, shared by every session in the process.
+  private static ByteBuffer databaseBytes;
+
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  private ImageDatabaseStore imageStore;
+
+  // A database is never shared between threads: the one configured on the session is only used on
+  // the UI thread, and images are added to a separate instance, which only DATABASE_EXECUTOR
+  // touches, and handed over as a copy.
+  @Nullable private AugmentedImageDatabase workerDatabase;
+  @Nullable private Session workerSession;
+
+  // The session the database was deserialized for, and the result once it is ready.
+  @Nullable private Session databaseSession;
+  @Nullable private AugmentedImageDatabase augmentedImageDatabase;
+  @Nullable private Config pendingConfig;
+
+  private PerformanceProfile performanceProfile = PerformanceProfile.BALANCED;
 
   @Override
   public void onAttach(Context context) {
     super.onAttach(context);
+    imageStore = new ImageDatabaseStore(context.getApplicationContext());
 
     // Check for Sceneform being supported on this device.  This check will be integrated into
     // Sceneform eventually.
@@ -60,17 +100,24 @@ public class AugmentedImageFragment extends ArFragment {
           .showError(getActivity(), "Sceneform requires Android N or later");
     }
 
-    String openGlVersionString =
+    // Compared as a number, rather than parsing getGlEsVersion(), since this is on the start-up path.
+    int openGlVersion =
         ((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE))
             .getDeviceConfigurationInfo()
-            .getGlEsVersion();
-    if (Double.parseDouble(openGlVersionString) < MIN_OPENGL_VERSION) {
+            .reqGlEsVersion;
+    if (openGlVersion < MIN_OPENGL_VERSION) {
       Log.e(TAG, "Sceneform requires OpenGL ES 3.0 or later");
       SnackbarHelper.getInstance()
           .showError(getActivity(), "Sceneform requires OpenGL ES 3.0 or later");
     }
   }
 
+  @Override
+  public void onResume() {
+    super.onResume();
+    StartupTrace.mark("sessionResumed");
+  }
+
   @Override
   public View onCreateView(
       LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
@@ -80,12 +127,16 @@ public class AugmentedImageFragment extends ArFragment {
     getPlaneDiscoveryController().hide();
     getPlaneDiscoveryController().setInstructionView(null);
     getArSceneView().getPlaneRenderer().setEnabled(false);
+    getArSceneView().setLightEstimationEnabled(performanceProfile.isLightEstimationEnabled());
+    StartupTrace.mark("sceneViewCreated");
     return view;
   }
 
   @Override
   protected Config getSessionConfiguration(Session session) {
+    StartupTrace.mark("sessionCreated");
     Config config = super.getSessionConfiguration(session);
+    performanceProfile.apply(config);
     if (!setupAugmentedImageDatabase(config, session)) {
       SnackbarHelper.getInstance()
           .showError(getActivity(), "Could not set up augmented image database");
@@ -93,23 +144,245 @@ public class AugmentedImageFragment extends ArFragment {
     return config;
   }
 
+  public PerformanceProfile getPerformanceProfile() {
+    return performanceProfile;
+  }
+
+  /**
+   * Switches the session and the Sceneform view to {@code profile}. Before the session exists this
+   * only picks the profile it is created with; afterwards the running session is reconfigured,
+   * which like {@link #resetTracking} makes ARCore detect the images again.
+   */
+  public void setPerformanceProfile(PerformanceProfile profile) {
+    if (profile == performanceProfile) {
+      return;
+    }
+    performanceProfile = profile;
+    if (getArSceneView() != null) {
+      getArSceneView().setLightEstimationEnabled(profile.isLightEstimationEnabled());
+    }
+    reconfigure();
+  }
+
+  /**
+   * Reconfigures the running session so that ARCore drops the augmented images it is tracking,
+   * without recreating the session or the Sceneform view.
+   */
+  public void resetTracking() {
+    reconfigure();
+  }
+
+  private void reconfigure() {
+    Session session = getArSceneView() != null ? getArSceneView().getSession() : null;
+    if (session == null) {
+      return;
+    }
+
+    getArSceneView().pause();
+    session.configure(getSessionConfiguration(session));
+    try {
+      getArSceneView().resume();
+    } catch (CameraNotAvailableException e) {
+      Log.e(TAG, "Camera not available after reconfiguring the session.", e);
+      SnackbarHelper.getInstance().showError(getActivity(), "Camera not available");
+    }
+  }
+
+  /** Returns the images added with {@link #addImage}. */
+  public ImageDatabaseStore getImageStore() {
+    return imageStore;
+  }
+
+  /**
+   * Adds the image file {@code source}, printed {@code physicalWidth} meters wide, to the database,
+   * and keeps it for later launches. Features are extracted on the database thread, into the
+   * database thread's own instance of the database, and the session is reconfigured on the UI
+   * thread with a copy of it afterwards. The database must have been loaded.
+   *
+   * @return a future completed on the UI thread with the index of the image.
+   */
+  @SuppressWarnings({"AndroidApiChecker"})
+  public CompletableFuture<Integer> addImage(
+      String name, File source, float physicalWidth, @Nullable String modelPath) {
+    CompletableFuture<Integer> result = new CompletableFuture<>();
+    Session session = databaseSession;
+    Context context = getContext();
+    if (session == null || augmentedImageDatabase == null || context == null) {
+      result.completeExceptionally(
+          new IllegalStateException("The augmented image database is not loaded"));
+      return result;
+    }
+
+    ImageDatabaseStore store = imageStore;
+    AssetManager assetManager = context.getAssets();
+    DATABASE_EXECUTOR.execute(() -> {
+      int index;
+      AugmentedImageDatabase database;
+      AugmentedImageDatabase copy;
+      try {
+        if (workerDatabase == null || workerSession != session) {
+          workerDatabase = loadDatabase(session, assetManager, store);
+          workerSession = session;
+          if (workerDatabase == null) {
+            throw new IOException("Unable to load the augmented image database");
+          }
+        }
+        database = workerDatabase;
+        index = store.addImage(database, name, source, physicalWidth, modelPath);
+        copy = copyDatabase(session, database);
+      } catch (IOException | RuntimeException e) {
+        Log.e(TAG, "Unable to add image " + name, e);
+        mainHandler.post(() -> result.completeExceptionally(e));
+        return;
+      }
+      mainHandler.post(() -> {
+        onImageAdded(session, copy);
+        result.complete(index);
+      });
+      // Queued behind any other images being added, so a burst of them is saved once.
+      DATABASE_EXECUTOR.execute(() -> store.saveSnapshot(database));
+    });
+    return result;
+  }
+
+  private void onImageAdded(Session session, AugmentedImageDatabase database) {
+    if (session != databaseSession || augmentedImageDatabase == null) {
+      return;
+    }
+    // The session works on the database as it was configured, so it has to be set again.
+    augmentedImageDatabase = database;
+    if (getArSceneView() != null && getArSceneView().getSession() == session) {
+      session.configure(getSessionConfiguration(session));
+    }
+  }
+
+  /** Returns a new instance of {@code database}, for {@code session}, through serialization. */
+  private static AugmentedImageDatabase copyDatabase(Session session, AugmentedImageDatabase database)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    database.serialize(out);
+    try (InputStream in = new ByteArrayInputStream(out.toByteArray())) {
+      return AugmentedImageDatabase.deserialize(session, in);
+    }
+  }
+
+  /**
+   * Sets the augmented image database on {@code config}. The database is loaded once per session
+   * on a background thread, from the snapshot of the database with the added images if there is
+   * one, or else from the APK. Until it is ready the session runs without one, and it is
+   * reconfigured as soon as loading finishes.
+   */
   private boolean setupAugmentedImageDatabase(Config config, Session session) {
-    AugmentedImageDatabase augmentedImageDatabase;
+    if (session == databaseSession && augmentedImageDatabase != null) {
+      config.setAugmentedImageDatabase(augmentedImageDatabase);
+      return true;
+    }
+    if (session == databaseSession) {
+      // Still deserializing; the latest configuration is applied when it finishes.
+      pendingConfig = config;
+      return true;
+    }
 
-    AssetManager assetManager = getContext() != null ? getContext().getAssets() : null;
-    if (assetManager == null) {
+    Context context = getContext();
+    if (context == null) {
       Log.e(TAG, "Context is null, cannot intitialize image database.");
       return false;
     }
 
-      try (InputStream is = getContext().getAssets().open(IMAGE_DATABASE)) {
-        augmentedImageDatabase = AugmentedImageDatabase.deserialize(session, is);
+    AssetManager assetManager = context.getAssets();
+    ImageDatabaseStore store = imageStore;
+    databaseSession = session;
+    augmentedImageDatabase = null;
+    pendingConfig = config;
+    DATABASE_EXECUTOR.execute(() -> {
+      AugmentedImageDatabase database = loadDatabase(session, assetManager, store);
+      StartupTrace.mark("databaseLoaded");
+      if (database != null) {
+        // Only when added images had to be extracted again, e.g. after an update. It has to be
+        // saved before the session is given the database, which it may then read at any time.
+        store.saveSnapshot(database);
+      }
+      mainHandler.post(() -> onDatabaseLoaded(session, database));
+    });
+    return true;
+  }
+
+  /**
+   * Loads the database for {@code session} from the snapshot, or else from the APK with the added
+   * images extracted again. Runs on DATABASE_EXECUTOR; returns null if the database can't be read.
+   */
+  @Nullable
+  private static AugmentedImageDatabase loadDatabase(
+      Session session, AssetManager assetManager, ImageDatabaseStore store) {
+    long start = SystemClock.elapsedRealtime();
+    AugmentedImageDatabase database = store.restoreSnapshot(session);
+    String source = "snapshot";
+    if (database == null) {
+      source = IMAGE_DATABASE;
+      try (InputStream is = new ByteBufferInputStream(getDatabaseBytes(assetManager))) {
+        database = AugmentedImageDatabase.deserialize(session, is);
+        store.addSavedImages(database, 0);
       } catch (IOException e) {
         Log.e(TAG, "IO exception loading augmented image database.", e);
-        return false;
+        return null;
       }
+    }
+    Log.d(TAG, "Loaded augmented image database from " + source + " in "
+        + (SystemClock.elapsedRealtime() - start) + "ms");
+    return database;
+  }
 
-    config.setAugmentedImageDatabase(augmentedImageDatabase);
-    return true;
+  private void onDatabaseLoaded(Session session, @Nullable AugmentedImageDatabase database) {
+    if (session != databaseSession || !isAdded()) {
+      return;
+    }
+    if (database == null) {
+      databaseSession = null;
+      if (getActivity() != null) {
+        SnackbarHelper.getInstance()
+            .showError(getActivity(), "Could not set up augmented image database");
+      }
+      return;
+    }
+
+    augmentedImageDatabase = database;
+    Config config = pendingConfig;
+    pendingConfig = null;
+    if (config == null) {
+      config = new Config(session);
+      performanceProfile.apply(config);
+    }
+    config.setAugmentedImageDatabase(database);
+    session.configure(config);
+    StartupTrace.mark("databaseConfigured");
+  }
+
+  /**
+   * Returns the raw database, read once per process. The asset is stored uncompressed so it can be
+   * memory-mapped straight out of the APK.
+   */
+  private static synchronized ByteBuffer getDatabaseBytes(AssetManager assetManager)
+      throws IOException {
+    if (databaseBytes != null) {
+      return databaseBytes;
+    }
+
+    try (AssetFileDescriptor fd = assetManager.openFd(IMAGE_DATABASE);
+        FileInputStream stream = fd.createInputStream()) {
+      databaseBytes =
+          stream.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+    } catch (FileNotFoundException e) {
+      // Compressed assets can't be mapped; read them into memory instead.
+      try (InputStream is = assetManager.open(IMAGE_DATABASE)) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        int count;
+        while ((count = is.read(buffer)) != -1) {
+          out.write(buffer, 0, count);
+        }
+        databaseBytes = ByteBuffer.wrap(out.toByteArray());
+      }
+    }
+    return databaseBytes;
   }
 }
@@ -0,0 +1,305 @@
+package me.mischka.augmentedlearning;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.ar.core.Anchor;
+import com.google.ar.core.AugmentedImage;
+import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
+import com.google.ar.sceneform.Scene;
+import com.google.ar.sceneform.ux.TransformationSystem;
+
+import me.mischka.common.metrics.Metrics;
+import me.mischka.common.motion.PoseFilter;
+
+/**
+ * Owns the ARCore anchors and Sceneform nodes created for augmented images.
+ *
+ * <p>Every anchor is created and detached here, so an image never has more than one live anchor.
+ * Nodes are kept in the {@link AugmentedImageRegistry} after their image stops tracking and are
+ * reattached, model and all, when the image comes back. Nodes released after going stale are
+ * created anew, with the transform the user gave them.
+ *
+ * <p>While an image is tracked its center pose is smoothed with the node's {@link PoseFilter}. The
+ * anchor is only recreated, at the smoothed pose, once that has drifted more than {@link
+ * PoseFilter#DEFAULT_MAX_DRIFT_DISTANCE} or {@link PoseFilter#DEFAULT_MAX_DRIFT_ANGLE} from where the
+ * anchor puts the image; recreating anchors on every jittery update would be costly.
+ */
+public class AugmentedImageLifecycleManager {
+    private static final String TAG = "AugmentedImageLifecycleManager";
+    // Logs image poses for PoseTraceReplay in the benchmarks module when verbose logging is on for it.
+    private static final String POSE_TRACE_TAG = "PoseTrace";
+
+    private final Context context;
+    private final Scene scene;
+    private final TransformationSystem transformationSystem;
+    private final TwoFingerDragGestureRecognizer twoFingerDragGestureRecognizer;
+    private final TwoFingerTwistGestureRecognizer twoFingerTwistGestureRecognizer;
+    private final AugmentedImageRegistry registry;
+    private final ModelAdmission modelAdmission;
+
+    private int liveAnchorCount;
+    private int attachedNodeCount;
+
+    private final boolean tracePoses;
+    private final float[] translation = new float[3];
+    private final float[] rotation = new float[4];
+    private final float[] offsetTranslation = new float[3];
+    private final float[] offsetRotation = new float[4];
+
+    public AugmentedImageLifecycleManager(
+            Context context,
+            Scene scene,
+            TransformationSystem transformationSystem,
+            TwoFingerDragGestureRecognizer twoFingerDragGestureRecognizer,
+            TwoFingerTwistGestureRecognizer twoFingerTwistGestureRecognizer,
+            AugmentedImageRegistry registry,
+            ModelAdmission modelAdmission
+    ) {
+        this.context = context;
+        this.scene = scene;
+        this.transformationSystem = transformationSystem;
+        this.twoFingerDragGestureRecognizer = twoFingerDragGestureRecognizer;
+        this.twoFingerTwistGestureRecognizer = twoFingerTwistGestureRecognizer;
+        this.registry = registry;
+        this.modelAdmission = modelAdmission;
+        this.tracePoses = Log.isLoggable(POSE_TRACE_TAG, Log.VERBOSE);
+    }
+
+    /**
+     * Makes sure the node for {@code image} is anchored and in the scene, and follows the image's
+     * pose as of the frame at {@code timestampNanos}. Its model is admitted through the {@link
+     * ModelAdmission}, and reloaded if it was released to make room for others.
+     *
+     * @return whether the node was attached by this call.
+     */
+    public boolean onTracking(AugmentedImage image, long timestampNanos) {
+        int index = image.getIndex();
+        modelAdmission.onSeen(index, timestampNanos);
+        AugmentedImageNodeAnchor node = registry.getNode(index);
+        if (node == null) {
+            if (registry.getAssetPath(index) == null) {
+                return false;
+            }
+            modelAdmission.admit(index);
+            node = new AugmentedImageNodeAnchor(
+                    context,
+                    this,
+                    transformationSystem,
+                    twoFingerDragGestureRecognizer,
+                    twoFingerTwistGestureRecognizer,
+                    registry,
+                    index
+            );
+            float[] userTransform = registry.getUserTransform(index);
+            if (userTransform != null) {
+                node.setUserTransform(userTransform);
+            }
+            registry.setNode(index, node);
+        } else if (node.isModelReleased()) {
+            modelAdmission.admit(index);
+            node.reloadModel();
+        }
+
+        if (node.getAnchor() != null) {
+            followImage(node, image, timestampNanos);
+            return false;
+        }
+
+        node.setImage(image);
+        // The visibility scheduler may have suspended or faded it before it was stopped.
+        node.setEnabled(true);
+        node.setFade(1);
+        Pose centerPose = image.getCenterPose();
+        PoseFilter poseFilter = node.getPoseFilter();
+        poseFilter.reset();
+        filterPose(image.getIndex(), poseFilter, centerPose, timestampNanos);
+        setAnchor(node, createAnchor(image, centerPose), Pose.IDENTITY);
+        scene.addChild(node);
+        attachedNodeCount++;
+        logCounts();
+        return true;
+    }
+
+    /** Detaches the anchor of the image at {@code index} and removes its node from the scene. */
+    public void onStopped(int index) {
+        AugmentedImageNodeAnchor node = registry.getNode(index);
+        if (node == null || node.getAnchor() == null) {
+            return;
+        }
+
+        setAnchor(node, null, Pose.IDENTITY);
+        scene.removeChild(node);
+        attachedNodeCount--;
+        logCounts();
+    }
+
+    /**
+     * Detaches the anchor of the image at {@code index} and forgets its node, so it can be
+     * collected. The node is created anew if the image is tracked again, with the transform the
+     * user gave its model, which the {@link AugmentedImageRegistry} keeps.
+     */
+    public void release(int index) {
+        AugmentedImageNodeAnchor node = registry.getNode(index);
+        if (node != null) {
+            float[] userTransform = new float[AugmentedImageTransformableNode.TRANSFORM_SIZE];
+            if (node.getUserTransform(userTransform)) {
+                registry.setUserTransform(index, userTransform);
+            }
+        }
+        onStopped(index);
+        registry.setNode(index, null);
+        modelAdmission.onReleased(index);
+    }
+
+    /** Moves {@code node} to a new anchor at {@code pose} on its image. */
+    public void reanchor(AugmentedImageNodeAnchor node, Pose pose) {
+        AugmentedImage image = node.getImage();
+        if (image == null || node.getAnchor() == null) {
+            return;
+        }
+        setAnchor(node, createAnchor(image, pose), offsetFromImage(node, pose));
+    }
+
+    /** Replaces the anchor of {@code node} with one created elsewhere, e.g. from a hit test. */
+    public void replaceAnchor(AugmentedImageNodeAnchor node, Anchor anchor) {
+        if (node.getAnchor() == null) {
+            anchor.detach();
+            return;
+        }
+        setAnchor(node, anchor, offsetFromImage(node, anchor.getPose()));
+    }
+
+    /** Detaches every anchor and removes every node from the scene. */
+    public void releaseAll() {
+        for (int i = 0; i < registry.size(); i++) {
+            onStopped(i);
+        }
+    }
+
+    public int getLiveAnchorCount() {
+        return liveAnchorCount;
+    }
+
+    public int getAttachedNodeCount() {
+        return attachedNodeCount;
+    }
+
+    public int getNodeCount() {
+        return registry.getNodeCount();
+    }
+
+    /**
+     * Smooths the image pose and recreates the anchor if the smoothed pose has drifted away from it.
+     *
+     * <p>Runs for every tracked image on every frame, so apart from the poses ARCore hands out, which
+     * it has no way to write into existing objects, it works on scratch arrays.
+     */
+    private void followImage(AugmentedImageNodeAnchor node, AugmentedImage image, long timestampNanos) {
+        PoseFilter poseFilter = node.getPoseFilter();
+        filterPose(image.getIndex(), poseFilter, image.getCenterPose(), timestampNanos);
+
+        Anchor anchor = node.getAnchor();
+        if (anchor.getTrackingState() != TrackingState.TRACKING) {
+            return;
+        }
+        // Where the anchor puts the image center: the anchor pose composed with the inverse offset.
+        Pose anchorPose = anchor.getPose();
+        anchorPose.getTranslation(translation, 0);
+        anchorPose.getRotationQuaternion(rotation, 0);
+        Pose offset = node.getAnchorOffset();
+        if (offset != Pose.IDENTITY) {
+            offset.getTranslation(offsetTranslation, 0);
+            offset.getRotationQuaternion(offsetRotation, 0);
+            composeInverse(translation, rotation, offsetTranslation, offsetRotation);
+        }
+        if (!poseFilter.hasDrifted(translation, rotation,
+                PoseFilter.DEFAULT_MAX_DRIFT_DISTANCE, PoseFilter.DEFAULT_MAX_DRIFT_ANGLE)) {
+            return;
+        }
+
+        setAnchor(node, createAnchor(image, filteredPose(poseFilter).compose(offset)), offset);
+        Metrics.increment(AppMetrics.DRIFT_REANCHORS);
+    }
+
+    /**
+     * Sets the pose ({@code translation}, {@code rotation}) to itself composed with the inverse of
+     * the pose ({@code offsetTranslation}, {@code offsetRotation}), as {@code Pose.compose} and
+     * {@code Pose.inverse} would, without allocating.
+     */
+    private static void composeInverse(
+            float[] translation, float[] rotation, float[] offsetTranslation, float[] offsetRotation) {
+        // rotation * conjugate(offsetRotation)
+        float ax = rotation[0], ay = rotation[1], az = rotation[2], aw = rotation[3];
+        float bx = -offsetRotation[0], by = -offsetRotation[1], bz = -offsetRotation[2], bw = offsetRotation[3];
+        float qx = aw * bx + ax * bw + ay * bz - az * by;
+        float qy = aw * by - ax * bz + ay * bw + az * bx;
+        float qz = aw * bz + ax * by - ay * bx + az * bw;
+        float qw = aw * bw - ax * bx - ay * by - az * bz;
+        rotation[0] = qx;
+        rotation[1] = qy;
+        rotation[2] = qz;
+        rotation[3] = qw;
+
+        // translation - (that rotation applied to offsetTranslation)
+        float vx = offsetTranslation[0], vy = offsetTranslation[1], vz = offsetTranslation[2];
+        float cx = qy * vz - qz * vy;
+        float cy = qz * vx - qx * vz;
+        float cz = qx * vy - qy * vx;
+        translation[0] -= vx + 2 * (qw * cx + qy * cz - qz * cy);
+        translation[1] -= vy + 2 * (qw * cy + qz * cx - qx * cz);
+        translation[2] -= vz + 2 * (qw * cz + qx * cy - qy * cx);
+    }
+
+    private void filterPose(int index, PoseFilter poseFilter, Pose pose, long timestampNanos) {
+        pose.getTranslation(translation, 0);
+        pose.getRotationQuaternion(rotation, 0);
+        poseFilter.filter(timestampNanos, translation, rotation);
+        if (tracePoses) {
+            Log.v(POSE_TRACE_TAG, index + "," + timestampNanos
+                    + "," + translation[0] + "," + translation[1] + "," + translation[2]
+                    + "," + rotation[0] + "," + rotation[1] + "," + rotation[2] + "," + rotation[3]);
+        }
+    }
+
+    private Pose filteredPose(PoseFilter poseFilter) {
+        poseFilter.getTranslation(translation);
+        poseFilter.getRotation(rotation);
+        return new Pose(translation, rotation);
+    }
+
+    /** Returns {@code pose} relative to the smoothed center of the image of {@code node}. */
+    private Pose offsetFromImage(AugmentedImageNodeAnchor node, Pose pose) {
+        PoseFilter poseFilter = node.getPoseFilter();
+        if (!poseFilter.isInitialized()) {
+            return Pose.IDENTITY;
+        }
+        return filteredPose(poseFilter).inverse().compose(pose);
+    }
+
+    private static Anchor createAnchor(AugmentedImage image, Pose pose) {
+        long start = Metrics.begin(AppMetrics.ANCHOR);
+        Anchor anchor = image.createAnchor(pose);
+        Metrics.end(AppMetrics.ANCHOR, start);
+        Metrics.increment(AppMetrics.ANCHORS_CREATED);
+        return anchor;
+    }
+
+    private void setAnchor(AugmentedImageNodeAnchor node, Anchor anchor, Pose anchorOffset) {
+        Anchor oldAnchor = node.getAnchor();
+        if (oldAnchor != null) {
+            oldAnchor.detach();
+            liveAnchorCount--;
+        }
+        if (anchor != null) {
+            liveAnchorCount++;
+        }
+        node.setAnchor(anchor);
+        node.setAnchorOffset(anchorOffset);
+    }
+
+    private void logCounts() {
+        Log.d(TAG, "anchors=" + liveAnchorCount + " attached=" + attachedNodeCount + " nodes=" + getNodeCount());
+    }
+}
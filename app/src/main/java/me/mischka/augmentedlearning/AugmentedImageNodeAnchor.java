@@ -17,20 +17,21 @@
 package me.mischka.augmentedlearning;
 
 import android.content.Context;
-import android.net.Uri;
 import android.util.Log;
 import android.view.MotionEvent;
 import com.google.ar.core.AugmentedImage;
+import com.google.ar.core.Pose;
 import com.google.ar.sceneform.AnchorNode;
 import com.google.ar.sceneform.HitTestResult;
 import com.google.ar.sceneform.Node;
-import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.ModelRenderable;
 import com.google.ar.sceneform.rendering.Renderable;
 import com.google.ar.sceneform.ux.TransformationSystem;
 
 import java.util.concurrent.CompletableFuture;
 
+import me.mischka.common.motion.PoseFilter;
+
 /**
  * Node for rendering an augmented image. The image is framed by placing the virtual picture frame
  * at the corners of the augmented image trackable.
@@ -44,71 +45,203 @@ public class AugmentedImageNodeAnchor extends AnchorNode implements Node.OnTapLi
   private AugmentedImage image;
   private AugmentedImageTransformableNode node;
 
+  private final AugmentedImageLifecycleManager lifecycleManager;
+  private final ModelRenderableCache cache;
+  private final String assetPath;
+  // Null while the model is released by ModelAdmission.
   private CompletableFuture<ModelRenderable> model;
+  // The transform to give the model when it is first shown, or null for the default one.
+  private float[] userTransform;
+
+  // Smooths the image's center pose while it is tracked; see AugmentedImageLifecycleManager.
+  private final PoseFilter poseFilter = new PoseFilter();
+  // The pose of the anchor relative to the smoothed image center it was created for.
+  private Pose anchorOffset = Pose.IDENTITY;
+
+  // How the model is oriented and scaled on the image, from the content manifest.
+  private final byte lookDirection;
+  private final float scale;
 
   public AugmentedImageNodeAnchor(
           Context context,
+          AugmentedImageLifecycleManager lifecycleManager,
           TransformationSystem transformationSystem,
-          String assetPath,
-          TwoFingerDragGestureRecognizer twoFingerDragGestureRecognizer
+          TwoFingerDragGestureRecognizer twoFingerDragGestureRecognizer,
+          TwoFingerTwistGestureRecognizer twoFingerTwistGestureRecognizer,
+          AugmentedImageRegistry registry,
+          int index
   ) {
-    this.model = ModelRenderable.builder()
-            .setSource(context, Uri.parse(assetPath))
-            .build();
+    this.lifecycleManager = lifecycleManager;
+    this.lookDirection = registry.getLookDirection(index);
+    this.scale = registry.getScale(index);
+
+    this.cache = ModelRenderableCache.getInstance(context);
+    this.assetPath = registry.getAssetPath(index);
+    this.model = cache.get(assetPath);
 
     node = new AugmentedImageTransformableNode(
             transformationSystem,
-            twoFingerDragGestureRecognizer
+            twoFingerDragGestureRecognizer,
+            twoFingerTwistGestureRecognizer
     );
+
+    int lodCount = registry.getLodCount(index);
+    if (lodCount > 0) {
+      String[] lodPaths = new String[lodCount + 1];
+      lodPaths[0] = assetPath;
+      for (int level = 1; level <= lodCount; level++) {
+        lodPaths[level] = ContentManifest.lodPath(assetPath, level);
+      }
+      node.setLodModels(cache, lodPaths);
+    }
   }
 
+  /**
+   * Sets the image this node represents. Anchoring is left to the {@link
+   * AugmentedImageLifecycleManager}; the model is attached as soon as it has loaded.
+   */
   @SuppressWarnings({"AndroidApiChecker", "FutureReturnValueIgnored"})
   public void setImage(AugmentedImage image) {
     this.image = image;
 
-    // If any of the models are not loaded, then recurse when all are loaded.
+    if (model == null) {
+      // Released; reloadModel attaches it again.
+      return;
+    }
+
+    // If the model is not loaded, then attach it once it is.
     if (!model.isDone()) {
-      CompletableFuture.allOf(model)
-          .thenAccept((Void aVoid) -> setImage(image))
+      model
+          .thenAccept((ModelRenderable renderable) -> attachModel())
           .exceptionally(
               throwable -> {
                 Log.e(TAG, "Exception loading", throwable);
                 return null;
               });
+      return;
     }
 
-    // Set the anchor based on the center of the image.
-    setAnchor(image.createAnchor(image.getCenterPose()));
+    attachModel();
+  }
 
+  /**
+   * Drops the model so its memory can be reclaimed, keeping the anchor and the transform the user
+   * gave it. {@link #reloadModel} brings it back.
+   */
+  public void releaseModel() {
+    model = null;
+    node.releaseRenderables();
+  }
+
+  public boolean isModelReleased() {
+    return model == null;
+  }
+
+  /** Loads the model again after {@link #releaseModel} and shows it once loaded. */
+  @SuppressWarnings({"AndroidApiChecker", "FutureReturnValueIgnored"})
+  public void reloadModel() {
+    if (model != null) {
+      return;
+    }
+
+    CompletableFuture<ModelRenderable> reloaded = cache.get(assetPath);
+    model = reloaded;
+    reloaded
+        .thenAccept(
+            (ModelRenderable renderable) -> {
+              if (model != reloaded) {
+                // Released again while loading.
+                return;
+              }
+              if (node.getParent() == this) {
+                node.restoreRenderable(renderable);
+              } else if (image != null) {
+                attachModel();
+              }
+            })
+        .exceptionally(
+            throwable -> {
+              Log.e(TAG, "Exception reloading", throwable);
+              return null;
+            });
+  }
+
+  private void attachModel() {
+    if (model == null) {
+      return;
+    }
     Renderable renderable = model.getNow(null);
-    node.setParent(this);
-    node.setRenderable(renderable);
+    if (node.getParent() != this) {
+      node.setParent(this);
+      node.setRenderable(renderable);
+      adjustNode();
+      if (userTransform != null) {
+        node.setUserTransform(userTransform);
+        userTransform = null;
+      }
+    }
     node.select();
-    adjustNode();
+  }
+
+  /**
+   * Writes the transform the user gave the model into {@code transform}, {@link
+   * AugmentedImageTransformableNode#TRANSFORM_SIZE} floats.
+   *
+   * @return false if the model was never shown, so it has no transform of its own.
+   */
+  public boolean getUserTransform(float[] transform) {
+    if (node.getParent() != this) {
+      return false;
+    }
+    node.getUserTransform(transform);
+    return true;
+  }
+
+  /**
+   * Gives the model {@code transform} when it is first shown, e.g. the one kept from a released
+   * node of the same image.
+   */
+  public void setUserTransform(float[] transform) {
+    userTransform = transform;
+  }
+
+  public AugmentedImageLifecycleManager getLifecycleManager() {
+    return lifecycleManager;
   }
 
   public AugmentedImage getImage() {
     return image;
   }
 
+  /** Returns the radius around the anchor that the image and its model are expected to stay within. */
+  public float getBoundingRadius() {
+    float imageRadius = image != null ? Math.max(image.getExtentX(), image.getExtentZ()) * 0.5f : 0;
+    return Math.max(imageRadius, node.getModelRadius());
+  }
+
+  /** Fades the model out as {@code fade} goes from 1 to 0. */
+  public void setFade(float fade) {
+    node.setFade(fade);
+  }
+
+  public PoseFilter getPoseFilter() {
+    return poseFilter;
+  }
+
+  public Pose getAnchorOffset() {
+    return anchorOffset;
+  }
+
+  public void setAnchorOffset(Pose anchorOffset) {
+    this.anchorOffset = anchorOffset;
+  }
+
   public void onTap(HitTestResult hitTestResult, MotionEvent motionEvent) {
     Log.d(TAG, "onTap");
   }
 
   private void adjustNode() {
-    switch (image.getName()) {
-      case "eiffel-tower":
-        node.setLookDirection(Vector3.down());
-        break;
-      case "banana":
-        node.setLookDirection(Vector3.up());
-        break;
-      case "statue-of-liberty":
-      case "rope":
-      case "arch":
-      case "simple-suspension":
-        node.setLookDirection(Vector3.forward());
-        break;
-    }
+    node.setLookDirection(ContentManifest.toVector(lookDirection));
+    node.setModelScale(scale);
   }
 }
@@ -0,0 +1,157 @@
+package me.mischka.augmentedlearning;
+
+import java.util.Arrays;
+
+/**
+ * Per-image state addressed by {@link com.google.ar.core.AugmentedImage#getIndex()}.
+ *
+ * <p>Image metadata is resolved once, up front, from the {@link ContentManifest}, so the frame loop
+ * only ever needs the index of an image. Images that are in the database but not in the manifest
+ * can be resolved later with {@link #resolve}.
+ */
+public class AugmentedImageRegistry {
+    public static final int NO_CATEGORY = -1;
+
+    private String[] names;
+    private String[] assetPaths;
+    private byte[] lookDirections;
+    private float[] scales;
+    private int[] categories;
+    private int[] lodCounts;
+    private AugmentedImageNodeAnchor[] nodes;
+    private int nodeCount;
+    // The transforms users gave the models of released nodes, null where there is none.
+    private float[][] userTransforms;
+
+    private final ContentManifest manifest;
+
+    public AugmentedImageRegistry(ContentManifest manifest) {
+        this.manifest = manifest;
+        int size = manifest.size();
+        names = new String[size];
+        assetPaths = new String[size];
+        lookDirections = new byte[size];
+        scales = new float[size];
+        categories = new int[size];
+        lodCounts = new int[size];
+        nodes = new AugmentedImageNodeAnchor[size];
+        userTransforms = new float[size][];
+        for (int i = 0; i < size; i++) {
+            names[i] = manifest.getName(i);
+            assetPaths[i] = manifest.getModelPath(i);
+            lookDirections[i] = manifest.getLookDirection(i);
+            scales[i] = manifest.getScale(i);
+            categories[i] = manifest.getCategory(i);
+            lodCounts[i] = manifest.getLodCount(i);
+        }
+    }
+
+    public ContentManifest getManifest() {
+        return manifest;
+    }
+
+    /** Returns whether metadata is known for {@code index}. */
+    public boolean isResolved(int index) {
+        return index < names.length && names[index] != null;
+    }
+
+    /** Registers metadata for an image that is missing from the manifest. */
+    public void resolve(int index, String name, String assetPath) {
+        ensureCapacity(index + 1);
+        names[index] = name;
+        assetPaths[index] = assetPath;
+        lookDirections[index] = ContentManifest.LOOK_LEFT;
+        scales[index] = 1f;
+        categories[index] = NO_CATEGORY;
+        lodCounts[index] = 0;
+    }
+
+    /** Leaves the image at {@code index} without a model, e.g. because its content is not installed. */
+    public void removeContent(int index) {
+        assetPaths[index] = null;
+        lodCounts[index] = 0;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /** Returns the model shown on the image at {@code index}, or null if it has none. */
+    public String getAssetPath(int index) {
+        return assetPaths[index];
+    }
+
+    public byte getLookDirection(int index) {
+        return lookDirections[index];
+    }
+
+    public float getScale(int index) {
+        return scales[index];
+    }
+
+    /** Returns the category of the image at {@code index}, or {@link #NO_CATEGORY}. */
+    public int getCategory(int index) {
+        return categories[index];
+    }
+
+    /** Returns how many reduced levels of detail the model has, besides the model itself. */
+    public int getLodCount(int index) {
+        return lodCounts[index];
+    }
+
+    public AugmentedImageNodeAnchor getNode(int index) {
+        return index < nodes.length ? nodes[index] : null;
+    }
+
+    public void setNode(int index, AugmentedImageNodeAnchor node) {
+        ensureCapacity(index + 1);
+        if (nodes[index] == null && node != null) {
+            nodeCount++;
+        } else if (nodes[index] != null && node == null) {
+            nodeCount--;
+        }
+        nodes[index] = node;
+    }
+
+    /**
+     * Returns the transform the user gave the model of the image at {@code index} before its node
+     * was released, as {@link AugmentedImageTransformableNode#getUserTransform} writes it, or null.
+     */
+    public float[] getUserTransform(int index) {
+        return index < userTransforms.length ? userTransforms[index] : null;
+    }
+
+    public void setUserTransform(int index, float[] transform) {
+        ensureCapacity(index + 1);
+        userTransforms[index] = transform;
+    }
+
+    /** Forgets every node and the transforms of released ones, keeping the resolved image metadata. */
+    public void clearNodes() {
+        Arrays.fill(nodes, null);
+        Arrays.fill(userTransforms, null);
+        nodeCount = 0;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= names.length) {
+            return;
+        }
+        names = Arrays.copyOf(names, capacity);
+        assetPaths = Arrays.copyOf(assetPaths, capacity);
+        lookDirections = Arrays.copyOf(lookDirections, capacity);
+        scales = Arrays.copyOf(scales, capacity);
+        categories = Arrays.copyOf(categories, capacity);
+        lodCounts = Arrays.copyOf(lodCounts, capacity);
+        nodes = Arrays.copyOf(nodes, capacity);
+        userTransforms = Arrays.copyOf(userTransforms, capacity);
+    }
+}
@@ -2,28 +2,43 @@ package me.mischka.augmentedlearning;
 
 import android.util.Log;
 
-import com.google.ar.sceneform.math.Quaternion;
 import com.google.ar.sceneform.math.Vector3;
-import com.google.ar.sceneform.ux.BaseTransformableNode;
-import com.google.ar.sceneform.ux.RotationController;
-import com.google.ar.sceneform.ux.TwistGesture;
-import com.google.ar.sceneform.ux.TwistGestureRecognizer;
+import com.google.ar.sceneform.ux.BaseTransformationController;
 
-public class AugmentedImageRotationController extends RotationController {
+import me.mischka.common.metrics.Metrics;
+
+public class AugmentedImageRotationController extends BaseTransformationController<TwoFingerTwistGesture> {
     private static String TAG = "AugmentedImageRotationController";
 
-    public AugmentedImageRotationController(BaseTransformableNode transformableNode, TwistGestureRecognizer gestureRecognizer) {
+    // The same as Sceneform's RotationController.
+    private static final float ROTATION_RATE_DEGREES = 2.5f;
+
+    private final AugmentedImageTransformableNode node;
+
+    public AugmentedImageRotationController(AugmentedImageTransformableNode transformableNode, TwoFingerTwistGestureRecognizer gestureRecognizer) {
         super(transformableNode, gestureRecognizer);
+        node = transformableNode;
         Log.d(TAG, "constructor called");
     }
 
     @Override
-    public void onContinueTransformation(TwistGesture gesture) {
-        Log.d(TAG, "onContinueTransformation");
-        float rotationAmount = gesture.getDeltaRotationDegrees() * getRotationRateDegrees();
-        Quaternion rotationDelta = new Quaternion(getTransformableNode().worldToLocalDirection(Vector3.forward()), rotationAmount);
-        Quaternion localrotation = getTransformableNode().getLocalRotation();
-        localrotation = Quaternion.multiply(localrotation, rotationDelta);
-        getTransformableNode().setLocalRotation(localrotation);
+    public boolean isTransforming() {
+        return super.isTransforming() || node.isRotationMoving();
+    }
+
+    @Override
+    public boolean canStartTransformation(TwoFingerTwistGesture gesture) {
+        return getTransformableNode().isSelected();
+    }
+
+    @Override
+    public void onContinueTransformation(TwoFingerTwistGesture gesture) {
+        Metrics.increment(AppMetrics.TWIST_UPDATES);
+        float rotationAmount = gesture.getDeltaRotationDegrees() * ROTATION_RATE_DEGREES;
+        node.rotateTarget(Vector3.forward(), rotationAmount);
+    }
+
+    @Override
+    public void onEndTransformation(TwoFingerTwistGesture gesture) {
     }
 }
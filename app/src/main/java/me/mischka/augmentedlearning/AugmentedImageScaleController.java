@@ -0,0 +1,52 @@
+package me.mischka.augmentedlearning;
+
+import com.google.ar.sceneform.ux.BaseTransformationController;
+import com.google.ar.sceneform.ux.PinchGesture;
+import com.google.ar.sceneform.ux.PinchGestureRecognizer;
+
+/**
+ * Scales a node with a pinch. Replaces the stock {@code ScaleController}, which sets the scale on
+ * every event and eases it with its own interpolation; this one sets a target that the node's
+ * spring follows.
+ */
+public class AugmentedImageScaleController extends BaseTransformationController<PinchGesture> {
+    private static final float SENSITIVITY = 0.75f;
+
+    private final AugmentedImageTransformableNode node;
+    private float minScale = 0.75f;
+    private float maxScale = 1.75f;
+
+    public AugmentedImageScaleController(
+            AugmentedImageTransformableNode transformableNode, PinchGestureRecognizer gestureRecognizer) {
+        super(transformableNode, gestureRecognizer);
+        node = transformableNode;
+    }
+
+    public void setMinScale(float minScale) {
+        this.minScale = minScale;
+    }
+
+    public void setMaxScale(float maxScale) {
+        this.maxScale = maxScale;
+    }
+
+    @Override
+    public boolean isTransforming() {
+        return super.isTransforming() || node.isScaleMoving();
+    }
+
+    @Override
+    public boolean canStartTransformation(PinchGesture gesture) {
+        return node.isSelected();
+    }
+
+    @Override
+    public void onContinueTransformation(PinchGesture gesture) {
+        float scale = node.getTargetScale() + gesture.gapDeltaInches() * SENSITIVITY;
+        node.setTargetScale(Math.max(minScale, Math.min(maxScale, scale)));
+    }
+
+    @Override
+    public void onEndTransformation(PinchGesture gesture) {
+    }
+}
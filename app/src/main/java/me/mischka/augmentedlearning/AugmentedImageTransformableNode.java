@@ -1,34 +1,104 @@
 package me.mischka.augmentedlearning;
 
+import android.util.Log;
+
+import com.google.ar.sceneform.Camera;
+import com.google.ar.sceneform.FrameTime;
 import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.Scene;
+import com.google.ar.sceneform.collision.Box;
+import com.google.ar.sceneform.collision.CollisionShape;
+import com.google.ar.sceneform.math.Matrix;
+import com.google.ar.sceneform.math.Quaternion;
 import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.ModelRenderable;
 import com.google.ar.sceneform.rendering.Renderable;
-import com.google.ar.sceneform.ux.ScaleController;
 import com.google.ar.sceneform.ux.TransformableNode;
 import com.google.ar.sceneform.ux.TransformationSystem;
 
+import java.util.Arrays;
+
+import me.mischka.common.motion.Spring;
+
 public class AugmentedImageTransformableNode extends TransformableNode {
+    private static final String TAG = "AugmentedImageTransformableNode";
+
+    /** The number of floats in a transform from {@link #getUserTransform}. */
+    public static final int TRANSFORM_SIZE = 8;
+
+    // How often the level of detail is reconsidered, in seconds.
+    private static final float LOD_UPDATE_INTERVAL = 0.25f;
+    // Level n is left for level n + 1 once the model covers less than this fraction of the screen
+    // height, raised to the power n + 1.
+    private static final float LOD_SCREEN_FRACTION = 0.4f;
+    // Keeps the level from flickering when the model is close to a threshold.
+    private static final float LOD_HYSTERESIS = 0.15f;
+
+    // How quickly the model follows the gestures, in seconds, and when it is close enough to stop.
+    private static final float POSITION_SMOOTH_TIME = 0.08f;
+    private static final float POSITION_EPSILON = 0.0005f;
+    private static final float ROTATION_SMOOTH_TIME = 0.06f;
+    private static final float ROTATION_EPSILON = 0.0005f;
+    private static final float SCALE_SMOOTH_TIME = 0.08f;
+    private static final float SCALE_EPSILON = 0.001f;
+
     private final VerticalRotationController verticalRotationController;
     private final AugmentedImageRotationController rotationController;
     private final AugmentedImageTranslationController translationController;
+    private final AugmentedImageScaleController scaleController;
+
+    // The controllers set targets on these; the transform follows them once per frame.
+    private final Spring positionSpring = new Spring(3, POSITION_SMOOTH_TIME, POSITION_EPSILON);
+    private final Spring rotationSpring = new Spring(4, ROTATION_SMOOTH_TIME, ROTATION_EPSILON);
+    private final Spring scaleSpring = new Spring(1, SCALE_SMOOTH_TIME, SCALE_EPSILON);
+    private final Vector3 springPosition = new Vector3();
+    private final Quaternion springRotation = new Quaternion();
+    private final Vector3 springScale = new Vector3();
+    private final Quaternion targetRotation = new Quaternion();
+    // The scale of the model node, faded or not.
+    private final Vector3 nodeScale = new Vector3();
+    // Filled by projectedScreenFraction from the world matrices, as Node's getWorldPosition and
+    // getWorldScale return new vectors.
+    private final Vector3 cameraWorldPosition = new Vector3();
+    private final Vector3 modelWorldPosition = new Vector3();
+    private final Vector3 modelWorldScale = new Vector3();
 
     private Node node;
 
-    public AugmentedImageTransformableNode(TransformationSystem transformationSystem, TwoFingerDragGestureRecognizer twoFingerDragGestureRecognizer) {
+    // Levels of detail, finest first. Level 0 is the model passed to setRenderable.
+    private ModelRenderableCache lodCache;
+    private String[] lodPaths;
+    private Renderable[] lodRenderables;
+    private boolean[] lodLoading;
+    private boolean[] lodUnavailable;
+    private int lod;
+    private int wantedLod;
+    private float boundingRadius;
+    private float modelScale = 1;
+    private float userScale = 1;
+    private float secondsSinceLodUpdate;
+
+    public AugmentedImageTransformableNode(
+            TransformationSystem transformationSystem,
+            TwoFingerDragGestureRecognizer twoFingerDragGestureRecognizer,
+            TwoFingerTwistGestureRecognizer twoFingerTwistGestureRecognizer) {
         super(transformationSystem);
         getRotationController().setEnabled(false);
         removeTransformationController(getRotationController());
         getTranslationController().setEnabled(false);
         removeTransformationController(getTranslationController());
+        getScaleController().setEnabled(false);
+        removeTransformationController(getScaleController());
 
         verticalRotationController = new VerticalRotationController(this, twoFingerDragGestureRecognizer);
-        rotationController = new AugmentedImageRotationController(this, transformationSystem.getTwistRecognizer());
+        rotationController = new AugmentedImageRotationController(this, twoFingerTwistGestureRecognizer);
         translationController = new AugmentedImageTranslationController(this, transformationSystem.getDragRecognizer());
+        scaleController = new AugmentedImageScaleController(this, transformationSystem.getPinchRecognizer());
 
         addTransformationController(rotationController);
         addTransformationController(translationController);
+        addTransformationController(scaleController);
 
-        ScaleController scaleController = getScaleController();
         scaleController.setMinScale(0.1f);
         scaleController.setMaxScale(3f);
 
@@ -42,7 +112,8 @@ public class AugmentedImageTransformableNode extends TransformableNode {
                 super.isTransforming()
                 || verticalRotationController.isTransforming()
                 || rotationController.isTransforming()
-                || translationController.isTransforming();
+                || translationController.isTransforming()
+                || scaleController.isTransforming();
     }
 
     @Override
@@ -51,6 +122,7 @@ public class AugmentedImageTransformableNode extends TransformableNode {
         verticalRotationController.onActivated(this);
         rotationController.onActivated(this);
         translationController.onActivated(this);
+        scaleController.onActivated(this);
     }
 
     @Override
@@ -59,6 +131,7 @@ public class AugmentedImageTransformableNode extends TransformableNode {
         verticalRotationController.onDeactivated(this);
         rotationController.onDeactivated(this);
         translationController.onDeactivated(this);
+        scaleController.onDeactivated(this);
     }
 
     @Override
@@ -67,7 +140,349 @@ public class AugmentedImageTransformableNode extends TransformableNode {
         if (renderable != null) {
             setCollisionShape(renderable.getCollisionShape());
         }
+        boundingRadius = boundingRadius(renderable);
+        if (lodRenderables != null) {
+            lodRenderables[0] = renderable;
+            lod = 0;
+            wantedLod = 0;
+        }
 
         setLookDirection(Vector3.left());
     }
+
+    /**
+     * Drops every renderable, keeping the transform the user gave the model, so that the memory
+     * can be reclaimed. {@link #restoreRenderable} puts the model back.
+     */
+    public void releaseRenderables() {
+        node.setRenderable(null);
+        if (lodRenderables != null) {
+            Arrays.fill(lodRenderables, null);
+            lod = 0;
+            wantedLod = 0;
+        }
+    }
+
+    /** Shows {@code renderable} again after {@link #releaseRenderables}, keeping the transform. */
+    public void restoreRenderable(Renderable renderable) {
+        node.setRenderable(renderable);
+        if (lodRenderables != null) {
+            lodRenderables[0] = renderable;
+        }
+    }
+
+    /**
+     * Enables distance-based level of detail. {@code paths} are the model assets to show, finest
+     * first, starting with the model passed to {@link #setRenderable}. Coarser levels are loaded
+     * from {@code cache} the first time they are needed; a level that fails to load is skipped.
+     */
+    public void setLodModels(ModelRenderableCache cache, String[] paths) {
+        lodCache = cache;
+        lodPaths = paths;
+        lodRenderables = new Renderable[paths.length];
+        lodLoading = new boolean[paths.length];
+        lodUnavailable = new boolean[paths.length];
+        lodRenderables[0] = node.getRenderable();
+    }
+
+    @Override
+    public void onUpdate(FrameTime frameTime) {
+        super.onUpdate(frameTime);
+        updateMotion(frameTime.getDeltaSeconds());
+        updateLod(frameTime);
+    }
+
+    /**
+     * Moves the model towards the position the translation controller set, in world space. The
+     * model follows with a spring, so its position is set once per frame.
+     */
+    public void setTargetWorldPosition(Vector3 worldPosition) {
+        Node parent = getParent();
+        Vector3 localPosition = parent != null ? parent.worldToLocalPoint(worldPosition) : worldPosition;
+        if (!positionSpring.isActive()) {
+            Vector3 current = getLocalPosition();
+            positionSpring.snap(0, current.x);
+            positionSpring.snap(1, current.y);
+            positionSpring.snap(2, current.z);
+        }
+        positionSpring.setTarget(0, localPosition.x);
+        positionSpring.setTarget(1, localPosition.y);
+        positionSpring.setTarget(2, localPosition.z);
+    }
+
+    /**
+     * Turns the target rotation of the model by {@code degrees} about {@code worldAxis}. Successive
+     * calls accumulate, however far behind the model is.
+     */
+    public void rotateTarget(Vector3 worldAxis, float degrees) {
+        if (!rotationSpring.isActive()) {
+            Quaternion current = getLocalRotation();
+            rotationSpring.snap(0, current.x);
+            rotationSpring.snap(1, current.y);
+            rotationSpring.snap(2, current.z);
+            rotationSpring.snap(3, current.w);
+        }
+        Quaternion target = targetRotation;
+        target.set(
+                rotationSpring.getTarget(0),
+                rotationSpring.getTarget(1),
+                rotationSpring.getTarget(2),
+                rotationSpring.getTarget(3));
+        Node parent = getParent();
+        // Sceneform has no way to convert the axis into an existing vector.
+        Vector3 parentAxis = parent != null ? parent.worldToLocalDirection(worldAxis) : worldAxis;
+        GestureMath.rotate(target, parentAxis, degrees, target);
+
+        // Take the short way round: q and -q are the same rotation.
+        float dot = target.x * rotationSpring.get(0) + target.y * rotationSpring.get(1)
+                + target.z * rotationSpring.get(2) + target.w * rotationSpring.get(3);
+        float sign = dot < 0 ? -1 : 1;
+        rotationSpring.setTarget(0, target.x * sign);
+        rotationSpring.setTarget(1, target.y * sign);
+        rotationSpring.setTarget(2, target.z * sign);
+        rotationSpring.setTarget(3, target.w * sign);
+    }
+
+    /** Returns the uniform scale the model is moving towards. */
+    public float getTargetScale() {
+        return scaleSpring.isActive() ? scaleSpring.getTarget(0) : getLocalScale().x;
+    }
+
+    public void setTargetScale(float scale) {
+        if (!scaleSpring.isActive()) {
+            scaleSpring.snap(0, getLocalScale().x);
+        }
+        scaleSpring.setTarget(0, scale);
+    }
+
+    public boolean isPositionMoving() {
+        return positionSpring.isActive();
+    }
+
+    public boolean isRotationMoving() {
+        return rotationSpring.isActive();
+    }
+
+    public boolean isScaleMoving() {
+        return scaleSpring.isActive();
+    }
+
+    /**
+     * Called after the node was moved to a new anchor with its world transform kept. Picks up the
+     * new local transform, keeping the drag heading for {@code targetWorldPosition}.
+     */
+    public void onAnchorChanged(Vector3 targetWorldPosition) {
+        if (positionSpring.isActive()) {
+            Vector3 current = getLocalPosition();
+            positionSpring.setValue(0, current.x);
+            positionSpring.setValue(1, current.y);
+            positionSpring.setValue(2, current.z);
+            setTargetWorldPosition(targetWorldPosition);
+        }
+        if (rotationSpring.isActive()) {
+            Quaternion current = getLocalRotation();
+            rotationSpring.snap(0, current.x);
+            rotationSpring.snap(1, current.y);
+            rotationSpring.snap(2, current.z);
+            rotationSpring.snap(3, current.w);
+        }
+    }
+
+    /**
+     * Writes the transform the user gave the model into {@code transform}: its local position, its
+     * rotation and its uniform scale, where the model is heading if it is still moving.
+     */
+    public void getUserTransform(float[] transform) {
+        Vector3 position = getLocalPosition();
+        transform[0] = positionSpring.isActive() ? positionSpring.getTarget(0) : position.x;
+        transform[1] = positionSpring.isActive() ? positionSpring.getTarget(1) : position.y;
+        transform[2] = positionSpring.isActive() ? positionSpring.getTarget(2) : position.z;
+        Quaternion rotation = getLocalRotation();
+        transform[3] = rotationSpring.isActive() ? rotationSpring.getTarget(0) : rotation.x;
+        transform[4] = rotationSpring.isActive() ? rotationSpring.getTarget(1) : rotation.y;
+        transform[5] = rotationSpring.isActive() ? rotationSpring.getTarget(2) : rotation.z;
+        transform[6] = rotationSpring.isActive() ? rotationSpring.getTarget(3) : rotation.w;
+        transform[7] = getTargetScale();
+    }
+
+    /** Puts the model where {@code transform}, from {@link #getUserTransform}, says, at once. */
+    public void setUserTransform(float[] transform) {
+        positionSpring.snap(0, transform[0]);
+        positionSpring.snap(1, transform[1]);
+        positionSpring.snap(2, transform[2]);
+        springPosition.set(transform[0], transform[1], transform[2]);
+        setLocalPosition(springPosition);
+
+        rotationSpring.snap(0, transform[3]);
+        rotationSpring.snap(1, transform[4]);
+        rotationSpring.snap(2, transform[5]);
+        rotationSpring.snap(3, transform[6]);
+        springRotation.set(transform[3], transform[4], transform[5], transform[6]);
+        setLocalRotation(springRotation);
+
+        scaleSpring.snap(0, transform[7]);
+        userScale = transform[7];
+        springScale.set(userScale, userScale, userScale);
+        setLocalScale(springScale);
+    }
+
+    private void updateMotion(float deltaSeconds) {
+        if (positionSpring.update(deltaSeconds)) {
+            springPosition.set(positionSpring.get(0), positionSpring.get(1), positionSpring.get(2));
+            setLocalPosition(springPosition);
+        }
+        if (rotationSpring.update(deltaSeconds)) {
+            float x = rotationSpring.get(0);
+            float y = rotationSpring.get(1);
+            float z = rotationSpring.get(2);
+            float w = rotationSpring.get(3);
+            float length = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+            if (length > 0) {
+                springRotation.set(x / length, y / length, z / length, w / length);
+                setLocalRotation(springRotation);
+            }
+        }
+        if (scaleSpring.update(deltaSeconds)) {
+            float scale = scaleSpring.get(0);
+            springScale.set(scale, scale, scale);
+            userScale = scale;
+            setLocalScale(springScale);
+        }
+    }
+
+    private void updateLod(FrameTime frameTime) {
+        if (lodPaths == null || lodRenderables[0] == null) {
+            return;
+        }
+
+        secondsSinceLodUpdate += frameTime.getDeltaSeconds();
+        if (secondsSinceLodUpdate < LOD_UPDATE_INTERVAL) {
+            return;
+        }
+        secondsSinceLodUpdate = 0;
+
+        float screenFraction = projectedScreenFraction();
+        if (screenFraction < 0) {
+            return;
+        }
+
+        int level = lod;
+        while (level > 0 && screenFraction >= lodThreshold(level - 1) * (1 + LOD_HYSTERESIS)) {
+            level--;
+        }
+        while (level < lodPaths.length - 1 && screenFraction < lodThreshold(level) * (1 - LOD_HYSTERESIS)) {
+            level++;
+        }
+        while (level > 0 && lodUnavailable[level]) {
+            level--;
+        }
+        showLod(level);
+    }
+
+    /** Returns the radius of a sphere around the model's origin that contains it, in meters. */
+    public float getModelRadius() {
+        return boundingRadius * modelScale * userScale;
+    }
+
+    /** Returns the level of detail currently shown, 0 being the full model. */
+    public int getLod() {
+        return lod;
+    }
+
+    private static float lodThreshold(int level) {
+        return (float) Math.pow(LOD_SCREEN_FRACTION, level + 1);
+    }
+
+    /**
+     * Returns the fraction of the screen height covered by the model's bounding sphere, or -1 if
+     * the node is not in a scene.
+     */
+    private float projectedScreenFraction() {
+        Scene scene = getScene();
+        if (scene == null) {
+            return -1;
+        }
+        Camera camera = scene.getCamera();
+        camera.getWorldModelMatrix().decomposeTranslation(cameraWorldPosition);
+        Matrix modelMatrix = node.getWorldModelMatrix();
+        modelMatrix.decomposeTranslation(modelWorldPosition);
+        float dx = cameraWorldPosition.x - modelWorldPosition.x;
+        float dy = cameraWorldPosition.y - modelWorldPosition.y;
+        float dz = cameraWorldPosition.z - modelWorldPosition.z;
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance <= 0) {
+            return 1;
+        }
+
+        // The [1][1] element of the projection matrix is cot(fovY / 2), which maps a size at unit
+        // distance to a fraction of half the screen height, so the diameter covers r * cot / d. The
+        // camera returns its own matrix, which is only read here.
+        float focalScale = camera.getProjectionMatrix().data[5];
+        modelMatrix.decomposeScale(modelWorldScale);
+        float radius = boundingRadius * modelWorldScale.y;
+        return radius * focalScale / distance;
+    }
+
+    @SuppressWarnings({"AndroidApiChecker", "FutureReturnValueIgnored"})
+    private void showLod(int level) {
+        wantedLod = level;
+        if (level == lod) {
+            return;
+        }
+
+        Renderable renderable = lodRenderables[level];
+        if (renderable != null) {
+            node.setRenderable(renderable);
+            lod = level;
+            return;
+        }
+        if (lodLoading[level]) {
+            return;
+        }
+
+        lodLoading[level] = true;
+        lodCache.get(lodPaths[level]).handle((ModelRenderable loaded, Throwable throwable) -> {
+            lodLoading[level] = false;
+            if (throwable != null) {
+                Log.w(TAG, "Unable to load level of detail " + lodPaths[level], throwable);
+                lodUnavailable[level] = true;
+                return null;
+            }
+            if (lodRenderables[0] == null) {
+                // The model was released while this level loaded.
+                return null;
+            }
+            lodRenderables[level] = loaded;
+            if (wantedLod == level) {
+                showLod(level);
+            }
+            return null;
+        });
+    }
+
+    private static float boundingRadius(Renderable renderable) {
+        CollisionShape shape = renderable != null ? renderable.getCollisionShape() : null;
+        if (!(shape instanceof Box)) {
+            return 0;
+        }
+        Vector3 size = ((Box) shape).getSize();
+        return size.length() / 2;
+    }
+
+    /** Scales the model without affecting the scale the user controls. */
+    public void setModelScale(float scale) {
+        modelScale = scale;
+        nodeScale.set(scale, scale, scale);
+        node.setLocalScale(nodeScale);
+    }
+
+    /**
+     * Shrinks the model towards nothing as {@code fade} goes from 1 to 0. Sceneform materials have
+     * no common opacity parameter, so this stands in for fading it out.
+     */
+    public void setFade(float fade) {
+        float scale = modelScale * fade;
+        nodeScale.set(scale, scale, scale);
+        node.setLocalScale(nodeScale);
+    }
 }
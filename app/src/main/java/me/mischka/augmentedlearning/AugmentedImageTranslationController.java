@@ -1,9 +1,9 @@
 package me.mischka.augmentedlearning;
 
+import android.opengl.Matrix;
 import android.support.annotation.Nullable;
-import android.util.Log;
 
-import com.google.ar.core.Anchor;
+import com.google.ar.core.AugmentedImage;
 import com.google.ar.core.Camera;
 import com.google.ar.core.Frame;
 import com.google.ar.core.HitResult;
@@ -11,12 +11,9 @@ import com.google.ar.core.Plane;
 import com.google.ar.core.Pose;
 import com.google.ar.core.Trackable;
 import com.google.ar.core.TrackingState;
-import com.google.ar.sceneform.AnchorNode;
 import com.google.ar.sceneform.ArSceneView;
-import com.google.ar.sceneform.FrameTime;
 import com.google.ar.sceneform.Node;
 import com.google.ar.sceneform.Scene;
-import com.google.ar.sceneform.math.MathHelper;
 import com.google.ar.sceneform.math.Quaternion;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.ux.BaseTransformableNode;
@@ -27,26 +24,59 @@ import com.google.ar.sceneform.ux.TranslationController;
 import java.util.EnumSet;
 import java.util.List;
 
+import me.mischka.common.metrics.Metrics;
+
+/**
+ * Drags a model across its augmented image.
+ *
+ * <p>The touch ray is intersected with the image rectangle in plain math, so a drag costs no ARCore
+ * hit test and doesn't slow down as more planes are found. Only when the ray misses the image does
+ * it fall back to a hit test against planes, at most once per frame.
+ */
 public class AugmentedImageTranslationController extends TranslationController {
 
     private static final String TAG = "AugmentedImageTranslationController";
 
+    private final AugmentedImageTransformableNode node;
+
     public AugmentedImageTranslationController(
-        BaseTransformableNode transformableNode,
+        AugmentedImageTransformableNode transformableNode,
         DragGestureRecognizer gestureRecognizer
     ) {
         super(transformableNode, gestureRecognizer);
+        node = transformableNode;
     }
 
     @Nullable private HitResult lastArHitResult;
-    @Nullable private Vector3 desiredWorldPosition;
+    private final Vector3 targetWorldPosition = new Vector3();
+    // Whether the drag is on the image rather than on a plane found by the fallback hit test.
+    private boolean onImage;
+
+    // Scratch space for intersecting the touch ray with the image.
+    private final float[] viewMatrix = new float[16];
+    private final float[] projectionMatrix = new float[16];
+    private final float[] viewProjectionMatrix = new float[16];
+    private final float[] inverseViewProjectionMatrix = new float[16];
+    private final float[] imageMatrix = new float[16];
+    private final float[] clipPoint = new float[4];
+    private final float[] worldPoint = new float[4];
+    private final float[] rayOrigin = new float[3];
+    private final float[] rayDirection = new float[3];
+    private final float[] imageHit = new float[3];
+    private long matricesTimestamp;
+
+    @Nullable private HitResult cachedHitResult;
+    private long hitTestTimestamp;
 
     private EnumSet<Plane.Type> allowedPlaneTypes = EnumSet.allOf(Plane.Type.class);
 
-    private static final float LERP_SPEED = 12.0f;
-    private static final float POSITION_LENGTH_THRESHOLD = 0.01f;
+    private static final float NEAR_PLANE = 0.1f;
+    private static final float FAR_PLANE = 100f;
 
-    /** Sets which types of ArCore Planes this TranslationController is allowed to translate on. */
+    /**
+     * Sets which types of ArCore Planes this TranslationController is allowed to translate on when
+     * the drag leaves the image.
+     */
     public void setAllowedPlaneTypes(EnumSet<Plane.Type> allowedPlaneTypes) {
         this.allowedPlaneTypes = allowedPlaneTypes;
     }
@@ -59,16 +89,11 @@ public class AugmentedImageTranslationController extends TranslationController {
         return allowedPlaneTypes;
     }
 
-    @Override
-    public void onUpdated(Node node, FrameTime frameTime) {
-        updatePosition(frameTime);
-    }
-
     @Override
     public boolean isTransforming() {
-        // As long as the transformable node is still interpolating towards the final pose, this
+        // As long as the transformable node is still moving towards the final position, this
         // controller is still transforming.
-        return super.isTransforming() || desiredWorldPosition != null;
+        return super.isTransforming() || node.isPositionMoving();
     }
 
     @Override
@@ -92,7 +117,7 @@ public class AugmentedImageTranslationController extends TranslationController {
 
     @Override
     public void onContinueTransformation(DragGesture gesture) {
-        Log.d(TAG, "onContinueTransformation");
+        Metrics.increment(AppMetrics.TRANSLATE_UPDATES);
         Scene scene = getTransformableNode().getScene();
         if (scene == null) {
             return;
@@ -109,83 +134,136 @@ public class AugmentedImageTranslationController extends TranslationController {
         }
 
         Vector3 position = gesture.getPosition();
-        List<HitResult> hitResultList = frame.hitTest(position.x, position.y);
-        for (int i = 0; i < hitResultList.size(); i++) {
-            HitResult hit = hitResultList.get(i);
-            Trackable trackable = hit.getTrackable();
+        AugmentedImage image = getAnchorNodeOrDie().getImage();
+        if (image != null && image.getTrackingState() == TrackingState.TRACKING
+                && intersectImage(scene, frame, image, position.x, position.y)) {
+            targetWorldPosition.set(imageHit[0], imageHit[1], imageHit[2]);
+            node.setTargetWorldPosition(targetWorldPosition);
+            onImage = true;
+            return;
+        }
+
+        HitResult hit = hitTestPlanes(frame, position.x, position.y);
+        if (hit != null) {
             Pose pose = hit.getHitPose();
-            if (trackable instanceof Plane) {
-                Plane plane = (Plane) trackable;
-                if (allowedPlaneTypes.contains(plane.getType())) {
-                    desiredWorldPosition = new Vector3(pose.tx(), pose.ty(), pose.tz());
-
-                    lastArHitResult = hit;
-                    break;
-                }
-            }
+            targetWorldPosition.set(pose.tx(), pose.ty(), pose.tz());
+            node.setTargetWorldPosition(targetWorldPosition);
+            lastArHitResult = hit;
+            onImage = false;
         }
     }
 
     @Override
     public void onEndTransformation(DragGesture gesture) {
-        HitResult hitResult = lastArHitResult;
-        if (hitResult == null) {
-            return;
-        }
-
-        if (hitResult.getTrackable().getTrackingState() == TrackingState.TRACKING) {
-            AnchorNode anchorNode = getAnchorNodeOrDie();
-
-            Anchor oldAnchor = anchorNode.getAnchor();
-            if (oldAnchor != null) {
-                oldAnchor.detach();
+        AugmentedImageNodeAnchor anchorNode = getAnchorNodeOrDie();
+        Vector3 worldPosition = node.getWorldPosition();
+        Quaternion worldRotation = node.getWorldRotation();
+
+        // The lifecycle manager detaches the old anchor.
+        if (onImage) {
+            AugmentedImage image = anchorNode.getImage();
+            if (image != null && image.getTrackingState() == TrackingState.TRACKING) {
+                imageHit[0] = targetWorldPosition.x;
+                imageHit[1] = targetWorldPosition.y;
+                imageHit[2] = targetWorldPosition.z;
+                anchorNode.getLifecycleManager().reanchor(
+                        anchorNode, new Pose(imageHit, image.getCenterPose().getRotationQuaternion()));
             }
+        } else {
+            HitResult hitResult = lastArHitResult;
+            if (hitResult != null && hitResult.getTrackable().getTrackingState() == TrackingState.TRACKING) {
+                anchorNode.getLifecycleManager().replaceAnchor(anchorNode, hitResult.createAnchor());
+            }
+        }
 
-            Anchor newAnchor = hitResult.createAnchor();
-
-            Vector3 worldPosition = getTransformableNode().getWorldPosition();
-            Quaternion worldRotation = getTransformableNode().getWorldRotation();
+        node.setWorldPosition(worldPosition);
+        node.setWorldRotation(worldRotation);
+        node.onAnchorChanged(targetWorldPosition);
 
-            anchorNode.setAnchor(newAnchor);
+        onImage = false;
+        lastArHitResult = null;
+        cachedHitResult = null;
+    }
 
+    /**
+     * Intersects the touch ray at screen point ({@code x}, {@code y}) with the image, leaving the
+     * hit in {@code imageHit}. The camera and image matrices are refreshed once per frame.
+     */
+    private boolean intersectImage(Scene scene, Frame frame, AugmentedImage image, float x, float y) {
+        if (frame.getTimestamp() != matricesTimestamp) {
+            matricesTimestamp = frame.getTimestamp();
+            Camera arCamera = frame.getCamera();
+            arCamera.getViewMatrix(viewMatrix, 0);
+            arCamera.getProjectionMatrix(projectionMatrix, 0, NEAR_PLANE, FAR_PLANE);
+            Matrix.multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
+            if (!Matrix.invertM(inverseViewProjectionMatrix, 0, viewProjectionMatrix, 0)) {
+                matricesTimestamp = 0;
+                return false;
+            }
+            image.getCenterPose().toMatrix(imageMatrix, 0);
+        }
 
-            getTransformableNode().setWorldPosition(worldPosition);
-            getTransformableNode().setWorldRotation(worldRotation);
+        int width = scene.getView().getWidth();
+        int height = scene.getView().getHeight();
+        if (width == 0 || height == 0) {
+            return false;
+        }
+        float ndcX = 2 * x / width - 1;
+        float ndcY = 1 - 2 * y / height;
+        unproject(ndcX, ndcY, -1, rayOrigin);
+        unproject(ndcX, ndcY, 1, rayDirection);
+        for (int i = 0; i < 3; i++) {
+            rayDirection[i] -= rayOrigin[i];
         }
 
-        desiredWorldPosition = null;
+        return GestureMath.intersectImage(
+                rayOrigin, rayDirection, imageMatrix, image.getExtentX(), image.getExtentZ(), imageHit);
     }
 
-    private AnchorNode getAnchorNodeOrDie() {
-        Node parent = getTransformableNode().getParent();
-        if (!(parent instanceof AnchorNode)) {
-            throw new IllegalStateException("TransformableNode must have an AnchorNode as a parent.");
-        }
-
-        return (AnchorNode) parent;
+    /** Sets {@code out} to the world position of the given normalized device coordinates. */
+    private void unproject(float ndcX, float ndcY, float ndcZ, float[] out) {
+        clipPoint[0] = ndcX;
+        clipPoint[1] = ndcY;
+        clipPoint[2] = ndcZ;
+        clipPoint[3] = 1;
+        Matrix.multiplyMV(worldPoint, 0, inverseViewProjectionMatrix, 0, clipPoint, 0);
+        out[0] = worldPoint[0] / worldPoint[3];
+        out[1] = worldPoint[1] / worldPoint[3];
+        out[2] = worldPoint[2] / worldPoint[3];
     }
 
-    private void updatePosition(FrameTime frameTime) {
-        // Store in local variable for nullness static analysis.
-        Vector3 desiredWorldPosition = this.desiredWorldPosition;
-        if (desiredWorldPosition == null) {
-            return;
+    /**
+     * Hit tests against the allowed planes, for when the ray misses the image. Only the first call
+     * in a frame reaches ARCore; later ones in the same frame reuse its result.
+     */
+    @Nullable
+    private HitResult hitTestPlanes(Frame frame, float x, float y) {
+        if (frame.getTimestamp() == hitTestTimestamp) {
+            return cachedHitResult;
         }
+        hitTestTimestamp = frame.getTimestamp();
+        cachedHitResult = null;
 
-        Vector3 worldPosition = getTransformableNode().getWorldPosition();
-        float lerpFactor = MathHelper.clamp(frameTime.getDeltaSeconds() * LERP_SPEED, 0, 1);
-        worldPosition = Vector3.lerp(worldPosition, desiredWorldPosition, lerpFactor);
-
-        float lengthDiff = Math.abs(Vector3.subtract(desiredWorldPosition, worldPosition).length());
-        if (lengthDiff <= POSITION_LENGTH_THRESHOLD) {
-            worldPosition = desiredWorldPosition;
-            this.desiredWorldPosition = null;
+        long hitTestStart = Metrics.begin(AppMetrics.HIT_TEST);
+        List<HitResult> hitResultList = frame.hitTest(x, y);
+        Metrics.end(AppMetrics.HIT_TEST, hitTestStart);
+        for (int i = 0; i < hitResultList.size(); i++) {
+            HitResult hit = hitResultList.get(i);
+            Trackable trackable = hit.getTrackable();
+            if (trackable instanceof Plane && allowedPlaneTypes.contains(((Plane) trackable).getType())) {
+                cachedHitResult = hit;
+                break;
+            }
         }
-
-        getTransformableNode().setWorldPosition(worldPosition);
+        return cachedHitResult;
     }
 
-    private static float dotQuaternion(Quaternion lhs, Quaternion rhs) {
-        return lhs.x * rhs.x + lhs.y * rhs.y + lhs.z * rhs.z + lhs.w * rhs.w;
+    private AugmentedImageNodeAnchor getAnchorNodeOrDie() {
+        Node parent = getTransformableNode().getParent();
+        if (!(parent instanceof AugmentedImageNodeAnchor)) {
+            throw new IllegalStateException("TransformableNode must have an AugmentedImageNodeAnchor as a parent.");
+        }
+
+        return (AugmentedImageNodeAnchor) parent;
     }
 }
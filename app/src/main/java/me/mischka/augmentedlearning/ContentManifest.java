@@ -0,0 +1,158 @@
+package me.mischka.augmentedlearning;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.ar.sceneform.math.Vector3;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Model metadata for every image in the database, addressed by image index.
+ *
+ * <p>The manifest is generated at build time by the {@code generateContentManifest} task from
+ * {@code sampledata/image_list.txt} and {@code sampledata/models.txt}, and loaded once into
+ * parallel arrays. See {@code GenerateContentManifestTask} for the file layout.
+ */
+public class ContentManifest {
+    private static final String TAG = "ContentManifest";
+
+    public static final String ASSET = "content.manifest";
+
+    private static final int MAGIC = 0x414C434D;
+    private static final int VERSION = 3;
+
+    // Encoded look directions, in the order written by the manifest generator.
+    public static final byte LOOK_LEFT = 0;
+    public static final byte LOOK_RIGHT = 1;
+    public static final byte LOOK_UP = 2;
+    public static final byte LOOK_DOWN = 3;
+    public static final byte LOOK_FORWARD = 4;
+    public static final byte LOOK_BACK = 5;
+
+    private final String[] categoryNames;
+    private final String[] names;
+    private final String[] modelPaths;
+    private final byte[] lookDirections;
+    private final float[] scales;
+    private final short[] categories;
+    private final byte[] lodCounts;
+
+    private ContentManifest(int categoryCount, int count) {
+        categoryNames = new String[categoryCount];
+        names = new String[count];
+        modelPaths = new String[count];
+        lookDirections = new byte[count];
+        scales = new float[count];
+        categories = new short[count];
+        lodCounts = new byte[count];
+    }
+
+    /** Loads the manifest from the app's assets, or returns an empty one if it can't be read. */
+    public static ContentManifest load(Context context) {
+        try (DataInputStream in =
+                     new DataInputStream(new BufferedInputStream(context.getAssets().open(ASSET)))) {
+            return read(in);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read " + ASSET, e);
+            return new ContentManifest(0, 0);
+        }
+    }
+
+    private static ContentManifest read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a content manifest");
+        }
+        int version = in.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported content manifest version " + version);
+        }
+
+        int categoryCount = in.readUnsignedShort();
+        String[] categoryNames = new String[categoryCount];
+        for (int i = 0; i < categoryCount; i++) {
+            categoryNames[i] = in.readUTF();
+        }
+
+        ContentManifest manifest = new ContentManifest(categoryCount, in.readInt());
+        System.arraycopy(categoryNames, 0, manifest.categoryNames, 0, categoryCount);
+        for (int i = 0; i < manifest.names.length; i++) {
+            manifest.names[i] = in.readUTF();
+            manifest.modelPaths[i] = in.readUTF();
+            manifest.lookDirections[i] = in.readByte();
+            manifest.scales[i] = in.readFloat();
+            manifest.categories[i] = in.readShort();
+            manifest.lodCounts[i] = in.readByte();
+        }
+        return manifest;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public String getModelPath(int index) {
+        return modelPaths[index];
+    }
+
+    public byte getLookDirection(int index) {
+        return lookDirections[index];
+    }
+
+    public float getScale(int index) {
+        return scales[index];
+    }
+
+    public int getCategory(int index) {
+        return categories[index];
+    }
+
+    /** Returns how many reduced levels of detail were generated for the model at {@code index}. */
+    public int getLodCount(int index) {
+        return lodCounts[index];
+    }
+
+    public String getCategoryName(int category) {
+        return categoryNames[category];
+    }
+
+    public int getCategoryCount() {
+        return categoryNames.length;
+    }
+
+    /**
+     * Returns the asset path of a reduced level of detail of {@code modelPath}, as named by the
+     * {@code generateLods} task: level {@code n} of {@code name.sfb} is {@code name_lodn.sfb}.
+     */
+    public static String lodPath(String modelPath, int level) {
+        int extension = modelPath.lastIndexOf('.');
+        String base = extension < 0 ? modelPath : modelPath.substring(0, extension);
+        String suffix = extension < 0 ? "" : modelPath.substring(extension);
+        return base + "_lod" + level + suffix;
+    }
+
+    /** Returns the direction for an encoded look direction. */
+    public static Vector3 toVector(byte lookDirection) {
+        switch (lookDirection) {
+            case LOOK_RIGHT:
+                return Vector3.right();
+            case LOOK_UP:
+                return Vector3.up();
+            case LOOK_DOWN:
+                return Vector3.down();
+            case LOOK_FORWARD:
+                return Vector3.forward();
+            case LOOK_BACK:
+                return Vector3.back();
+            case LOOK_LEFT:
+            default:
+                return Vector3.left();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package me.mischka.augmentedlearning;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.mischka.common.helpers.ByteBufferInputStream;
+
+/**
+ * The models of each image category, stored as uncompressed, indexed archives called content
+ * packs, as written by the {@code buildContentPacks} task.
+ *
+ * <p>A pack is looked for in the {@code packs} directory of the app's external files, where packs
+ * that are not bundled can be installed, and then in the {@code packs} directory of the APK's
+ * assets. It is memory-mapped and its index read the first time one of its models is needed,
+ * which is when the first image of its category is detected, so start-up reads no models at all
+ * and memory follows the categories actually scanned. Models are handed out as views of the
+ * mapping, without copying.
+ */
+public class ContentPacks {
+    private static final String TAG = "ContentPacks";
+
+    public static final String DIRECTORY = "packs";
+    public static final String EXTENSION = ".pack";
+
+    private static final int MAGIC = 0x414C4350;
+    private static final int VERSION = 1;
+
+    private static final String COMMON_PACK = "common";
+
+    /** An open pack: its mapping and the offset and length of each model in it. */
+    private static final class Pack {
+        final ByteBuffer buffer;
+        final Map<String, long[]> entries;
+
+        Pack(ByteBuffer buffer, Map<String, long[]> entries) {
+            this.buffer = buffer;
+            this.entries = entries;
+        }
+    }
+
+    // Placeholder for packs that are not installed, so they are looked for only once.
+    private static final Pack MISSING = new Pack(ByteBuffer.allocate(0), new HashMap<>());
+
+    private final Context context;
+    private final File installDirectory;
+
+    // Asset path -> pack name, for every model of the manifest and its levels of detail.
+    private final Map<String, String> packsByModel = new HashMap<>();
+    private final Map<String, Pack> packs = new HashMap<>();
+
+    public ContentPacks(Context context, ContentManifest manifest) {
+        this.context = context.getApplicationContext();
+        File externalFiles = context.getExternalFilesDir(null);
+        this.installDirectory = new File(externalFiles != null ? externalFiles : context.getFilesDir(), DIRECTORY);
+
+        for (int i = 0; i < manifest.size(); i++) {
+            int category = manifest.getCategory(i);
+            String pack = packName(category >= 0 ? manifest.getCategoryName(category) : "");
+            String modelPath = manifest.getModelPath(i);
+            packsByModel.put(modelPath, pack);
+            for (int level = 1; level <= manifest.getLodCount(i); level++) {
+                packsByModel.put(ContentManifest.lodPath(modelPath, level), pack);
+            }
+        }
+    }
+
+    /** Returns the pack of the models of {@code category}: the category itself, or {@code common}. */
+    public static String packName(String category) {
+        return category.isEmpty() ? COMMON_PACK : category;
+    }
+
+    /** Returns the pack {@code modelPath} is in, or null if it is not in a pack. */
+    @Nullable
+    public String getPack(String modelPath) {
+        return packsByModel.get(modelPath);
+    }
+
+    /** Returns whether the pack called {@code pack} is installed or bundled, without opening it. */
+    public boolean isInstalled(String pack) {
+        if (new File(installDirectory, pack + EXTENSION).isFile()) {
+            return true;
+        }
+        try (AssetFileDescriptor fd = context.getAssets().openFd(DIRECTORY + "/" + pack + EXTENSION)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Drops the models of images whose pack is neither installed nor bundled from {@code registry},
+     * so that they are tracked without content, and returns the names of the missing packs.
+     */
+    public List<String> retainInstalled(AugmentedImageRegistry registry) {
+        List<String> installed = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < registry.size(); i++) {
+            String modelPath = registry.getAssetPath(i);
+            String pack = modelPath != null ? packsByModel.get(modelPath) : null;
+            if (pack == null || installed.contains(pack)) {
+                continue;
+            }
+            if (!missing.contains(pack)) {
+                if (isInstalled(pack)) {
+                    installed.add(pack);
+                    continue;
+                }
+                missing.add(pack);
+            }
+            registry.removeContent(i);
+        }
+        return missing;
+    }
+
+    /**
+     * Returns a read-only view of the model at {@code modelPath} in its pack, opening the pack if
+     * needed, or null if it is not in an installed pack.
+     */
+    @Nullable
+    public synchronized ByteBuffer find(String modelPath) {
+        String name = packsByModel.get(modelPath);
+        if (name == null) {
+            return null;
+        }
+        Pack pack = packs.get(name);
+        if (pack == null) {
+            pack = open(name);
+            packs.put(name, pack);
+        }
+
+        long[] entry = pack.entries.get(modelPath);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer view = pack.buffer.duplicate();
+        view.position((int) entry[0]);
+        view.limit((int) (entry[0] + entry[1]));
+        return view.slice();
+    }
+
+    private Pack open(String name) {
+        long start = SystemClock.elapsedRealtime();
+        ByteBuffer buffer;
+        try {
+            buffer = map(name);
+        } catch (IOException e) {
+            Log.w(TAG, "Content pack " + name + " is not installed");
+            return MISSING;
+        }
+
+        Map<String, long[]> entries = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer))) {
+            if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+                throw new IOException("Not a content pack");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long offset = in.readLong();
+                long length = in.readLong();
+                if (offset < 0 || length < 0 || offset + length > buffer.capacity()) {
+                    throw new IOException("Entry " + path + " is outside the pack");
+                }
+                entries.put(path, new long[]{offset, length});
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read content pack " + name, e);
+            return MISSING;
+        }
+
+        Log.d(TAG, "Opened content pack " + name + ", " + entries.size() + " models in "
+                + buffer.capacity() + " bytes, in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        return new Pack(buffer, entries);
+    }
+
+    /** Maps the pack called {@code name}, preferring an installed one over the one in the APK. */
+    private ByteBuffer map(String name) throws IOException {
+        File installed = new File(installDirectory, name + EXTENSION);
+        if (installed.isFile()) {
+            try (FileInputStream stream = new FileInputStream(installed)) {
+                return stream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, installed.length());
+            }
+        }
+
+        // Bundled packs are stored uncompressed, so they can be mapped straight out of the APK.
+        try (AssetFileDescriptor fd = context.getAssets().openFd(DIRECTORY + "/" + name + EXTENSION);
+             FileInputStream stream = fd.createInputStream()) {
+            return stream.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+        }
+    }
+}
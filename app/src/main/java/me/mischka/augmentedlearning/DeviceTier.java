@@ -0,0 +1,49 @@
+package me.mischka.augmentedlearning;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+/**
+ * A coarse class of device, by memory, that sizes the budgets of the app.
+ */
+public enum DeviceTier {
+    /** Low-RAM devices and devices with up to 2 GB, e.g. entry level tablets. */
+    LOW(24L * 1024 * 1024, 8L * 1024 * 1024),
+    /** Up to 4 GB. */
+    MID(64L * 1024 * 1024, 16L * 1024 * 1024),
+    HIGH(128L * 1024 * 1024, 32L * 1024 * 1024);
+
+    private static final long MB = 1024 * 1024;
+
+    private final long liveModelBytes;
+    private final long modelCacheBytes;
+
+    DeviceTier(long liveModelBytes, long modelCacheBytes) {
+        this.liveModelBytes = liveModelBytes;
+        this.modelCacheBytes = modelCacheBytes;
+    }
+
+    /** Returns the estimated GPU and heap memory that models shown at once may use. */
+    public long getLiveModelBytes() {
+        return liveModelBytes;
+    }
+
+    /** Returns the budget of the {@link ModelRenderableCache}, in asset bytes. */
+    public long getModelCacheBytes() {
+        return modelCacheBytes;
+    }
+
+    public static DeviceTier of(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null || activityManager.isLowRamDevice()) {
+            return LOW;
+        }
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        long totalMb = memoryInfo.totalMem / MB;
+        if (totalMb <= 2048) {
+            return LOW;
+        }
+        return totalMb <= 4096 ? MID : HIGH;
+    }
+}
@@ -0,0 +1,95 @@
+package me.mischka.augmentedlearning;
+
+import com.google.ar.sceneform.math.Quaternion;
+import com.google.ar.sceneform.math.Vector3;
+
+/**
+ * The math behind the gesture stack, kept free of Android types so it can be benchmarked on the
+ * JVM (see the {@code benchmarks} module).
+ */
+public final class GestureMath {
+    private GestureMath() {
+    }
+
+    /**
+     * Sets {@code out} to {@code rotation} turned by {@code degrees} about {@code axis}, given in
+     * the space {@code rotation} is relative to, without allocating. {@code out} may be {@code
+     * rotation}.
+     */
+    public static void rotate(Quaternion rotation, Vector3 axis, float degrees, Quaternion out) {
+        float length = (float) Math.sqrt(axis.x * axis.x + axis.y * axis.y + axis.z * axis.z);
+        if (length == 0) {
+            out.set(rotation.x, rotation.y, rotation.z, rotation.w);
+            return;
+        }
+        double halfAngle = Math.toRadians(degrees) / 2;
+        float sin = (float) Math.sin(halfAngle) / length;
+        float ax = axis.x * sin;
+        float ay = axis.y * sin;
+        float az = axis.z * sin;
+        float aw = (float) Math.cos(halfAngle);
+
+        // The axis rotation applied after rotation: (axis, degrees) * rotation.
+        float bx = rotation.x;
+        float by = rotation.y;
+        float bz = rotation.z;
+        float bw = rotation.w;
+        out.set(
+                aw * bx + ax * bw + ay * bz - az * by,
+                aw * by - ax * bz + ay * bw + az * bx,
+                aw * bz + ax * by - ay * bx + az * bw,
+                aw * bw - ax * bx - ay * by - az * bz);
+    }
+
+    /**
+     * Returns the signed angle in degrees from the direction ({@code fromX}, {@code fromY}) to the
+     * direction ({@code toX}, {@code toY}), in screen coordinates, between -180 and 180.
+     */
+    public static float angleBetween(float fromX, float fromY, float toX, float toY) {
+        float cross = fromX * toY - fromY * toX;
+        float dot = fromX * toX + fromY * toY;
+        return (float) Math.toDegrees(Math.atan2(cross, dot));
+    }
+
+    /**
+     * Intersects a ray with the rectangle of an augmented image.
+     *
+     * <p>{@code imageMatrix} is the column-major pose matrix of the image center, whose Y axis is the
+     * image normal and X and Z axes lie along its extents.
+     *
+     * @param out receives the world position of the hit.
+     * @return false if the ray is parallel to the image, points away from it or passes beside it.
+     *     {@code out} is only written on a hit.
+     */
+    public static boolean intersectImage(
+            float[] rayOrigin, float[] rayDirection, float[] imageMatrix, float extentX, float extentZ, float[] out) {
+        // Bring the ray into image space; the pose is rigid, so the inverse rotation is the transpose.
+        float ox = rayOrigin[0] - imageMatrix[12];
+        float oy = rayOrigin[1] - imageMatrix[13];
+        float oz = rayOrigin[2] - imageMatrix[14];
+        float localOriginY = ox * imageMatrix[4] + oy * imageMatrix[5] + oz * imageMatrix[6];
+        float localDirectionY =
+                rayDirection[0] * imageMatrix[4] + rayDirection[1] * imageMatrix[5] + rayDirection[2] * imageMatrix[6];
+        if (Math.abs(localDirectionY) < 1e-6f) {
+            return false;
+        }
+        float t = -localOriginY / localDirectionY;
+        if (t < 0) {
+            return false;
+        }
+
+        float hx = ox + rayDirection[0] * t;
+        float hy = oy + rayDirection[1] * t;
+        float hz = oz + rayDirection[2] * t;
+        float localX = hx * imageMatrix[0] + hy * imageMatrix[1] + hz * imageMatrix[2];
+        float localZ = hx * imageMatrix[8] + hy * imageMatrix[9] + hz * imageMatrix[10];
+        if (Math.abs(localX) > extentX * 0.5f || Math.abs(localZ) > extentZ * 0.5f) {
+            return false;
+        }
+
+        out[0] = imageMatrix[12] + imageMatrix[0] * localX + imageMatrix[8] * localZ;
+        out[1] = imageMatrix[13] + imageMatrix[1] * localX + imageMatrix[9] * localZ;
+        out[2] = imageMatrix[14] + imageMatrix[2] * localX + imageMatrix[10] * localZ;
+        return true;
+    }
+}
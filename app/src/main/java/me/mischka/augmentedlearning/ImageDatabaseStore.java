@@ -0,0 +1,393 @@
+package me.mischka.augmentedlearning;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.ar.core.AugmentedImageDatabase;
+import com.google.ar.core.Session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.mischka.common.helpers.ByteBufferInputStream;
+import me.mischka.common.metrics.Metrics;
+
+/**
+ * Images added to the augmented image database at runtime, e.g. a teacher's own cards, and
+ * snapshots of the extended database.
+ *
+ * <p>Added images are copied into the app's files together with a list of their names, physical
+ * widths and models, which is the lasting record of what was added. The extended database is
+ * serialized into the cache directory once images have been added, so that the next launch
+ * deserializes it instead of extracting the features of every added image again. A snapshot is
+ * only used until the app is updated, since the database in the APK may have changed with it; after
+ * that, or once the system has cleared the cache, the images are extracted again from their copies.
+ *
+ * <p>Images are extracted and snapshots written on the single database thread of {@link
+ * AugmentedImageFragment}; {@link #findModelPath} and {@link #contains} may be called from any
+ * thread.
+ */
+public class ImageDatabaseStore {
+    private static final String TAG = "ImageDatabaseStore";
+
+    private static final String IMAGES_DIRECTORY = "added_images";
+    private static final String IMAGE_LIST = "images.list";
+    private static final String SNAPSHOT = "images.imgdb";
+    private static final String SNAPSHOT_INFO = "images.imgdb.info";
+
+    private static final int MAGIC = 0x414C4944;
+    private static final int VERSION = 1;
+
+    // ARCore wants at least 300 pixels across; larger images only take longer to extract.
+    private static final int MAX_IMAGE_SIZE = 1024;
+
+    /** An image added at runtime. */
+    public static final class Image {
+        public final String name;
+        public final float physicalWidth;
+        @Nullable public final String modelPath;
+        final String fileName;
+
+        Image(String name, float physicalWidth, @Nullable String modelPath, String fileName) {
+            this.name = name;
+            this.physicalWidth = physicalWidth;
+            this.modelPath = modelPath;
+            this.fileName = fileName;
+        }
+    }
+
+    private final Context context;
+    private final File imagesDirectory;
+    private final File snapshotFile;
+    private final File snapshotInfoFile;
+    // Changes whenever the app, and with it the image database in the APK, is updated. Looked up on
+    // the database thread, as it takes a call to the package manager.
+    private long appVersionStamp = -1;
+
+    // Guarded by this, as the only state shared with other threads.
+    private final List<Image> images = new ArrayList<>();
+    private boolean loaded;
+
+    // How many of the added images the snapshot on disk contains, or -1 if there is none.
+    private int snapshotCount = -1;
+
+    public ImageDatabaseStore(Context context) {
+        this.context = context;
+        imagesDirectory = new File(context.getFilesDir(), IMAGES_DIRECTORY);
+        snapshotFile = new File(context.getCacheDir(), SNAPSHOT);
+        snapshotInfoFile = new File(context.getCacheDir(), SNAPSHOT_INFO);
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return images.size();
+    }
+
+    private synchronized Image get(int index) {
+        return images.get(index);
+    }
+
+    /** Returns the model shown on the added image called {@code name}, or null if it has none. */
+    @Nullable
+    public synchronized String findModelPath(String name) {
+        Image image = find(name);
+        return image != null ? image.modelPath : null;
+    }
+
+    public synchronized boolean contains(String name) {
+        return find(name) != null;
+    }
+
+    /**
+     * Deserializes the latest snapshot and adds the images added since it was written. Returns null
+     * if there is no usable snapshot, in which case the database should be loaded from the APK and
+     * passed to {@link #addSavedImages}.
+     */
+    @Nullable
+    public AugmentedImageDatabase restoreSnapshot(Session session) {
+        int count = readSnapshotInfo();
+        if (count < 0 || count > size()) {
+            return null;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        AugmentedImageDatabase database;
+        try (FileInputStream stream = new FileInputStream(snapshotFile);
+             InputStream in = new ByteBufferInputStream(
+                     stream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, snapshotFile.length()))) {
+            database = AugmentedImageDatabase.deserialize(session, in);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to restore the image database snapshot", e);
+            deleteSnapshot();
+            return null;
+        }
+        snapshotCount = count;
+        Metrics.record(AppMetrics.DATABASE_RESTORE, (SystemClock.elapsedRealtime() - start) * 1_000_000L);
+        Log.d(TAG, "Restored " + database.getNumImages() + " images from the snapshot in "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
+
+        addSavedImages(database, count);
+        return database;
+    }
+
+    /** Extracts the added images from {@code from} on into {@code database}. */
+    public void addSavedImages(AugmentedImageDatabase database, int from) {
+        int size = size();
+        for (int i = from; i < size; i++) {
+            Image image = get(i);
+            try {
+                extract(database, image.name, new File(imagesDirectory, image.fileName), image.physicalWidth);
+            } catch (IOException | RuntimeException e) {
+                // Keep it in the list; it may be fixed by the next app update.
+                Log.e(TAG, "Unable to add saved image " + image.name, e);
+            }
+        }
+    }
+
+    /**
+     * Extracts the features of the image file {@code source}, printed {@code physicalWidth} meters
+     * wide, into {@code database} and records it, with the model to show on it, so that it is
+     * restored on the next launch. This is expensive; it must not run on the UI thread.
+     *
+     * @return the index of the image in {@code database}.
+     */
+    public int addImage(AugmentedImageDatabase database, String name, File source, float physicalWidth,
+                        @Nullable String modelPath) throws IOException {
+        if (physicalWidth <= 0) {
+            throw new IllegalArgumentException("The physical width of " + name + " must be positive");
+        }
+        if (contains(name)) {
+            throw new IllegalArgumentException("There already is an image called " + name);
+        }
+
+        // Copied first, so the source may go away as soon as this returns.
+        if (!imagesDirectory.isDirectory() && !imagesDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + imagesDirectory);
+        }
+        File copy = new File(imagesDirectory, database.getNumImages() + "-" + source.getName());
+        copy(source, copy);
+
+        int index;
+        try {
+            index = extract(database, name, copy, physicalWidth);
+        } catch (IOException | RuntimeException e) {
+            copy.delete();
+            throw e;
+        }
+
+        synchronized (this) {
+            images.add(new Image(name, physicalWidth, modelPath, copy.getName()));
+            writeImageList();
+        }
+        return index;
+    }
+
+    /** Whether the snapshot is missing images, so {@link #saveSnapshot} should be called. */
+    public boolean needsSnapshot() {
+        int size = size();
+        return size > 0 && snapshotCount != size;
+    }
+
+    /**
+     * Serializes {@code database}, which must contain every added image, as the new snapshot. The
+     * file is written next to the old one and renamed over it, so a snapshot is never half written.
+     */
+    public void saveSnapshot(AugmentedImageDatabase database) {
+        if (!needsSnapshot()) {
+            return;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        int count = size();
+        File temporary = new File(snapshotFile.getPath() + ".tmp");
+        // Until the new info is written, neither snapshot is taken for the other's images.
+        snapshotInfoFile.delete();
+        snapshotCount = -1;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temporary))) {
+            database.serialize(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write the image database snapshot", e);
+            temporary.delete();
+            return;
+        }
+        if (!temporary.renameTo(snapshotFile)) {
+            Log.e(TAG, "Unable to replace " + snapshotFile);
+            temporary.delete();
+            return;
+        }
+        writeSnapshotInfo(count);
+        snapshotCount = count;
+        Log.d(TAG, "Saved a snapshot of " + database.getNumImages() + " images, " + snapshotFile.length()
+                + " bytes, in " + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    private int extract(AugmentedImageDatabase database, String name, File source, float physicalWidth)
+            throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        Bitmap bitmap = decode(source);
+        int index;
+        try {
+            index = database.addImage(name, bitmap, physicalWidth);
+        } finally {
+            bitmap.recycle();
+        }
+        long millis = SystemClock.elapsedRealtime() - start;
+        Metrics.record(AppMetrics.IMAGE_ADD, millis * 1_000_000L);
+        Log.d(TAG, "Added image " + name + " in " + millis + "ms");
+        return index;
+    }
+
+    /** Decodes {@code file}, subsampled to at most about {@link #MAX_IMAGE_SIZE} pixels across. */
+    private static Bitmap decode(File file) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unable to decode " + file);
+        }
+
+        int sampleSize = 1;
+        while (Math.max(options.outWidth, options.outHeight) / (sampleSize * 2) >= MAX_IMAGE_SIZE) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null) {
+            throw new IOException("Unable to decode " + file);
+        }
+        return bitmap;
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        try (InputStream in = new FileInputStream(from); OutputStream out = new FileOutputStream(to)) {
+            byte[] buffer = new byte[16 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        }
+    }
+
+    @Nullable
+    private synchronized Image find(String name) {
+        ensureLoaded();
+        for (int i = 0; i < images.size(); i++) {
+            if (images.get(i).name.equals(name)) {
+                return images.get(i);
+            }
+        }
+        return null;
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        File list = new File(imagesDirectory, IMAGE_LIST);
+        if (!list.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(list)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+                throw new IOException("Not an image list");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                float physicalWidth = in.readFloat();
+                String modelPath = in.readBoolean() ? in.readUTF() : null;
+                images.add(new Image(name, physicalWidth, modelPath, in.readUTF()));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read " + list, e);
+            images.clear();
+        }
+    }
+
+    private void writeImageList() throws IOException {
+        File list = new File(imagesDirectory, IMAGE_LIST);
+        File temporary = new File(imagesDirectory, IMAGE_LIST + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(images.size());
+            for (Image image : images) {
+                out.writeUTF(image.name);
+                out.writeFloat(image.physicalWidth);
+                out.writeBoolean(image.modelPath != null);
+                if (image.modelPath != null) {
+                    out.writeUTF(image.modelPath);
+                }
+                out.writeUTF(image.fileName);
+            }
+        }
+        if (!temporary.renameTo(list)) {
+            throw new IOException("Unable to replace " + list);
+        }
+    }
+
+    /** Returns how many added images the snapshot contains, or -1 if it is missing or out of date. */
+    private int readSnapshotInfo() {
+        if (!snapshotFile.isFile() || !snapshotInfoFile.isFile()) {
+            return -1;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(snapshotInfoFile))) {
+            if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION || in.readLong() != getAppVersionStamp()) {
+                return -1;
+            }
+            return in.readInt();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private void writeSnapshotInfo(int count) {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(snapshotInfoFile))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(getAppVersionStamp());
+            out.writeInt(count);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write " + snapshotInfoFile, e);
+            snapshotInfoFile.delete();
+        }
+    }
+
+    private long getAppVersionStamp() {
+        if (appVersionStamp < 0) {
+            appVersionStamp = 0;
+            try {
+                appVersionStamp =
+                        context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.w(TAG, "Unable to find our own package", e);
+            }
+        }
+        return appVersionStamp;
+    }
+
+    private void deleteSnapshot() {
+        snapshotInfoFile.delete();
+        snapshotFile.delete();
+        snapshotCount = -1;
+    }
+}
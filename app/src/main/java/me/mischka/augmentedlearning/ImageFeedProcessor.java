@@ -0,0 +1,82 @@
+package me.mischka.augmentedlearning;
+
+import java.util.Arrays;
+
+/**
+ * Runs the per-frame state machine of augmented images over a {@link TrackableFeed}, handing
+ * tracked images to a {@link Listener} to be anchored and followed, and stopped ones to be
+ * detached. Images that are only detected, {@link TrackableFeed.State#PAUSED PAUSED} while the
+ * camera is tracking, are left alone until they are tracked.
+ *
+ * <p>It keeps the last state of every image, by database index, so that it can tell how many
+ * are being tracked without looking at the images that were not updated. Nothing depends on ARCore
+ * or Sceneform, so the benchmarks module drives this same loop with synthetic feeds.
+ */
+public class ImageFeedProcessor {
+    /** Where tracked and stopped images are handed to. */
+    public interface Listener {
+        /** Called for every update of a tracked image, {@code update} of {@code feed}. */
+        void onImageTracking(TrackableFeed feed, int update);
+
+        /** Called when the image at {@code index} stops being tracked. */
+        void onImageStopped(int index);
+    }
+
+    private final Listener listener;
+
+    // By image index; null for images that have never been updated.
+    private TrackableFeed.State[] states = new TrackableFeed.State[0];
+    private int trackingCount;
+
+    public ImageFeedProcessor(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Hands the images updated in the frame of {@code feed} to the listener, in update order. */
+    public void process(TrackableFeed feed) {
+        int count = feed.getUpdateCount();
+        for (int update = 0; update < count; update++) {
+            int index = feed.getIndex(update);
+            TrackableFeed.State state = feed.getState(update);
+            setState(index, state);
+            switch (state) {
+                case PAUSED:
+                    // When an image is in PAUSED state, but the camera is not PAUSED, it has been detected,
+                    // but not yet tracked.
+                    break;
+
+                case TRACKING:
+                    listener.onImageTracking(feed, update);
+                    break;
+
+                case STOPPED:
+                    listener.onImageStopped(index);
+                    break;
+            }
+        }
+    }
+
+    /** How many images were tracking when last updated. */
+    public int getTrackingCount() {
+        return trackingCount;
+    }
+
+    /** Forgets the state of every image, for when the images are to be detected anew. */
+    public void reset() {
+        Arrays.fill(states, null);
+        trackingCount = 0;
+    }
+
+    private void setState(int index, TrackableFeed.State state) {
+        if (index >= states.length) {
+            states = Arrays.copyOf(states, Math.max(index + 1, states.length * 2));
+        }
+        if (states[index] == TrackableFeed.State.TRACKING) {
+            trackingCount--;
+        }
+        if (state == TrackableFeed.State.TRACKING) {
+            trackingCount++;
+        }
+        states[index] = state;
+    }
+}
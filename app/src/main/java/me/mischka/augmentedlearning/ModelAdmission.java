@@ -0,0 +1,118 @@
+package me.mischka.augmentedlearning;
+
+import android.util.Log;
+
+import me.mischka.common.metrics.Metrics;
+
+/**
+ * Keeps the models held by image nodes within a memory budget.
+ *
+ * <p>Each node's model is admitted before it is loaded, at an estimated GPU and heap cost. When
+ * admitting one would go over the budget, the {@link ModelBudget} picks the models to release from
+ * their nodes, and from the {@link ModelRenderableCache} unless another admitted node shows the
+ * same asset. A node whose model was released keeps its anchor, and gets the model back through
+ * admission the next time its image is seen.
+ */
+public class ModelAdmission {
+    private static final String TAG = "ModelAdmission";
+
+    // Textures are stored compressed in the .sfb files but decoded on the GPU, where they also get
+    // mipmaps, and vertex data is held on both sides while it uploads.
+    private static final int LIVE_COST_FACTOR = 4;
+
+    private final AugmentedImageRegistry registry;
+    private final ModelRenderableCache cache;
+    private final ModelBudget budget;
+
+    public ModelAdmission(AugmentedImageRegistry registry, ModelRenderableCache cache, long budgetBytes) {
+        this.registry = registry;
+        this.cache = cache;
+        this.budget = new ModelBudget(budgetBytes);
+        Metrics.set(AppMetrics.MODEL_BUDGET_KB, budgetBytes / 1024);
+        updateMetrics();
+    }
+
+    /** Records that the image at {@code index} was seen in the frame at {@code timestampNanos}. */
+    public void onSeen(int index, long timestampNanos) {
+        budget.onSeen(index, timestampNanos);
+    }
+
+    public boolean isAdmitted(int index) {
+        return budget.isAdmitted(index);
+    }
+
+    /**
+     * Makes room for the model of the image at {@code index}, releasing the models of the least
+     * recently seen images if needed. See {@link ModelBudget#findVictim}.
+     */
+    public void admit(int index) {
+        if (budget.isAdmitted(index)) {
+            return;
+        }
+        String assetPath = registry.getAssetPath(index);
+        if (assetPath == null) {
+            return;
+        }
+
+        long cost = cache.estimateBytes(assetPath) * LIVE_COST_FACTOR;
+        int victim;
+        while ((victim = budget.findVictim(index, cost)) >= 0) {
+            evict(victim);
+        }
+        budget.admit(index, cost);
+        updateMetrics();
+    }
+
+    /** Forgets the model of the image at {@code index}, whose node has been dropped. */
+    public void onReleased(int index) {
+        if (!budget.isAdmitted(index)) {
+            return;
+        }
+        budget.release(index);
+        updateMetrics();
+    }
+
+    /** Forgets every model, e.g. after every node has been dropped. */
+    public void clear() {
+        budget.clear();
+        updateMetrics();
+    }
+
+    public long getUsedBytes() {
+        return budget.getUsed();
+    }
+
+    public long getBudgetBytes() {
+        return budget.getBudget();
+    }
+
+    private void evict(int index) {
+        AugmentedImageNodeAnchor node = registry.getNode(index);
+        if (node != null) {
+            node.releaseModel();
+        }
+        onReleased(index);
+
+        String assetPath = registry.getAssetPath(index);
+        if (!isAssetAdmitted(assetPath)) {
+            cache.remove(assetPath);
+        }
+        Metrics.increment(AppMetrics.MODEL_EVICTIONS);
+        Log.d(TAG, "Released the model of " + registry.getName(index) + ", " + budget.getUsed() + " of "
+                + budget.getBudget() + " bytes in use");
+    }
+
+    private boolean isAssetAdmitted(String assetPath) {
+        for (int i = 0; i < registry.size(); i++) {
+            if (budget.isAdmitted(i) && assetPath.equals(registry.getAssetPath(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void updateMetrics() {
+        Metrics.set(AppMetrics.MODEL_USED_KB, budget.getUsed() / 1024);
+        Metrics.set(AppMetrics.LIVE_MODELS, budget.getLiveCount());
+    }
+}
@@ -0,0 +1,116 @@
+package me.mischka.augmentedlearning;
+
+import java.util.Arrays;
+
+/**
+ * Decides which models fit within a budget, and which to release when one does not: those of the
+ * least recently seen images, but never those of images in view, seen in the current or the
+ * previous frame. An image updated late in a frame has not been seen in it yet. When the models in
+ * view alone fill the budget, the model is admitted over budget, rather than having them release
+ * and reload each other every frame.
+ *
+ * <p>Costs are in whatever unit the budget is, e.g. bytes. Nothing is released here; {@link
+ * ModelAdmission} does that for the app, on the victims it is given.
+ */
+public class ModelBudget {
+    private final long budget;
+    private long used;
+    private int liveCount;
+    // The timestamps of the latest two frames an image was seen in.
+    private long frameNanos;
+    private long previousFrameNanos;
+
+    // By image index.
+    private long[] costs = new long[0];
+    private long[] lastSeenNanos = new long[0];
+    private boolean[] admitted = new boolean[0];
+
+    public ModelBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /** Records that the image at {@code index} was seen in the frame at {@code timestampNanos}. */
+    public void onSeen(int index, long timestampNanos) {
+        ensureCapacity(index + 1);
+        lastSeenNanos[index] = timestampNanos;
+        if (timestampNanos > frameNanos) {
+            previousFrameNanos = frameNanos;
+            frameNanos = timestampNanos;
+        }
+    }
+
+    public boolean isAdmitted(int index) {
+        return index < admitted.length && admitted[index];
+    }
+
+    /**
+     * Returns the image whose model is to be released before the model of the image at {@code
+     * index}, costing {@code cost}, is admitted, or -1 if it fits or nothing can be released for it.
+     * Release the victim and ask again until -1.
+     */
+    public int findVictim(int index, long cost) {
+        ensureCapacity(index + 1);
+        if (used + cost <= budget) {
+            return -1;
+        }
+        int oldest = -1;
+        for (int i = 0; i < admitted.length; i++) {
+            if (admitted[i] && i != index && lastSeenNanos[i] < previousFrameNanos
+                    && (oldest < 0 || lastSeenNanos[i] < lastSeenNanos[oldest])) {
+                oldest = i;
+            }
+        }
+        return oldest;
+    }
+
+    /** Admits the model of the image at {@code index} at {@code cost}, whether it fits or not. */
+    public void admit(int index, long cost) {
+        ensureCapacity(index + 1);
+        if (admitted[index]) {
+            return;
+        }
+        costs[index] = cost;
+        admitted[index] = true;
+        used += cost;
+        liveCount++;
+    }
+
+    /** Forgets the model of the image at {@code index}, if it was admitted. */
+    public void release(int index) {
+        if (!isAdmitted(index)) {
+            return;
+        }
+        admitted[index] = false;
+        used -= costs[index];
+        liveCount--;
+    }
+
+    /** Forgets every model. */
+    public void clear() {
+        Arrays.fill(admitted, false);
+        used = 0;
+        liveCount = 0;
+    }
+
+    public long getUsed() {
+        return used;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public int getLiveCount() {
+        return liveCount;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= admitted.length) {
+            return;
+        }
+        capacity = Math.max(capacity, admitted.length * 2);
+        costs = Arrays.copyOf(costs, capacity);
+        lastSeenNanos = Arrays.copyOf(lastSeenNanos, capacity);
+        admitted = Arrays.copyOf(admitted, capacity);
+    }
+}
@@ -0,0 +1,224 @@
+package me.mischka.augmentedlearning;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.ar.sceneform.rendering.ModelRenderable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import me.mischka.common.helpers.ByteBufferInputStream;
+import me.mischka.common.metrics.Metrics;
+
+/**
+ * Process-wide cache of loaded {@link ModelRenderable}s keyed by asset path.
+ *
+ * <p>Each model is parsed once and every caller receives its own {@link ModelRenderable#makeCopy()}
+ * so that nodes can be given a renderable without sharing per-node state. Concurrent requests for a
+ * model that is still loading are joined onto the same future. Loaded models are kept in
+ * least-recently-used order and evicted once the estimated size of the cache exceeds its byte
+ * budget.
+ *
+ * <p>Models in {@link ContentPacks} are read straight out of the pack's mapping; others are read
+ * from the APK's assets.
+ *
+ * <p>Sceneform requires renderables to be built on the UI thread, so this class is expected to be
+ * used from there as well.
+ */
+@SuppressWarnings({"AndroidApiChecker"})
+public class ModelRenderableCache {
+    private static final String TAG = "ModelRenderableCache";
+
+    private static final long DEFAULT_BYTE_BUDGET = 16L * 1024 * 1024;
+
+    // Used when the size of an asset can't be determined, e.g. when it is stored compressed.
+    private static final long DEFAULT_ENTRY_BYTES = 512L * 1024;
+
+    private static ModelRenderableCache instance;
+
+    private final Context context;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<ModelRenderable>> inFlight = new HashMap<>();
+
+    private long byteBudget = DEFAULT_BYTE_BUDGET;
+    private long usedBytes;
+    private boolean shadowsEnabled = true;
+    private volatile ContentPacks contentPacks;
+
+    private static class Entry {
+        final ModelRenderable renderable;
+        final long bytes;
+
+        Entry(ModelRenderable renderable, long bytes) {
+            this.renderable = renderable;
+            this.bytes = bytes;
+        }
+    }
+
+    public static synchronized ModelRenderableCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ModelRenderableCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ModelRenderableCache(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns a future for a copy of the model at {@code assetPath}, loading it if it is not
+     * already cached or in flight.
+     */
+    public synchronized CompletableFuture<ModelRenderable> get(String assetPath) {
+        Entry entry = entries.get(assetPath);
+        if (entry != null) {
+            return CompletableFuture.completedFuture(copy(entry.renderable));
+        }
+
+        return load(assetPath).thenApply(this::copy);
+    }
+
+    /** Starts loading {@code assetPath} without handing out a copy. */
+    public synchronized CompletableFuture<ModelRenderable> prefetch(String assetPath) {
+        Entry entry = entries.get(assetPath);
+        if (entry != null) {
+            return CompletableFuture.completedFuture(entry.renderable);
+        }
+
+        return load(assetPath);
+    }
+
+    public synchronized boolean contains(String assetPath) {
+        return entries.containsKey(assetPath);
+    }
+
+    public synchronized boolean isLoading(String assetPath) {
+        return inFlight.containsKey(assetPath);
+    }
+
+    /** Sets the packs that models are read from before falling back to the APK's assets. */
+    public void setContentPacks(ContentPacks contentPacks) {
+        this.contentPacks = contentPacks;
+    }
+
+    /** Returns the estimated size of {@code assetPath} once loaded. */
+    public long estimateBytes(String assetPath) {
+        ByteBuffer packed = findPacked(assetPath);
+        if (packed != null) {
+            return packed.remaining();
+        }
+        try (AssetFileDescriptor fd = context.getAssets().openFd(assetPath)) {
+            return fd.getLength();
+        } catch (IOException e) {
+            return DEFAULT_ENTRY_BYTES;
+        }
+    }
+
+    public synchronized long getByteBudget() {
+        return byteBudget;
+    }
+
+    public synchronized void setByteBudget(long byteBudget) {
+        this.byteBudget = byteBudget;
+        trimToBudget(null);
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /** Drops the loaded model at {@code assetPath}, if cached. Copies already handed out are unaffected. */
+    public synchronized void remove(String assetPath) {
+        Entry entry = entries.remove(assetPath);
+        if (entry != null) {
+            usedBytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * Sets whether the copies handed out from now on cast and receive shadows. Copies already handed
+     * out are unaffected.
+     */
+    public synchronized void setShadowsEnabled(boolean shadowsEnabled) {
+        this.shadowsEnabled = shadowsEnabled;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    private synchronized ModelRenderable copy(ModelRenderable renderable) {
+        ModelRenderable copy = renderable.makeCopy();
+        copy.setShadowCaster(shadowsEnabled);
+        copy.setShadowReceiver(shadowsEnabled);
+        return copy;
+    }
+
+    private CompletableFuture<ModelRenderable> load(String assetPath) {
+        CompletableFuture<ModelRenderable> pending = inFlight.get(assetPath);
+        if (pending != null) {
+            return pending;
+        }
+
+        long start = Metrics.now();
+        ModelRenderable.Builder builder = ModelRenderable.builder();
+        ByteBuffer packed = findPacked(assetPath);
+        if (packed != null) {
+            builder.setSource(context, () -> new ByteBufferInputStream(packed));
+        } else {
+            builder.setSource(context, Uri.parse(assetPath));
+        }
+        CompletableFuture<ModelRenderable> future = builder.build();
+        inFlight.put(assetPath, future);
+
+        long bytes = estimateBytes(assetPath);
+        return future.whenComplete((renderable, throwable) -> {
+            Metrics.record(AppMetrics.MODEL_LOAD, Metrics.now() - start);
+            onLoaded(assetPath, bytes, renderable, throwable);
+        });
+    }
+
+    private ByteBuffer findPacked(String assetPath) {
+        ContentPacks packs = contentPacks;
+        return packs != null ? packs.find(assetPath) : null;
+    }
+
+    private synchronized void onLoaded(String assetPath, long bytes, ModelRenderable renderable, Throwable throwable) {
+        inFlight.remove(assetPath);
+        if (throwable != null) {
+            Metrics.increment(AppMetrics.MODEL_LOAD_FAILURES);
+            Log.e(TAG, "Unable to load " + assetPath, throwable);
+            return;
+        }
+
+        Entry previous = entries.put(assetPath, new Entry(renderable, bytes));
+        if (previous != null) {
+            usedBytes -= previous.bytes;
+        }
+        usedBytes += bytes;
+        trimToBudget(assetPath);
+    }
+
+    private void trimToBudget(String keep) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (usedBytes > byteBudget && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            usedBytes -= eldest.getValue().bytes;
+            iterator.remove();
+            Log.d(TAG, "Evicted " + eldest.getKey());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package me.mischka.augmentedlearning;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the models of images that are likely to be scanned next into the {@link ModelRenderableCache}.
+ *
+ * <p>When an image is tracked, the other images in its category, along with any image that has
+ * often been tracked in the same session before, are queued for loading. Co-occurrence counts are
+ * persisted across sessions and decide the order of the queue. Loading is limited to a few models
+ * at a time and stops before the cache would pass {@link #MEMORY_CEILING} of its byte budget,
+ * leaving the rest for models that are actually tracked. Should the cache still evict, nodes on
+ * screen keep their renderables: they hold their own {@code makeCopy()} copies, which eviction does
+ * not touch.
+ */
+@SuppressWarnings({"AndroidApiChecker", "FutureReturnValueIgnored"})
+public class ModelWarmup {
+    private static final String PREFERENCES_NAME = "model_warmup";
+
+    private static final int MAX_CONCURRENT_LOADS = 2;
+
+    // Fraction of the cache budget that warm-up is allowed to fill.
+    private static final float MEMORY_CEILING = 0.75f;
+
+    // Images in other categories are only warmed up once they have been seen together this often.
+    private static final int MIN_CROSS_CATEGORY_COUNT = 3;
+
+    private final ModelRenderableCache cache;
+    private final SharedPreferences preferences;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final AugmentedImageRegistry registry;
+
+    // Counts are keyed by image name so they survive changes to the image database.
+    private final Map<String, Integer> coOccurrences = new HashMap<>();
+    private final BitSet sessionImages = new BitSet();
+    private final ArrayDeque<Integer> queue = new ArrayDeque<>();
+    private int loading;
+    private boolean dirty;
+    private boolean loaded;
+
+    public ModelWarmup(Context context, AugmentedImageRegistry registry) {
+        this.cache = ModelRenderableCache.getInstance(context);
+        // Starts reading the file in the background; load() waits for it.
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.registry = registry;
+    }
+
+    /**
+     * Reads the persisted co-occurrence statistics, if they have not been read yet. They are only
+     * needed once an image is tracked, so this can wait until the app is idle after start-up.
+     */
+    public void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            if (entry.getValue() instanceof Integer) {
+                coOccurrences.put(entry.getKey(), (Integer) entry.getValue());
+            }
+        }
+    }
+
+    /** Records that the image at {@code index} was tracked and queues the models likely to be needed next. */
+    public void onImageTracked(int index) {
+        if (!registry.isResolved(index) || sessionImages.get(index)) {
+            return;
+        }
+        load();
+        sessionImages.set(index);
+
+        String name = registry.getName(index);
+        for (int other = sessionImages.nextSetBit(0); other >= 0; other = sessionImages.nextSetBit(other + 1)) {
+            if (other != index) {
+                String key = pairKey(name, registry.getName(other));
+                Integer count = coOccurrences.get(key);
+                coOccurrences.put(key, count == null ? 1 : count + 1);
+                dirty = true;
+            }
+        }
+
+        List<Integer> candidates = new ArrayList<>();
+        int category = registry.getCategory(index);
+        for (int other = 0; other < registry.size(); other++) {
+            if (sessionImages.get(other) || !registry.isResolved(other)) {
+                continue;
+            }
+            boolean sibling = category != AugmentedImageRegistry.NO_CATEGORY
+                    && category == registry.getCategory(other);
+            if (sibling || score(name, other) >= MIN_CROSS_CATEGORY_COUNT) {
+                candidates.add(other);
+            }
+        }
+        candidates.sort((a, b) -> Integer.compare(score(name, b), score(name, a)));
+
+        // Most likely candidates go to the front of the queue, ahead of older requests.
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            Integer candidate = candidates.get(i);
+            queue.remove(candidate);
+            queue.addFirst(candidate);
+        }
+        pump();
+    }
+
+    /** Forgets which images were tracked in this session, keeping the learned statistics. */
+    public void resetSession() {
+        sessionImages.clear();
+        queue.clear();
+    }
+
+    /** Persists the co-occurrence statistics. */
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+
+        SharedPreferences.Editor editor = preferences.edit();
+        for (Map.Entry<String, Integer> entry : coOccurrences.entrySet()) {
+            editor.putInt(entry.getKey(), entry.getValue());
+        }
+        editor.apply();
+        dirty = false;
+    }
+
+    private void pump() {
+        long ceiling = (long) (cache.getByteBudget() * MEMORY_CEILING);
+        while (loading < MAX_CONCURRENT_LOADS && !queue.isEmpty()) {
+            String assetPath = registry.getAssetPath(queue.pollFirst());
+            if (assetPath == null || cache.contains(assetPath) || cache.isLoading(assetPath)) {
+                continue;
+            }
+            if (cache.getUsedBytes() + cache.estimateBytes(assetPath) > ceiling) {
+                queue.clear();
+                return;
+            }
+
+            loading++;
+            cache.prefetch(assetPath).handle((renderable, throwable) -> {
+                handler.post(this::onLoadFinished);
+                return null;
+            });
+        }
+    }
+
+    private void onLoadFinished() {
+        loading--;
+        pump();
+    }
+
+    private int score(String name, int other) {
+        Integer count = coOccurrences.get(pairKey(name, registry.getName(other)));
+        return count == null ? 0 : count;
+    }
+
+    private static String pairKey(String a, String b) {
+        return a.compareTo(b) < 0 ? a + "|" + b : b + "|" + a;
+    }
+}
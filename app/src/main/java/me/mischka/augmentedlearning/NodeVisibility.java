@@ -0,0 +1,245 @@
+package me.mischka.augmentedlearning;
+
+import java.util.Arrays;
+
+import me.mischka.common.helpers.ViewFrustum;
+
+/**
+ * Decides once per frame which anchored image nodes are worth updating and rendering.
+ *
+ * <p>A node is visible while its bounds are in the camera frustum, off-screen while they are not,
+ * and stale once ARCore has gone {@link #STALE_SECONDS} without updating its image. ARCore 1.5 does
+ * not say how an image is tracked, and a fully tracked image is updated every frame, so going
+ * without updates stands in for the last-known-pose tracking of later versions.
+ *
+ * <p>Off-screen nodes are disabled and stale ones fade out and are released after {@link
+ * #RELEASE_SECONDS}, through {@link Nodes}. Visible and stale nodes are kept in a list that is
+ * checked every frame, off-screen ones in another that is checked {@link
+ * #OFFSCREEN_CHECKS_PER_FRAME} per frame in turn, so frame time follows what is in view rather than
+ * how many images have been seen. Nothing is allocated once every image has been seen.
+ */
+public class NodeVisibility {
+    /** The nodes of the images, by index. */
+    public interface Nodes {
+        /** Whether the image at {@code index} has a node with an anchor. */
+        boolean isAnchored(int index);
+
+        /** Whether the anchor of the image at {@code index} is tracked, so that its place is known. */
+        boolean isTracking(int index);
+
+        /** Whether the bounds of the node of the image at {@code index} may be in {@code frustum}. */
+        boolean isInView(int index, ViewFrustum frustum);
+
+        /** Enables the node of the image at {@code index} when it comes into view, or disables it. */
+        void setEnabled(int index, boolean enabled);
+
+        /** Sets the fade of the node of the image at {@code index}, from 1, opaque, to 0. */
+        void setFade(int index, float fade);
+
+        /** Drops the node of the image at {@code index}, stale for too long. */
+        void release(int index);
+    }
+
+    private static final byte STATE_NONE = 0;
+    private static final byte STATE_VISIBLE = 1;
+    private static final byte STATE_OFFSCREEN = 2;
+    private static final byte STATE_STALE = 3;
+    // Updated by ARCore, and checked on the next frame for the anchor of a new node.
+    private static final byte STATE_PENDING = 4;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    static final float STALE_SECONDS = 2f;
+    static final float FADE_SECONDS = 0.5f;
+    static final float RELEASE_SECONDS = 15f;
+    static final int OFFSCREEN_CHECKS_PER_FRAME = 3;
+
+    private final Nodes nodes;
+    private final ViewFrustum frustum = new ViewFrustum();
+
+    // By image index.
+    private byte[] states = new byte[0];
+    private long[] lastUpdateNanos = new long[0];
+    private float[] fades = new float[0];
+
+    // The images whose nodes are pending, visible or stale, all checked every frame, in no order.
+    // Stale nodes may be off-screen as well.
+    private int[] frameIndices = new int[0];
+    private int frameCount;
+    // The images whose nodes are off-screen, checked in turn from offscreenCursor.
+    private int[] offscreenIndices = new int[0];
+    private int offscreenCount;
+    private int offscreenCursor;
+
+    public NodeVisibility(Nodes nodes) {
+        this.nodes = nodes;
+    }
+
+    /** Records that ARCore updated the tracked image at {@code index} in the frame at {@code timestampNanos}. */
+    public void onImageUpdated(int index, long timestampNanos) {
+        ensureCapacity(index + 1);
+        lastUpdateNanos[index] = timestampNanos;
+        if (states[index] == STATE_NONE) {
+            states[index] = STATE_PENDING;
+            frameIndices[frameCount++] = index;
+        } else if (states[index] == STATE_STALE) {
+            // Back in view; the next update decides whether it is on screen.
+            states[index] = STATE_VISIBLE;
+            setFade(index, 1);
+        }
+    }
+
+    /**
+     * Classifies the nodes of the first {@code imageCount} images against a camera with column-major
+     * {@code viewMatrix} and {@code projectionMatrix}, in the frame at {@code now}. Only the nodes
+     * that are pending, visible or stale, and {@link #OFFSCREEN_CHECKS_PER_FRAME} off-screen ones,
+     * are looked at.
+     */
+    public void update(int imageCount, long now, float[] viewMatrix, float[] projectionMatrix) {
+        ensureCapacity(imageCount);
+        if (frameCount == 0 && offscreenCount == 0) {
+            return;
+        }
+        frustum.update(viewMatrix, projectionMatrix);
+
+        for (int i = 0; i < frameCount; ) {
+            if (updateInFrame(frameIndices[i], now)) {
+                i++;
+            } else {
+                frameIndices[i] = frameIndices[--frameCount];
+            }
+        }
+
+        // Nodes that left the list take the place of the last one, which is checked next, so every
+        // off-screen node still gets its turn.
+        for (int checks = 0; checks < OFFSCREEN_CHECKS_PER_FRAME && offscreenCount > 0; checks++) {
+            if (offscreenCursor >= offscreenCount) {
+                offscreenCursor = 0;
+            }
+            if (updateOffscreen(offscreenIndices[offscreenCursor], now)) {
+                offscreenCursor++;
+            } else {
+                offscreenIndices[offscreenCursor] = offscreenIndices[--offscreenCount];
+            }
+        }
+    }
+
+    /** Whether the node of the image at {@code index} is anchored and neither off-screen nor stale. */
+    public boolean isVisible(int index) {
+        return index < states.length && states[index] == STATE_VISIBLE;
+    }
+
+    /** Forgets the state of every node, e.g. after every node has been dropped. */
+    public void reset() {
+        Arrays.fill(states, STATE_NONE);
+        Arrays.fill(lastUpdateNanos, 0);
+        Arrays.fill(fades, 0);
+        frameCount = 0;
+        offscreenCount = 0;
+        offscreenCursor = 0;
+    }
+
+    /**
+     * Checks the pending, visible or stale node of the image at {@code index}.
+     *
+     * @return whether it is still to be checked every frame.
+     */
+    private boolean updateInFrame(int index, long now) {
+        if (!nodes.isAnchored(index)) {
+            states[index] = STATE_NONE;
+            return false;
+        }
+        if (states[index] == STATE_PENDING) {
+            // Newly attached.
+            states[index] = STATE_VISIBLE;
+            fades[index] = 1;
+        }
+
+        float staleSeconds = staleSeconds(index, now);
+        if (staleSeconds >= RELEASE_SECONDS) {
+            release(index);
+            return false;
+        }
+        if (staleSeconds >= 0) {
+            if (states[index] == STATE_VISIBLE) {
+                states[index] = STATE_STALE;
+            }
+            if (states[index] == STATE_STALE) {
+                setFade(index, Math.max(0, 1 - staleSeconds / FADE_SECONDS));
+            }
+            return true;
+        }
+
+        // Visible, or off-screen and updated again after going stale.
+        boolean inView = nodes.isTracking(index) ? nodes.isInView(index, frustum) : states[index] == STATE_VISIBLE;
+        if (inView) {
+            if (states[index] == STATE_OFFSCREEN) {
+                nodes.setEnabled(index, true);
+                states[index] = STATE_VISIBLE;
+            }
+            return true;
+        }
+        if (states[index] == STATE_VISIBLE) {
+            nodes.setEnabled(index, false);
+            states[index] = STATE_OFFSCREEN;
+        }
+        offscreenIndices[offscreenCount++] = index;
+        return false;
+    }
+
+    /**
+     * Checks the off-screen node of the image at {@code index}. Stale ones are moved to the nodes
+     * checked every frame, where they wait to be updated or released without taking the turns of
+     * those that may come back into view.
+     *
+     * @return whether it is still to be checked in turn.
+     */
+    private boolean updateOffscreen(int index, long now) {
+        if (!nodes.isAnchored(index)) {
+            states[index] = STATE_NONE;
+            return false;
+        }
+
+        if (staleSeconds(index, now) >= 0) {
+            frameIndices[frameCount++] = index;
+            return false;
+        }
+        if (!nodes.isTracking(index) || !nodes.isInView(index, frustum)) {
+            return true;
+        }
+        nodes.setEnabled(index, true);
+        states[index] = STATE_VISIBLE;
+        frameIndices[frameCount++] = index;
+        return false;
+    }
+
+    /** Returns how long the image at {@code index} has been stale, negative if it is not yet. */
+    private float staleSeconds(int index, long now) {
+        return (float) (now - lastUpdateNanos[index]) / NANOS_PER_SECOND - STALE_SECONDS;
+    }
+
+    private void setFade(int index, float fade) {
+        if (fades[index] == fade) {
+            return;
+        }
+        fades[index] = fade;
+        nodes.setFade(index, fade);
+    }
+
+    private void release(int index) {
+        nodes.release(index);
+        states[index] = STATE_NONE;
+        lastUpdateNanos[index] = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= states.length) {
+            return;
+        }
+        capacity = Math.max(capacity, states.length * 2);
+        states = Arrays.copyOf(states, capacity);
+        lastUpdateNanos = Arrays.copyOf(lastUpdateNanos, capacity);
+        fades = Arrays.copyOf(fades, capacity);
+        frameIndices = Arrays.copyOf(frameIndices, capacity);
+        offscreenIndices = Arrays.copyOf(offscreenIndices, capacity);
+    }
+}
@@ -0,0 +1,89 @@
+package me.mischka.augmentedlearning;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.ar.core.Config;
+
+import java.util.Locale;
+
+/**
+ * A named group of ARCore session and Sceneform render settings, trading tracking features and
+ * image quality for power.
+ *
+ * <p>Every profile tracks images with autofocus, since they are held close to the camera where
+ * fixed focus blurs them, and with the latest camera image, which Sceneform requires. The profiles
+ * differ in what else runs alongside image tracking.
+ */
+public enum PerformanceProfile {
+    /**
+     * Image tracking only: no plane finding, no light estimation and no shadows. Models can still be
+     * dragged across their image, but not off it onto a surface.
+     */
+    LOW_POWER(Config.PlaneFindingMode.DISABLED, Config.LightEstimationMode.DISABLED, false),
+    /** Finds horizontal planes to drag models onto, and lights models from the camera image. */
+    BALANCED(Config.PlaneFindingMode.HORIZONTAL, Config.LightEstimationMode.AMBIENT_INTENSITY, false),
+    /** {@link #BALANCED} with models casting and receiving shadows. */
+    HIGH_FIDELITY(Config.PlaneFindingMode.HORIZONTAL, Config.LightEstimationMode.AMBIENT_INTENSITY, true);
+
+    private static final String TAG = "PerformanceProfile";
+
+    private final Config.PlaneFindingMode planeFindingMode;
+    private final Config.LightEstimationMode lightEstimationMode;
+    private final boolean shadowsEnabled;
+
+    PerformanceProfile(Config.PlaneFindingMode planeFindingMode, Config.LightEstimationMode lightEstimationMode,
+                       boolean shadowsEnabled) {
+        this.planeFindingMode = planeFindingMode;
+        this.lightEstimationMode = lightEstimationMode;
+        this.shadowsEnabled = shadowsEnabled;
+    }
+
+    /** Sets the session options of this profile on {@code config}, leaving the image database alone. */
+    public void apply(Config config) {
+        config.setUpdateMode(Config.UpdateMode.LATEST_CAMERA_IMAGE);
+        config.setFocusMode(Config.FocusMode.AUTO);
+        config.setPlaneFindingMode(planeFindingMode);
+        config.setLightEstimationMode(lightEstimationMode);
+    }
+
+    public boolean isPlaneFindingEnabled() {
+        return planeFindingMode != Config.PlaneFindingMode.DISABLED;
+    }
+
+    public boolean isLightEstimationEnabled() {
+        return lightEstimationMode != Config.LightEstimationMode.DISABLED;
+    }
+
+    public boolean isShadowsEnabled() {
+        return shadowsEnabled;
+    }
+
+    /** Returns the profile a device of {@code tier} runs by default. */
+    public static PerformanceProfile forTier(DeviceTier tier) {
+        switch (tier) {
+            case LOW:
+                return LOW_POWER;
+            case MID:
+                return BALANCED;
+            default:
+                return HIGH_FIDELITY;
+        }
+    }
+
+    /**
+     * Returns the profile called {@code name}, in any case, e.g. {@code low_power}, or
+     * {@code fallback} if there is none.
+     */
+    public static PerformanceProfile parse(@Nullable String name, PerformanceProfile fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unknown performance profile " + name);
+            return fallback;
+        }
+    }
+}
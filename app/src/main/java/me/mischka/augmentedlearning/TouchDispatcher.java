@@ -0,0 +1,139 @@
+package me.mischka.augmentedlearning;
+
+import android.view.MotionEvent;
+
+import com.google.ar.sceneform.FrameTime;
+import com.google.ar.sceneform.HitTestResult;
+import com.google.ar.sceneform.Scene;
+
+import java.util.ArrayList;
+
+import me.mischka.common.metrics.Metrics;
+
+/**
+ * Delivers peeked touch events to every gesture recognizer, coalescing move events per frame.
+ *
+ * <p>Move events are not dispatched as they arrive. Their samples, including the historical ones
+ * batched inside each event, are appended to a single pending event, which is dispatched once at
+ * the start of the next frame, so gesture work scales with the frame rate rather than the touch
+ * sample rate. Recognizers see the latest position with the full path as its history: {@link
+ * TwoFingerTwistGesture} and {@link TwoFingerDragGesture} walk it, and Sceneform's gestures, which
+ * read absolute positions and distances, add up to the same total without it. Any other event first
+ * flushes the pending move, so ordering is kept.
+ *
+ * <p>A pending move is dispatched with the hit test result of the first event of its gesture, the
+ * node the gesture started on, rather than with a result a frame old.
+ *
+ * <p>Register it as both a peek touch listener and an update listener of the scene.
+ */
+public class TouchDispatcher implements Scene.OnPeekTouchListener, Scene.OnUpdateListener {
+    private static final int MAX_POINTERS = 16;
+
+    private final ArrayList<Scene.OnPeekTouchListener> listeners = new ArrayList<>();
+    private final MotionEvent.PointerCoords[] pointerCoords = new MotionEvent.PointerCoords[MAX_POINTERS];
+
+    private MotionEvent pendingMove;
+    // Of the first event of the current gesture, until it ends.
+    private HitTestResult gestureHitTestResult;
+
+    public TouchDispatcher() {
+        for (int i = 0; i < MAX_POINTERS; i++) {
+            pointerCoords[i] = new MotionEvent.PointerCoords();
+        }
+    }
+
+    /** Adds a recognizer. Listeners are called in the order they were added. */
+    public void addListener(Scene.OnPeekTouchListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void onPeekTouch(HitTestResult hitTestResult, MotionEvent motionEvent) {
+        int action = motionEvent.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN || gestureHitTestResult == null) {
+            gestureHitTestResult = hitTestResult;
+        }
+        if (action != MotionEvent.ACTION_MOVE) {
+            flush();
+            dispatch(hitTestResult, motionEvent);
+            if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                gestureHitTestResult = null;
+            }
+            return;
+        }
+
+        if (pendingMove != null && !samePointers(pendingMove, motionEvent)) {
+            flush();
+        }
+        if (pendingMove == null) {
+            // The framework recycles the event after dispatch, so keep a copy.
+            pendingMove = MotionEvent.obtain(motionEvent);
+        } else {
+            appendSamples(pendingMove, motionEvent);
+            Metrics.increment(AppMetrics.COALESCED_MOVES);
+        }
+    }
+
+    @Override
+    public void onUpdate(FrameTime frameTime) {
+        flush();
+    }
+
+    /** Drops a pending move without dispatching it, e.g. when the activity pauses. */
+    public void cancelPending() {
+        if (pendingMove != null) {
+            pendingMove.recycle();
+            pendingMove = null;
+        }
+        gestureHitTestResult = null;
+    }
+
+    /** Dispatches the pending move, if any. */
+    public void flush() {
+        MotionEvent move = pendingMove;
+        if (move == null) {
+            return;
+        }
+        pendingMove = null;
+
+        dispatch(gestureHitTestResult, move);
+        move.recycle();
+    }
+
+    private void dispatch(HitTestResult hitTestResult, MotionEvent motionEvent) {
+        long start = Metrics.begin(AppMetrics.TOUCH);
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onPeekTouch(hitTestResult, motionEvent);
+        }
+        Metrics.end(AppMetrics.TOUCH, start);
+    }
+
+    /** Appends every sample of {@code source}, oldest first, to {@code target}. */
+    private void appendSamples(MotionEvent target, MotionEvent source) {
+        int pointerCount = source.getPointerCount();
+        int historySize = source.getHistorySize();
+        for (int h = 0; h < historySize; h++) {
+            for (int p = 0; p < pointerCount; p++) {
+                source.getHistoricalPointerCoords(p, h, pointerCoords[p]);
+            }
+            target.addBatch(source.getHistoricalEventTime(h), pointerCoords, source.getMetaState());
+        }
+        for (int p = 0; p < pointerCount; p++) {
+            source.getPointerCoords(p, pointerCoords[p]);
+        }
+        target.addBatch(source.getEventTime(), pointerCoords, source.getMetaState());
+    }
+
+    private static boolean samePointers(MotionEvent a, MotionEvent b) {
+        int pointerCount = a.getPointerCount();
+        if (pointerCount != b.getPointerCount() || pointerCount > MAX_POINTERS) {
+            return false;
+        }
+        for (int i = 0; i < pointerCount; i++) {
+            if (a.getPointerId(i) != b.getPointerId(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
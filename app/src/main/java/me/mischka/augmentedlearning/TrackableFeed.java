@@ -0,0 +1,39 @@
+package me.mischka.augmentedlearning;
+
+/**
+ * The augmented images updated in one frame, addressed by their position in the frame's updates.
+ *
+ * <p>The app reads them from ARCore through {@link ArCoreTrackableFeed}; the benchmarks module
+ * plays scripted or randomized ones, so the frame loop can run without a camera. Nothing here
+ * depends on Android, and nothing needs to be allocated to read an update.
+ */
+public interface TrackableFeed {
+    /** The tracking state of an image, as in ARCore's {@code TrackingState}. */
+    enum State {
+        /** Detected but not tracked yet, or tracking was lost for now. */
+        PAUSED,
+        TRACKING,
+        /** No longer tracked and will not be again, until detected anew. */
+        STOPPED
+    }
+
+    /** The timestamp of the frame, in nanoseconds. */
+    long getTimestampNanos();
+
+    /** How many images were updated in the frame. */
+    int getUpdateCount();
+
+    /** The image database index of the image of {@code update}. */
+    int getIndex(int update);
+
+    /** The name of the image of {@code update}, as in the image database. */
+    String getName(int update);
+
+    State getState(int update);
+
+    /**
+     * Copies the center pose of the image of {@code update} into {@code translation}, x, y and z,
+     * and {@code rotation}, a quaternion x, y, z and w.
+     */
+    void getCenterPose(int update, float[] translation, float[] rotation);
+}
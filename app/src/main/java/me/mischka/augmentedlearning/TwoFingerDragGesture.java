@@ -7,6 +7,11 @@ import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.ux.BaseGesture;
 import com.google.ar.sceneform.ux.GesturePointersUtility;
 
+/**
+ * A drag with two fingers moving in the same direction.
+ *
+ * <p>Pointer positions are tracked as primitive floats, so handling a move event allocates nothing.
+ */
 public class TwoFingerDragGesture extends BaseGesture<TwoFingerDragGesture> {
 
     private static final String TAG = TwoFingerDragGesture.class.getSimpleName();
@@ -16,26 +21,50 @@ public class TwoFingerDragGesture extends BaseGesture<TwoFingerDragGesture> {
     public interface OnGestureEventListener
             extends BaseGesture.OnGestureEventListener<TwoFingerDragGesture> {
     }
-    private static final boolean TWO_FINGER_DRAG_GESTURE_DEBUG = true;
+    // A compile-time constant, so the log messages below are compiled out when it is false.
+    private static final boolean TWO_FINGER_DRAG_GESTURE_DEBUG = false;
+    private static final float SLOP_INCHES = 0.1f;
+    private static final float MAX_ANGLE_DEGREES = 25.0f;
+    private static final float MIN_COS_ANGLE = (float) Math.cos(Math.toRadians(MAX_ANGLE_DEGREES));
+    private static final float EPSILON = 1e-5f;
     private final int pointerId1;
     private final int pointerId2;
-    private final Vector3 startPosition1;
-    private final Vector3 startPosition2;
-    private final Vector3 previousPosition1;
-    private final Vector3 previousPosition2;
+    private final float startX1;
+    private final float startY1;
+    private final float startX2;
+    private final float startY2;
+    private float previousX1;
+    private float previousY1;
+    private float previousX2;
+    private float previousY2;
+    // Set by readPositions.
+    private float newX1;
+    private float newY1;
+    private float newX2;
+    private float newY2;
     private final Vector3 averageDeltaPosition = new Vector3();
-    private static final float SLOP_INCHES = 0.1f;
     public TwoFingerDragGesture(
             GesturePointersUtility gesturePointersUtility, MotionEvent motionEvent, int pointerId2) {
         super(gesturePointersUtility);
         pointerId1 = motionEvent.getPointerId(motionEvent.getActionIndex());
         this.pointerId2 = pointerId2;
-        startPosition1 = GesturePointersUtility.motionEventToPosition(motionEvent, pointerId1);
-        startPosition2 = GesturePointersUtility.motionEventToPosition(motionEvent, pointerId2);
-        previousPosition1 = new Vector3(startPosition1);
-        previousPosition2 = new Vector3(startPosition2);
-        debugLog("Created");
+        readPositions(motionEvent);
+        startX1 = newX1;
+        startY1 = newY1;
+        startX2 = newX2;
+        startY2 = newY2;
+        previousX1 = startX1;
+        previousY1 = startY1;
+        previousX2 = startX2;
+        previousY2 = startY2;
+        if (TWO_FINGER_DRAG_GESTURE_DEBUG) {
+            debugLog("Created");
+        }
     }
+    /**
+     * Returns the movement of the midpoint between the fingers in the last event, in pixels. The
+     * positions are absolute, so the movement over an event's history is that of its current sample.
+     */
     public Vector3 getAverageDeltaPosition() {
         return averageDeltaPosition;
     }
@@ -60,36 +89,30 @@ public class TwoFingerDragGesture extends BaseGesture<TwoFingerDragGesture> {
         if (action != MotionEvent.ACTION_MOVE) {
             return false;
         }
-        Vector3 newPosition1 = GesturePointersUtility.motionEventToPosition(motionEvent, pointerId1);
-        Vector3 newPosition2 = GesturePointersUtility.motionEventToPosition(motionEvent, pointerId2);
-        Vector3 deltaPosition1 = Vector3.subtract(newPosition1, previousPosition1);
-        Vector3 deltaPosition2 = Vector3.subtract(newPosition2, previousPosition2);
-        previousPosition1.set(newPosition1);
-        previousPosition2.set(newPosition2);
-        // Check that both fingers are moving.
-        if (Vector3.equals(deltaPosition1, Vector3.zero())
-                || Vector3.equals(deltaPosition2, Vector3.zero())) {
-            return false;
+        // Every step of the path, historical samples included, is checked as its own event would
+        // have been, and the first one that starts the drag starts it with the whole event.
+        float lastX1 = previousX1;
+        float lastY1 = previousY1;
+        float lastX2 = previousX2;
+        float lastY2 = previousY2;
+        boolean started = false;
+        int historySize = motionEvent.getHistorySize();
+        for (int sample = 0; sample <= historySize; sample++) {
+            if (!readPositions(motionEvent, sample)) {
+                return false;
+            }
+            started |= isStartingStep();
         }
-        // Check that both fingers are moving in approximately the same direction.
-        if (Vector3.angleBetweenVectors(deltaPosition1, deltaPosition2) > 25.0f) {
-            return false;
+        if (started) {
+            setAverageDelta(lastX1, lastY1, lastX2, lastY2);
         }
-        // Check that both fingers have moved beyond the slop threshold.
-        float diff1 = Vector3.subtract(newPosition1, startPosition1).length();
-        float diff2 = Vector3.subtract(newPosition1, startPosition2).length();
-        float slopPixels = gesturePointersUtility.inchesToPixels(SLOP_INCHES);
-        if (diff1 >= slopPixels && diff2 >= slopPixels) {
-            Vector3 previousAverage = calculateAverageVector(previousPosition1, previousPosition2);
-            Vector3 newAverage = calculateAverageVector(newPosition1, newPosition2);
-            averageDeltaPosition.set(Vector3.subtract(newAverage, previousAverage));
-            return true;
-        }
-        return false;
+        return started;
     }
     @Override
     protected void onStart(HitTestResult hitTestResult, MotionEvent motionEvent) {
-        debugLog("Started");
+        if (TWO_FINGER_DRAG_GESTURE_DEBUG) {
+            debugLog("Started");
+        }
         gesturePointersUtility.retainPointerId(pointerId1);
         gesturePointersUtility.retainPointerId(pointerId2);
     }
@@ -106,26 +129,30 @@ public class TwoFingerDragGesture extends BaseGesture<TwoFingerDragGesture> {
             complete();
             return false;
         }
-        if (action != MotionEvent.ACTION_MOVE) {
+        if (action != MotionEvent.ACTION_MOVE || !readPositions(motionEvent)) {
             return false;
         }
-        Vector3 newPosition1 = GesturePointersUtility.motionEventToPosition(motionEvent, pointerId1);
-        Vector3 newPosition2 = GesturePointersUtility.motionEventToPosition(motionEvent, pointerId2);
-        Vector3 previousAverage = calculateAverageVector(previousPosition1, previousPosition2);
-        Vector3 newAverage = calculateAverageVector(newPosition1, newPosition2);
-        averageDeltaPosition.set(Vector3.subtract(newAverage, previousAverage));
-        previousPosition1.set(newPosition1);
-        previousPosition2.set(newPosition2);
-        debugLog("Update: " + averageDeltaPosition);
+        setAverageDelta(previousX1, previousY1, previousX2, previousY2);
+        previousX1 = newX1;
+        previousY1 = newY1;
+        previousX2 = newX2;
+        previousY2 = newY2;
+        if (TWO_FINGER_DRAG_GESTURE_DEBUG) {
+            debugLog("Update: " + averageDeltaPosition);
+        }
         return true;
     }
     @Override
     protected void onCancel() {
-        debugLog("Cancelled");
+        if (TWO_FINGER_DRAG_GESTURE_DEBUG) {
+            debugLog("Cancelled");
+        }
     }
     @Override
     protected void onFinish() {
-        debugLog("Finished");
+        if (TWO_FINGER_DRAG_GESTURE_DEBUG) {
+            debugLog("Finished");
+        }
         gesturePointersUtility.releasePointerId(pointerId1);
         gesturePointersUtility.releasePointerId(pointerId2);
     }
@@ -133,12 +160,83 @@ public class TwoFingerDragGesture extends BaseGesture<TwoFingerDragGesture> {
     protected TwoFingerDragGesture getSelf() {
         return this;
     }
-    private static void debugLog(String log) {
-        if (TWO_FINGER_DRAG_GESTURE_DEBUG) {
-            Log.d(TAG, "TwoFingerDragGesture:[" + log + "]");
+    /**
+     * Moves on from the previous positions to the {@code new} ones.
+     *
+     * @return whether both fingers moved, in about the same direction, and are past the slop.
+     */
+    private boolean isStartingStep() {
+        float deltaX1 = newX1 - previousX1;
+        float deltaY1 = newY1 - previousY1;
+        float deltaX2 = newX2 - previousX2;
+        float deltaY2 = newY2 - previousY2;
+        previousX1 = newX1;
+        previousY1 = newY1;
+        previousX2 = newX2;
+        previousY2 = newY2;
+        // Check that both fingers are moving.
+        float length1 = length(deltaX1, deltaY1);
+        float length2 = length(deltaX2, deltaY2);
+        if (length1 <= EPSILON || length2 <= EPSILON) {
+            return false;
+        }
+        // Check that both fingers are moving in approximately the same direction.
+        float cosAngle = (deltaX1 * deltaX2 + deltaY1 * deltaY2) / (length1 * length2);
+        if (cosAngle < MIN_COS_ANGLE) {
+            return false;
         }
+        // Check that both fingers have moved beyond the slop threshold.
+        float diff1 = length(newX1 - startX1, newY1 - startY1);
+        float diff2 = length(newX2 - startX2, newY2 - startY2);
+        float slopPixels = gesturePointersUtility.inchesToPixels(SLOP_INCHES);
+        return diff1 >= slopPixels && diff2 >= slopPixels;
     }
-    private static Vector3 calculateAverageVector(Vector3 a, Vector3 b) {
-        return Vector3.add(a, b).scaled(0.5f);
+    /**
+     * Reads the positions of both pointers in the current sample of {@code motionEvent} into the
+     * {@code new} fields.
+     *
+     * @return false if either pointer is missing from the event.
+     */
+    private boolean readPositions(MotionEvent motionEvent) {
+        return readPositions(motionEvent, motionEvent.getHistorySize());
+    }
+    /**
+     * Reads the positions of both pointers in {@code sample} of {@code motionEvent} into the {@code
+     * new} fields. Samples below the history size are historical, the history size itself is the
+     * current one.
+     *
+     * @return false if either pointer is missing from the event.
+     */
+    private boolean readPositions(MotionEvent motionEvent, int sample) {
+        int index1 = motionEvent.findPointerIndex(pointerId1);
+        int index2 = motionEvent.findPointerIndex(pointerId2);
+        if (index1 < 0 || index2 < 0) {
+            return false;
+        }
+        if (sample < motionEvent.getHistorySize()) {
+            newX1 = motionEvent.getHistoricalX(index1, sample);
+            newY1 = motionEvent.getHistoricalY(index1, sample);
+            newX2 = motionEvent.getHistoricalX(index2, sample);
+            newY2 = motionEvent.getHistoricalY(index2, sample);
+        } else {
+            newX1 = motionEvent.getX(index1);
+            newY1 = motionEvent.getY(index1);
+            newX2 = motionEvent.getX(index2);
+            newY2 = motionEvent.getY(index2);
+        }
+        return true;
+    }
+    /** Sets the average delta to the movement of the midpoint from the given positions to the new ones. */
+    private void setAverageDelta(float fromX1, float fromY1, float fromX2, float fromY2) {
+        averageDeltaPosition.set(
+                (newX1 + newX2 - fromX1 - fromX2) * 0.5f,
+                (newY1 + newY2 - fromY1 - fromY2) * 0.5f,
+                0.0f);
+    }
+    private static float length(float x, float y) {
+        return (float) Math.sqrt(x * x + y * y);
+    }
+    private static void debugLog(String log) {
+        Log.d(TAG, "TwoFingerDragGesture:[" + log + "]");
     }
 }
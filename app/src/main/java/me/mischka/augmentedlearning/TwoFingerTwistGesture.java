@@ -0,0 +1,184 @@
+package me.mischka.augmentedlearning;
+
+import android.util.Log;
+import android.view.MotionEvent;
+import com.google.ar.sceneform.HitTestResult;
+import com.google.ar.sceneform.ux.BaseGesture;
+import com.google.ar.sceneform.ux.GesturePointersUtility;
+
+/**
+ * A twist of two fingers around each other, as Sceneform's {@code TwistGesture}, but measured over
+ * every sample of a move event, historical ones included.
+ *
+ * <p>{@link TouchDispatcher} delivers one move event per frame with the path since the last one as
+ * its history, so the rotation is added up sample by sample, as it would have been with every event
+ * dispatched. Pointer positions are tracked as primitive floats, so handling a move event allocates
+ * nothing.
+ */
+public class TwoFingerTwistGesture extends BaseGesture<TwoFingerTwistGesture> {
+
+    private static final String TAG = TwoFingerTwistGesture.class.getSimpleName();
+    /**
+     * Interface definition for callbacks to be invoked by a {@link TwoFingerTwistGesture}.
+     */
+    public interface OnGestureEventListener
+            extends BaseGesture.OnGestureEventListener<TwoFingerTwistGesture> {
+    }
+    // A compile-time constant, so the log messages below are compiled out when it is false.
+    private static final boolean TWO_FINGER_TWIST_GESTURE_DEBUG = false;
+    // The same as Sceneform's TwistGesture.
+    private static final float SLOP_ROTATION_DEGREES = 15.0f;
+    private final int pointerId1;
+    private final int pointerId2;
+    // From the first pointer to the second, as of the last sample.
+    private float previousDirectionX;
+    private float previousDirectionY;
+    // Set by readDirection.
+    private float newDirectionX;
+    private float newDirectionY;
+    // Since the gesture was created, and in the last event.
+    private float rotationDegrees;
+    private float deltaRotationDegrees;
+    public TwoFingerTwistGesture(
+            GesturePointersUtility gesturePointersUtility, MotionEvent motionEvent, int pointerId2) {
+        super(gesturePointersUtility);
+        pointerId1 = motionEvent.getPointerId(motionEvent.getActionIndex());
+        this.pointerId2 = pointerId2;
+        readDirection(motionEvent, motionEvent.getHistorySize());
+        previousDirectionX = newDirectionX;
+        previousDirectionY = newDirectionY;
+        if (TWO_FINGER_TWIST_GESTURE_DEBUG) {
+            debugLog("Created");
+        }
+    }
+    /** Returns the rotation of the fingers in the last event, in degrees, signed as Sceneform's. */
+    public float getDeltaRotationDegrees() {
+        return deltaRotationDegrees;
+    }
+    @Override
+    protected boolean canStart(HitTestResult hitTestResult, MotionEvent motionEvent) {
+        if (gesturePointersUtility.isPointerIdRetained(pointerId1)
+                || gesturePointersUtility.isPointerIdRetained(pointerId2)) {
+            cancel();
+            return false;
+        }
+        int actionId = motionEvent.getPointerId(motionEvent.getActionIndex());
+        int action = motionEvent.getActionMasked();
+        if (action == MotionEvent.ACTION_CANCEL) {
+            cancel();
+            return false;
+        }
+        boolean touchEnded = action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_POINTER_UP;
+        if (touchEnded && (actionId == pointerId1 || actionId == pointerId2)) {
+            cancel();
+            return false;
+        }
+        if (action != MotionEvent.ACTION_MOVE || !accumulateRotation(motionEvent)) {
+            return false;
+        }
+        // The rotation within the slop is not applied, as with Sceneform's TwistGesture. This one is
+        // dispatched before Sceneform's and starts no later, so it takes the pointers first.
+        deltaRotationDegrees = 0;
+        return Math.abs(rotationDegrees) >= SLOP_ROTATION_DEGREES;
+    }
+    @Override
+    protected void onStart(HitTestResult hitTestResult, MotionEvent motionEvent) {
+        if (TWO_FINGER_TWIST_GESTURE_DEBUG) {
+            debugLog("Started");
+        }
+        gesturePointersUtility.retainPointerId(pointerId1);
+        gesturePointersUtility.retainPointerId(pointerId2);
+    }
+    @Override
+    protected boolean updateGesture(HitTestResult hitTestResult, MotionEvent motionEvent) {
+        int actionId = motionEvent.getPointerId(motionEvent.getActionIndex());
+        int action = motionEvent.getActionMasked();
+        if (action == MotionEvent.ACTION_CANCEL) {
+            cancel();
+            return false;
+        }
+        boolean touchEnded = action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_POINTER_UP;
+        if (touchEnded && (actionId == pointerId1 || actionId == pointerId2)) {
+            complete();
+            return false;
+        }
+        if (action != MotionEvent.ACTION_MOVE) {
+            return false;
+        }
+        float before = rotationDegrees;
+        if (!accumulateRotation(motionEvent)) {
+            return false;
+        }
+        deltaRotationDegrees = rotationDegrees - before;
+        if (TWO_FINGER_TWIST_GESTURE_DEBUG) {
+            debugLog("Update: " + deltaRotationDegrees);
+        }
+        return true;
+    }
+    @Override
+    protected void onCancel() {
+        if (TWO_FINGER_TWIST_GESTURE_DEBUG) {
+            debugLog("Cancelled");
+        }
+    }
+    @Override
+    protected void onFinish() {
+        if (TWO_FINGER_TWIST_GESTURE_DEBUG) {
+            debugLog("Finished");
+        }
+        gesturePointersUtility.releasePointerId(pointerId1);
+        gesturePointersUtility.releasePointerId(pointerId2);
+    }
+    @Override
+    protected TwoFingerTwistGesture getSelf() {
+        return this;
+    }
+    /**
+     * Adds the rotation between every two samples of {@code motionEvent}, oldest first, to the
+     * rotation since the start.
+     *
+     * @return false if either pointer is missing from the event.
+     */
+    private boolean accumulateRotation(MotionEvent motionEvent) {
+        int historySize = motionEvent.getHistorySize();
+        for (int sample = 0; sample <= historySize; sample++) {
+            if (!readDirection(motionEvent, sample)) {
+                return false;
+            }
+            if (newDirectionX == 0 && newDirectionY == 0) {
+                // The fingers are on top of each other; there is no direction to measure from.
+                continue;
+            }
+            rotationDegrees += GestureMath.angleBetween(
+                    previousDirectionX, previousDirectionY, newDirectionX, newDirectionY);
+            previousDirectionX = newDirectionX;
+            previousDirectionY = newDirectionY;
+        }
+        return true;
+    }
+    /**
+     * Reads the direction from the first pointer to the second in {@code sample} of {@code
+     * motionEvent} into the {@code new} fields. Samples below the history size are historical, the
+     * history size itself is the current one.
+     *
+     * @return false if either pointer is missing from the event.
+     */
+    private boolean readDirection(MotionEvent motionEvent, int sample) {
+        int index1 = motionEvent.findPointerIndex(pointerId1);
+        int index2 = motionEvent.findPointerIndex(pointerId2);
+        if (index1 < 0 || index2 < 0) {
+            return false;
+        }
+        if (sample < motionEvent.getHistorySize()) {
+            newDirectionX = motionEvent.getHistoricalX(index2, sample) - motionEvent.getHistoricalX(index1, sample);
+            newDirectionY = motionEvent.getHistoricalY(index2, sample) - motionEvent.getHistoricalY(index1, sample);
+        } else {
+            newDirectionX = motionEvent.getX(index2) - motionEvent.getX(index1);
+            newDirectionY = motionEvent.getY(index2) - motionEvent.getY(index1);
+        }
+        return true;
+    }
+    private static void debugLog(String log) {
+        Log.d(TAG, "TwoFingerTwistGesture:[" + log + "]");
+    }
+}
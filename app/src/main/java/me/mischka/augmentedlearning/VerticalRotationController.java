@@ -1,19 +1,23 @@
 package me.mischka.augmentedlearning;
 
-import android.util.Log;
-
-import com.google.ar.sceneform.math.Quaternion;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.ux.BaseTransformationController;
-import com.google.ar.sceneform.ux.TransformableNode;
+
+import me.mischka.common.metrics.Metrics;
 
 public class VerticalRotationController extends BaseTransformationController<TwoFingerDragGesture> {
     private static final String TAG = "VerticalRotationController";
 
     private static final float DELTA_MULTIPLIER = 1f;
+    private final AugmentedImageTransformableNode node;
     public VerticalRotationController(
-            TransformableNode transformableNode, TwoFingerDragGestureRecognizer gestureRecognizer) {
+            AugmentedImageTransformableNode transformableNode, TwoFingerDragGestureRecognizer gestureRecognizer) {
         super(transformableNode, gestureRecognizer);
+        node = transformableNode;
+    }
+    @Override
+    public boolean isTransforming() {
+        return super.isTransforming() || node.isRotationMoving();
     }
     @Override
     public boolean canStartTransformation(TwoFingerDragGesture gesture) {
@@ -22,9 +26,8 @@ public class VerticalRotationController extends BaseTransformationController<Two
     @Override
     public void onContinueTransformation(TwoFingerDragGesture gesture) {
         float deltaY = gesture.getAverageDeltaPosition().y * DELTA_MULTIPLIER;
-        Log.d(TAG, String.valueOf(deltaY));
-        Quaternion rotationDelta = new Quaternion(getTransformableNode().worldToLocalDirection(Vector3.right()), deltaY);
-        getTransformableNode().setLocalRotation(Quaternion.multiply(getTransformableNode().getLocalRotation(), rotationDelta));
+        Metrics.increment(AppMetrics.VERTICAL_ROTATE_UPDATES);
+        node.rotateTarget(Vector3.right(), deltaY);
     }
     @Override
     public void onEndTransformation(TwoFingerDragGesture gesture) {
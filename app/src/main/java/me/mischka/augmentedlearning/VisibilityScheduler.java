@@ -0,0 +1,97 @@
+package me.mischka.augmentedlearning;
+
+import com.google.ar.core.Camera;
+import com.google.ar.core.Frame;
+import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
+
+import me.mischka.common.helpers.ViewFrustum;
+import me.mischka.common.metrics.Metrics;
+
+/**
+ * Decides once per frame which anchored image nodes are worth updating and rendering, by their
+ * {@link NodeVisibility}.
+ *
+ * <p>Off-screen nodes are disabled, which stops their rendering, their updates and their gesture
+ * controllers. Stale nodes are faded and released through the {@link
+ * AugmentedImageLifecycleManager}.
+ */
+public class VisibilityScheduler implements NodeVisibility.Nodes {
+    private static final float NEAR_PLANE = 0.1f;
+    private static final float FAR_PLANE = 100f;
+
+    private final AugmentedImageRegistry registry;
+    private final AugmentedImageLifecycleManager lifecycleManager;
+    private final NodeVisibility visibility = new NodeVisibility(this);
+
+    private final float[] viewMatrix = new float[16];
+    private final float[] projectionMatrix = new float[16];
+
+    public VisibilityScheduler(AugmentedImageRegistry registry, AugmentedImageLifecycleManager lifecycleManager) {
+        this.registry = registry;
+        this.lifecycleManager = lifecycleManager;
+    }
+
+    /** Records that ARCore updated the tracked image at {@code index} in the frame at {@code timestampNanos}. */
+    public void onImageUpdated(int index, long timestampNanos) {
+        visibility.onImageUpdated(index, timestampNanos);
+    }
+
+    /** Classifies the anchored nodes against the camera of {@code frame}. */
+    public void update(Frame frame) {
+        int size = registry.size();
+        if (size == 0) {
+            return;
+        }
+
+        Camera camera = frame.getCamera();
+        camera.getViewMatrix(viewMatrix, 0);
+        camera.getProjectionMatrix(projectionMatrix, 0, NEAR_PLANE, FAR_PLANE);
+        visibility.update(size, frame.getTimestamp(), viewMatrix, projectionMatrix);
+    }
+
+    /** Forgets the state of every node, e.g. after every node has been dropped. */
+    public void reset() {
+        visibility.reset();
+    }
+
+    @Override
+    public boolean isAnchored(int index) {
+        AugmentedImageNodeAnchor node = registry.getNode(index);
+        return node != null && node.getAnchor() != null;
+    }
+
+    @Override
+    public boolean isTracking(int index) {
+        return registry.getNode(index).getAnchor().getTrackingState() == TrackingState.TRACKING;
+    }
+
+    @Override
+    public boolean isInView(int index, ViewFrustum frustum) {
+        AugmentedImageNodeAnchor node = registry.getNode(index);
+        Pose pose = node.getAnchor().getPose();
+        return frustum.intersectsSphere(pose.tx(), pose.ty(), pose.tz(), node.getBoundingRadius());
+    }
+
+    @Override
+    public void setEnabled(int index, boolean enabled) {
+        registry.getNode(index).setEnabled(enabled);
+        if (!enabled) {
+            Metrics.increment(AppMetrics.NODES_SUSPENDED);
+        }
+    }
+
+    @Override
+    public void setFade(int index, float fade) {
+        AugmentedImageNodeAnchor node = registry.getNode(index);
+        if (node != null) {
+            node.setFade(fade);
+        }
+    }
+
+    @Override
+    public void release(int index) {
+        lifecycleManager.release(index);
+        Metrics.increment(AppMetrics.NODES_RELEASED);
+    }
+}
@@ -0,0 +1,45 @@
+package me.mischka.common.helpers;
+
+/**
+ * Tests bounding spheres against the view frustum of a camera, given its OpenGL-style view and
+ * projection matrices. Nothing is allocated after construction.
+ */
+public final class ViewFrustum {
+    private final float[] viewProjection = new float[16];
+    // How far a sphere of unit radius reaches past a side plane, in clip units: the length of the
+    // plane's normal before normalization.
+    private float slackX;
+    private float slackY;
+
+    /** Updates the frustum from column-major view and projection matrices. */
+    public void update(float[] view, float[] projection) {
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += projection[k * 4 + row] * view[column * 4 + k];
+                }
+                viewProjection[column * 4 + row] = sum;
+            }
+        }
+        slackX = (float) Math.sqrt(projection[0] * projection[0] + 1);
+        slackY = (float) Math.sqrt(projection[5] * projection[5] + 1);
+    }
+
+    /** Whether any part of the sphere at ({@code x}, {@code y}, {@code z}) with {@code radius} may be in view. */
+    public boolean intersectsSphere(float x, float y, float z, float radius) {
+        float[] m = viewProjection;
+        float clipX = m[0] * x + m[4] * y + m[8] * z + m[12];
+        float clipY = m[1] * x + m[5] * y + m[9] * z + m[13];
+        float clipW = m[3] * x + m[7] * y + m[11] * z + m[15];
+        // w is the distance in front of the camera.
+        if (clipW <= -radius) {
+            return false;
+        }
+        if (clipW <= radius) {
+            // The camera is inside or at the edge of the sphere.
+            return true;
+        }
+        return Math.abs(clipX) <= clipW + radius * slackX && Math.abs(clipY) <= clipW + radius * slackY;
+    }
+}
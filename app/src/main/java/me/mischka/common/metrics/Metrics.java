@@ -0,0 +1,212 @@
+package me.mischka.common.metrics;
+
+import android.os.Trace;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Process-wide timers, counters and gauges for hot paths.
+ *
+ * <p>Sections, counters and gauges are registered once, by name, and then addressed by the returned id,
+ * so recording never looks anything up or allocates. While disabled, which is the default, every
+ * recording method returns after a single field read. Timed sections also show up in systrace.
+ *
+ * <pre>
+ * static final int FRAME = Metrics.section("frame");
+ *
+ * long start = Metrics.begin(FRAME);
+ * ...
+ * Metrics.end(FRAME, start);
+ * </pre>
+ *
+ * <p>Recording is meant for the UI thread; other threads may see slightly stale numbers.
+ */
+public final class Metrics {
+    private static final int MAX_SECTIONS = 32;
+    private static final int MAX_COUNTERS = 32;
+    private static final int MAX_GAUGES = 16;
+
+    private static volatile boolean enabled;
+
+    private static final String[] sectionNames = new String[MAX_SECTIONS];
+    private static final Histogram[] histograms = new Histogram[MAX_SECTIONS];
+    private static int sectionCount;
+
+    private static final String[] counterNames = new String[MAX_COUNTERS];
+    private static final long[] counters = new long[MAX_COUNTERS];
+    private static int counterCount;
+
+    private static final String[] gaugeNames = new String[MAX_GAUGES];
+    private static final long[] gauges = new long[MAX_GAUGES];
+    private static int gaugeCount;
+
+    private Metrics() {
+    }
+
+    /** Registers a timed section, or returns the id of the one already registered as {@code name}. */
+    public static synchronized int section(String name) {
+        for (int i = 0; i < sectionCount; i++) {
+            if (sectionNames[i].equals(name)) {
+                return i;
+            }
+        }
+        if (sectionCount == MAX_SECTIONS) {
+            throw new IllegalStateException("Too many sections");
+        }
+        sectionNames[sectionCount] = name;
+        histograms[sectionCount] = new Histogram();
+        return sectionCount++;
+    }
+
+    /** Registers a counter, or returns the id of the one already registered as {@code name}. */
+    public static synchronized int counter(String name) {
+        for (int i = 0; i < counterCount; i++) {
+            if (counterNames[i].equals(name)) {
+                return i;
+            }
+        }
+        if (counterCount == MAX_COUNTERS) {
+            throw new IllegalStateException("Too many counters");
+        }
+        counterNames[counterCount] = name;
+        return counterCount++;
+    }
+
+    /**
+     * Registers a gauge, a level such as a memory use that is set rather than accumulated, or
+     * returns the id of the one already registered as {@code name}.
+     */
+    public static synchronized int gauge(String name) {
+        for (int i = 0; i < gaugeCount; i++) {
+            if (gaugeNames[i].equals(name)) {
+                return i;
+            }
+        }
+        if (gaugeCount == MAX_GAUGES) {
+            throw new IllegalStateException("Too many gauges");
+        }
+        gaugeNames[gaugeCount] = name;
+        return gaugeCount++;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /** Returns the current time for {@link #record}, in nanoseconds. */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Starts timing {@code section}.
+     *
+     * @return the start time to pass to {@link #end}, or 0 if disabled.
+     */
+    public static long begin(int section) {
+        if (!enabled) {
+            return 0;
+        }
+        Trace.beginSection(sectionNames[section]);
+        return System.nanoTime();
+    }
+
+    /** Ends timing {@code section}, started by {@link #begin} on the same thread. */
+    public static void end(int section, long start) {
+        if (start == 0) {
+            return;
+        }
+        Trace.endSection();
+        histograms[section].record(System.nanoTime() - start);
+    }
+
+    /** Records a duration measured elsewhere, e.g. across threads or callbacks. */
+    public static void record(int section, long nanos) {
+        if (enabled) {
+            histograms[section].record(nanos);
+        }
+    }
+
+    public static void increment(int counter) {
+        if (enabled) {
+            counters[counter]++;
+        }
+    }
+
+    public static void add(int counter, long amount) {
+        if (enabled) {
+            counters[counter] += amount;
+        }
+    }
+
+    /** Sets {@code gauge}. Unlike counters, gauges are kept up to date while disabled and survive {@link #reset}. */
+    public static void set(int gauge, long value) {
+        gauges[gauge] = value;
+    }
+
+    public static synchronized void reset() {
+        for (int i = 0; i < sectionCount; i++) {
+            histograms[i].reset();
+        }
+        for (int i = 0; i < counterCount; i++) {
+            counters[i] = 0;
+        }
+    }
+
+    /**
+     * Writes every section's count and p50, p99 and maximum times in milliseconds, then every
+     * counter and gauge.
+     */
+    public static synchronized void dump(PrintWriter writer, String prefix) {
+        writer.print(prefix);
+        writer.println("Metrics " + (enabled ? "enabled" : "disabled"));
+        writer.print(prefix);
+        writer.println(String.format(Locale.US, "  %-24s %8s %8s %8s %8s", "section", "count", "p50", "p99", "max"));
+        for (int i = 0; i < sectionCount; i++) {
+            Histogram histogram = histograms[i];
+            writer.print(prefix);
+            writer.println(String.format(Locale.US, "  %-24s %8d %8.2f %8.2f %8.2f", sectionNames[i],
+                    histogram.getCount(), millis(histogram.getPercentile(50)),
+                    millis(histogram.getPercentile(99)), millis(histogram.getMax())));
+        }
+        for (int i = 0; i < counterCount; i++) {
+            writer.print(prefix);
+            writer.println(String.format(Locale.US, "  %-24s %8d", counterNames[i], counters[i]));
+        }
+        for (int i = 0; i < gaugeCount; i++) {
+            writer.print(prefix);
+            writer.println(String.format(Locale.US, "  %-24s %8d", gaugeNames[i], gauges[i]));
+        }
+    }
+
+    /** Appends a compact p50/p99 line per section that has recorded anything, for an on-screen overlay. */
+    public static synchronized void summarize(StringBuilder builder) {
+        for (int i = 0; i < sectionCount; i++) {
+            Histogram histogram = histograms[i];
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            builder.append(sectionNames[i]).append(' ')
+                    .append(String.format(Locale.US, "%.1f/%.1f ms",
+                            millis(histogram.getPercentile(50)), millis(histogram.getPercentile(99))))
+                    .append('\n');
+        }
+        for (int i = 0; i < counterCount; i++) {
+            if (counters[i] != 0) {
+                builder.append(counterNames[i]).append(' ').append(counters[i]).append('\n');
+            }
+        }
+        for (int i = 0; i < gaugeCount; i++) {
+            builder.append(gaugeNames[i]).append(' ').append(gauges[i]).append('\n');
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
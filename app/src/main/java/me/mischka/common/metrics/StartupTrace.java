@@ -0,0 +1,73 @@
+package me.mischka.common.metrics;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+/**
+ * Milestones of a cold start, in milliseconds since the process was started.
+ *
+ * <p>Each milestone is recorded once, the first time it is reached, and also shows up in systrace
+ * as an empty section. {@link #report} logs them all as a single line of {@code key=value} pairs
+ * under the {@code StartupTrace} tag, e.g.
+ *
+ * <pre>
+ * StartupTrace version=1.2.0 activityCreate=212 contentView=498 ... firstImage=2840
+ * </pre>
+ *
+ * so that start-ups can be compared across runs and releases. After the report, and in processes
+ * that outlive their first activity, nothing more is recorded.
+ */
+public final class StartupTrace {
+    private static final String TAG = "StartupTrace";
+
+    private static final int MAX_MARKS = 24;
+
+    private static final String[] names = new String[MAX_MARKS];
+    private static final long[] times = new long[MAX_MARKS];
+    private static int count;
+    private static boolean finished;
+
+    private StartupTrace() {
+    }
+
+    /** Records the milestone {@code name}, unless it has already been reached. */
+    public static synchronized void mark(String name) {
+        if (finished || count == MAX_MARKS) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (names[i].equals(name)) {
+                return;
+            }
+        }
+        names[count] = name;
+        times[count] = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+        count++;
+        Trace.beginSection(name);
+        Trace.endSection();
+    }
+
+    /** Whether milestones are still being recorded. */
+    public static synchronized boolean isRecording() {
+        return !finished;
+    }
+
+    /**
+     * Logs the milestones reached so far, after {@code context}, a list of {@code key=value}
+     * pairs describing the build and device, and stops recording. Only the first call logs.
+     */
+    public static synchronized void report(String context) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        StringBuilder line = new StringBuilder(context);
+        for (int i = 0; i < count; i++) {
+            line.append(' ').append(names[i]).append('=').append(times[i]);
+        }
+        Log.i(TAG, line.toString());
+    }
+}
@@ -0,0 +1,61 @@
+package me.mischka.common.motion;
+
+/**
+ * The One Euro filter of Casiez et al.: a low-pass filter whose cutoff frequency rises with the
+ * speed of the signal. Slow signals are smoothed hard, which removes jitter, while fast ones pass
+ * with little lag.
+ */
+public final class OneEuroFilter {
+    private final float minCutoff;
+    private final float beta;
+    private final float derivativeCutoff;
+
+    private boolean initialized;
+    private float value;
+    private float derivative;
+
+    /**
+     * @param minCutoff the cutoff frequency in Hz when the signal is at rest. Lower removes more
+     *     jitter.
+     * @param beta how much the cutoff rises per unit of speed. Higher lags less on fast motion.
+     * @param derivativeCutoff the cutoff frequency in Hz for the speed estimate.
+     */
+    public OneEuroFilter(float minCutoff, float beta, float derivativeCutoff) {
+        this.minCutoff = minCutoff;
+        this.beta = beta;
+        this.derivativeCutoff = derivativeCutoff;
+    }
+
+    /** Filters the next sample, {@code deltaSeconds} after the previous one. */
+    public float filter(float sample, float deltaSeconds) {
+        if (!initialized || deltaSeconds <= 0) {
+            if (!initialized) {
+                value = sample;
+                derivative = 0;
+                initialized = true;
+            }
+            return value;
+        }
+
+        float sampleDerivative = (sample - value) / deltaSeconds;
+        derivative += alpha(derivativeCutoff, deltaSeconds) * (sampleDerivative - derivative);
+        float cutoff = minCutoff + beta * Math.abs(derivative);
+        value += alpha(cutoff, deltaSeconds) * (sample - value);
+        return value;
+    }
+
+    public float get() {
+        return value;
+    }
+
+    /** Forgets the signal, so the next sample passes unfiltered. */
+    public void reset() {
+        initialized = false;
+    }
+
+    /** Returns the smoothing factor of an exponential filter with the given cutoff frequency. */
+    static float alpha(float cutoff, float deltaSeconds) {
+        float tau = (float) (1 / (2 * Math.PI * cutoff));
+        return 1 / (1 + tau / deltaSeconds);
+    }
+}
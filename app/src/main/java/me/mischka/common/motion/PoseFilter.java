@@ -0,0 +1,139 @@
+package me.mischka.common.motion;
+
+/**
+ * Smooths a stream of poses with {@link OneEuroFilter}s: one per axis for the translation, and one
+ * on the angular speed for the rotation, which is blended towards each sample along the shorter
+ * arc and renormalized. Filtering never allocates.
+ *
+ * <p>Poses are given as a translation and an {@code x, y, z, w} quaternion, as ARCore stores them.
+ */
+public final class PoseFilter {
+    // Defaults tuned for tracked images: at rest, millimeter jitter is smoothed over about a third
+    // of a second, while a hand-moved image is followed within a frame or two.
+    public static final float DEFAULT_POSITION_MIN_CUTOFF = 0.5f;
+    public static final float DEFAULT_POSITION_BETA = 20f;
+    public static final float DEFAULT_ROTATION_MIN_CUTOFF = 0.5f;
+    public static final float DEFAULT_ROTATION_BETA = 1f;
+    // How far the filtered pose of a tracked image may drift from where it is anchored before
+    // recreating the anchor is worth its cost.
+    public static final float DEFAULT_MAX_DRIFT_DISTANCE = 0.02f;
+    public static final float DEFAULT_MAX_DRIFT_ANGLE = (float) Math.toRadians(4);
+
+    private static final float DERIVATIVE_CUTOFF = 1f;
+
+    private final OneEuroFilter x;
+    private final OneEuroFilter y;
+    private final OneEuroFilter z;
+    private final float rotationMinCutoff;
+    private final float rotationBeta;
+
+    private final float[] rotation = new float[4];
+    private float angularSpeed;
+    private long lastTimestampNanos;
+    private boolean initialized;
+
+    public PoseFilter() {
+        this(DEFAULT_POSITION_MIN_CUTOFF, DEFAULT_POSITION_BETA, DEFAULT_ROTATION_MIN_CUTOFF, DEFAULT_ROTATION_BETA);
+    }
+
+    /**
+     * @param positionMinCutoff cutoff in Hz for a translation at rest.
+     * @param positionBeta cutoff increase per meter per second.
+     * @param rotationMinCutoff cutoff in Hz for a rotation at rest.
+     * @param rotationBeta cutoff increase per radian per second.
+     */
+    public PoseFilter(float positionMinCutoff, float positionBeta, float rotationMinCutoff, float rotationBeta) {
+        x = new OneEuroFilter(positionMinCutoff, positionBeta, DERIVATIVE_CUTOFF);
+        y = new OneEuroFilter(positionMinCutoff, positionBeta, DERIVATIVE_CUTOFF);
+        z = new OneEuroFilter(positionMinCutoff, positionBeta, DERIVATIVE_CUTOFF);
+        this.rotationMinCutoff = rotationMinCutoff;
+        this.rotationBeta = rotationBeta;
+    }
+
+    /** Filters the pose sampled at {@code timestampNanos}. The first pose after a reset passes as is. */
+    public void filter(long timestampNanos, float[] translation, float[] quaternion) {
+        if (!initialized) {
+            x.reset();
+            y.reset();
+            z.reset();
+            x.filter(translation[0], 0);
+            y.filter(translation[1], 0);
+            z.filter(translation[2], 0);
+            System.arraycopy(quaternion, 0, rotation, 0, 4);
+            angularSpeed = 0;
+            lastTimestampNanos = timestampNanos;
+            initialized = true;
+            return;
+        }
+
+        float deltaSeconds = (timestampNanos - lastTimestampNanos) / 1e9f;
+        if (deltaSeconds <= 0) {
+            return;
+        }
+        lastTimestampNanos = timestampNanos;
+
+        x.filter(translation[0], deltaSeconds);
+        y.filter(translation[1], deltaSeconds);
+        z.filter(translation[2], deltaSeconds);
+
+        float dot = dot(rotation, quaternion);
+        float sign = dot < 0 ? -1 : 1;
+        float sampleSpeed = angle(Math.abs(dot)) / deltaSeconds;
+        angularSpeed += OneEuroFilter.alpha(DERIVATIVE_CUTOFF, deltaSeconds) * (sampleSpeed - angularSpeed);
+        float alpha = OneEuroFilter.alpha(rotationMinCutoff + rotationBeta * angularSpeed, deltaSeconds);
+
+        float length = 0;
+        for (int i = 0; i < 4; i++) {
+            rotation[i] += alpha * (sign * quaternion[i] - rotation[i]);
+            length += rotation[i] * rotation[i];
+        }
+        length = (float) Math.sqrt(length);
+        for (int i = 0; i < 4; i++) {
+            rotation[i] /= length;
+        }
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /** Copies the filtered translation into {@code out}. */
+    public void getTranslation(float[] out) {
+        out[0] = x.get();
+        out[1] = y.get();
+        out[2] = z.get();
+    }
+
+    /** Copies the filtered rotation into {@code out}. */
+    public void getRotation(float[] out) {
+        System.arraycopy(rotation, 0, out, 0, 4);
+    }
+
+    /**
+     * Whether the filtered pose is more than {@code maxDistance} meters or {@code maxAngle} radians
+     * from the given one.
+     */
+    public boolean hasDrifted(float[] translation, float[] quaternion, float maxDistance, float maxAngle) {
+        float dx = x.get() - translation[0];
+        float dy = y.get() - translation[1];
+        float dz = z.get() - translation[2];
+        if (dx * dx + dy * dy + dz * dz > maxDistance * maxDistance) {
+            return true;
+        }
+        return angle(Math.abs(dot(rotation, quaternion))) > maxAngle;
+    }
+
+    /** Forgets the poses seen so far. */
+    public void reset() {
+        initialized = false;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2] + a[3] * b[3];
+    }
+
+    /** Returns the angle in radians of the rotation between two unit quaternions with the given dot product. */
+    private static float angle(float absDot) {
+        return 2 * (float) Math.acos(Math.min(1, absDot));
+    }
+}
@@ -0,0 +1,97 @@
+package me.mischka.common.motion;
+
+/**
+ * A critically damped spring pulling a value of one or more components towards a target.
+ *
+ * <p>Each step uses the exact solution of the spring equation rather than a numerical integration,
+ * so the motion is the same whether it is stepped at 30, 60 or 120 Hz, and it never overshoots.
+ * Stepping never allocates.
+ */
+public final class Spring {
+    private final float[] value;
+    private final float[] velocity;
+    private final float[] target;
+    private final float omega;
+    private final float epsilon;
+    private boolean active;
+
+    /**
+     * @param dimensions the number of components.
+     * @param smoothTime roughly the time in seconds to reach the target.
+     * @param epsilon the distance per component below which the spring snaps to its target.
+     */
+    public Spring(int dimensions, float smoothTime, float epsilon) {
+        if (smoothTime <= 0) {
+            throw new IllegalArgumentException("smoothTime must be positive: " + smoothTime);
+        }
+        value = new float[dimensions];
+        velocity = new float[dimensions];
+        target = new float[dimensions];
+        omega = 2 / smoothTime;
+        this.epsilon = epsilon;
+    }
+
+    public float get(int component) {
+        return value[component];
+    }
+
+    public float getTarget(int component) {
+        return target[component];
+    }
+
+    /** Sets one component of the target. The spring moves on the next {@link #update}. */
+    public void setTarget(int component, float target) {
+        this.target[component] = target;
+        active = true;
+    }
+
+    /** Moves one component without animating it, keeping its velocity. */
+    public void setValue(int component, float value) {
+        this.value[component] = value;
+    }
+
+    /** Puts one component at rest on {@code value}. */
+    public void snap(int component, float value) {
+        this.value[component] = value;
+        target[component] = value;
+        velocity[component] = 0;
+    }
+
+    /** Whether the spring is still moving towards its target. */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Advances the spring by {@code deltaSeconds}.
+     *
+     * @return whether the value changed. The step that comes to rest puts it exactly on the target.
+     */
+    public boolean update(float deltaSeconds) {
+        if (!active) {
+            return false;
+        }
+
+        float decay = (float) Math.exp(-omega * deltaSeconds);
+        boolean settled = true;
+        for (int i = 0; i < value.length; i++) {
+            float offset = value[i] - target[i];
+            float temp = (velocity[i] + omega * offset) * deltaSeconds;
+            velocity[i] = (velocity[i] - omega * temp) * decay;
+            offset = (offset + temp) * decay;
+            value[i] = target[i] + offset;
+            if (Math.abs(offset) > epsilon || Math.abs(velocity[i]) * deltaSeconds > epsilon) {
+                settled = false;
+            }
+        }
+
+        if (settled) {
+            for (int i = 0; i < value.length; i++) {
+                value[i] = target[i];
+                velocity[i] = 0;
+            }
+            active = false;
+        }
+        return true;
+    }
+}
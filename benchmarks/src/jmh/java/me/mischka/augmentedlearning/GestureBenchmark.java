@@ -0,0 +1,195 @@
+package me.mischka.augmentedlearning;
+
+import android.util.DisplayMetrics;
+import android.view.MotionEvent;
+
+import com.google.ar.sceneform.math.Quaternion;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.ux.GesturePointersUtility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-touch-event work of the gesture stack against a synthetic two finger drag:
+ * both fingers go down, move up the screen together with some jitter, and lift. The twist is
+ * benchmarked against fingers turning around each other, with the moves coalesced as {@link
+ * TouchDispatcher} delivers them, {@link #SAMPLES_PER_MOVE} samples to an event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GestureBenchmark {
+    private static final int MOVE_COUNT = 256;
+    // A 240Hz touch screen at 60 frames per second.
+    private static final int SAMPLES_PER_MOVE = 4;
+    private static final float TWIST_DEGREES_PER_SAMPLE = 0.5f;
+
+    private MotionEvent down;
+    private MotionEvent pointerDown;
+    private MotionEvent[] moves;
+    private MotionEvent pointerUp;
+
+    private GesturePointersUtility gesturePointersUtility;
+    private TwoFingerDragGesture startedGesture;
+    private TwoFingerTwistGesture startedTwistGesture;
+    private MotionEvent[] twistMoves;
+    private int nextMove;
+
+    private Quaternion rotation;
+    // The parent's right and forward axes, as AugmentedImageTransformableNode.rotateTarget gets them
+    // from Sceneform's worldToLocalDirection.
+    private Vector3 parentRight;
+    private Vector3 parentForward;
+
+    // An image lying 1m in front of the camera, tilted towards it, and a ray from the camera.
+    private final float[] imageMatrix = new float[16];
+    private final float[] rayOrigin = new float[3];
+    private final float[] rayDirection = {0.05f, -0.4f, -1};
+    private final float[] imageHit = new float[3];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        float[] xs = {400, 600};
+        float[] ys = {1200, 1200};
+        down = MotionEvent.create(MotionEvent.ACTION_DOWN, 0, 0, new float[] {xs[0]}, new float[] {ys[0]});
+        pointerDown = MotionEvent.create(MotionEvent.ACTION_POINTER_DOWN, 1, 8, xs, ys);
+
+        moves = new MotionEvent[MOVE_COUNT];
+        for (int i = 0; i < MOVE_COUNT; i++) {
+            for (int pointer = 0; pointer < 2; pointer++) {
+                xs[pointer] += random.nextFloat() * 2 - 1;
+                ys[pointer] -= 3 + random.nextFloat();
+            }
+            moves[i] = MotionEvent.create(MotionEvent.ACTION_MOVE, 0, 16 + i * 8, xs, ys);
+        }
+        pointerUp = MotionEvent.create(MotionEvent.ACTION_POINTER_UP, 1, 16 + MOVE_COUNT * 8, xs, ys);
+
+        gesturePointersUtility = new GesturePointersUtility(new DisplayMetrics());
+        // The started gesture retains its pointers, so it gets its own bookkeeping.
+        startedGesture = new TwoFingerDragGesture(new GesturePointersUtility(new DisplayMetrics()), pointerDown, 0);
+        for (int i = 0; i < MOVE_COUNT && !startedGesture.hasStarted(); i++) {
+            startedGesture.onTouch(null, moves[i]);
+        }
+
+        twistMoves = new MotionEvent[MOVE_COUNT];
+        float[] twistXs = new float[2];
+        float[] twistYs = new float[2];
+        for (int i = 0; i < MOVE_COUNT; i++) {
+            for (int sample = 0; sample < SAMPLES_PER_MOVE; sample++) {
+                double angle = Math.toRadians((i * SAMPLES_PER_MOVE + sample) * TWIST_DEGREES_PER_SAMPLE);
+                float dx = (float) Math.cos(angle) * 100;
+                float dy = (float) Math.sin(angle) * 100;
+                twistXs[0] = 500 - dx;
+                twistYs[0] = 1200 - dy;
+                twistXs[1] = 500 + dx;
+                twistYs[1] = 1200 + dy;
+                long eventTime = 16 + (i * SAMPLES_PER_MOVE + sample) * 4;
+                if (sample == 0) {
+                    twistMoves[i] = MotionEvent.create(MotionEvent.ACTION_MOVE, 0, eventTime, twistXs, twistYs);
+                } else {
+                    twistMoves[i].addBatch(eventTime, twistXs, twistYs);
+                }
+            }
+        }
+        MotionEvent twistPointerDown = MotionEvent.create(
+                MotionEvent.ACTION_POINTER_DOWN, 1, 8, new float[] {400, 600}, new float[] {1200, 1200});
+        startedTwistGesture = new TwoFingerTwistGesture(
+                new GesturePointersUtility(new DisplayMetrics()), twistPointerDown, 0);
+        for (int i = 0; i < MOVE_COUNT && !startedTwistGesture.hasStarted(); i++) {
+            startedTwistGesture.onTouch(null, twistMoves[i]);
+        }
+
+        rotation = Quaternion.identity();
+        Quaternion worldRotation = new Quaternion(new Vector3(0, 1, 0), 30);
+        parentRight = worldRotation.inverseRotateVector(Vector3.right());
+        parentForward = worldRotation.inverseRotateVector(Vector3.forward());
+
+        Quaternion tilt = new Quaternion(Vector3.right(), 60);
+        Vector3 xAxis = tilt.rotateVector(Vector3.right());
+        Vector3 yAxis = tilt.rotateVector(Vector3.up());
+        Vector3 zAxis = tilt.rotateVector(Vector3.back());
+        float[] columns = {xAxis.x, xAxis.y, xAxis.z, 0, yAxis.x, yAxis.y, yAxis.z, 0, zAxis.x, zAxis.y, zAxis.z, 0,
+                0, -0.4f, -1, 1};
+        System.arraycopy(columns, 0, imageMatrix, 0, 16);
+    }
+
+    /** A whole drag through the recognizer, per touch event. */
+    @Benchmark
+    @OperationsPerInvocation(MOVE_COUNT + 3)
+    public void recognizeDrag(Blackhole blackhole) {
+        TwoFingerDragGestureRecognizer recognizer = new TwoFingerDragGestureRecognizer(gesturePointersUtility);
+        recognizer.addOnGestureStartedListener(blackhole::consume);
+        recognizer.onTouch(null, down);
+        recognizer.onTouch(null, pointerDown);
+        for (MotionEvent move : moves) {
+            recognizer.onTouch(null, move);
+        }
+        recognizer.onTouch(null, pointerUp);
+    }
+
+    /** Start detection for a gesture that hasn't started yet. */
+    @Benchmark
+    public boolean canStart() {
+        TwoFingerDragGesture gesture = new TwoFingerDragGesture(gesturePointersUtility, pointerDown, 0);
+        return gesture.canStart(null, moves[nextMove()]);
+    }
+
+    /** One update of a gesture in progress. */
+    @Benchmark
+    public Vector3 updateGesture() {
+        startedGesture.updateGesture(null, moves[nextMove()]);
+        return startedGesture.getAverageDeltaPosition();
+    }
+
+    /** One move event through a gesture in progress, as delivered by its recognizer. */
+    @Benchmark
+    public Vector3 moveEvent() {
+        startedGesture.onTouch(null, moves[nextMove()]);
+        return startedGesture.getAverageDeltaPosition();
+    }
+
+    /** One coalesced move event, every sample of it, through a twist in progress. */
+    @Benchmark
+    public float twistMoveEvent() {
+        startedTwistGesture.onTouch(null, twistMoves[nextMove()]);
+        return startedTwistGesture.getDeltaRotationDegrees();
+    }
+
+    /** The rotation in {@code rotateTarget} for {@code VerticalRotationController}. */
+    @Benchmark
+    public Quaternion verticalRotation() {
+        GestureMath.rotate(rotation, parentRight, 1.5f, rotation);
+        return rotation;
+    }
+
+    /** The rotation in {@code rotateTarget} for {@code AugmentedImageRotationController}. */
+    @Benchmark
+    public Quaternion twistRotation() {
+        GestureMath.rotate(rotation, parentForward, 2.5f, rotation);
+        return rotation;
+    }
+
+    /** The touch ray against the image in {@code AugmentedImageTranslationController}. */
+    @Benchmark
+    public boolean imageIntersection() {
+        return GestureMath.intersectImage(rayOrigin, rayDirection, imageMatrix, 0.2f, 0.3f, imageHit);
+    }
+
+    private int nextMove() {
+        int move = nextMove;
+        nextMove = (nextMove + 1) % MOVE_COUNT;
+        return move;
+    }
+}
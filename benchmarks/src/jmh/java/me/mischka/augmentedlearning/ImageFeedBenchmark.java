@@ -0,0 +1,60 @@
+package me.mischka.augmentedlearning;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the dispatch of one frame's image updates by {@link ImageFeedProcessor}, with a
+ * listener that only reads each tracked image's pose, as the app's does before anchoring. Checked by
+ * {@code checkAllocations}, so the frame loop stays free of allocations of its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ImageFeedBenchmark {
+    private static final int IMAGE_COUNT = 64;
+    private static final int IN_VIEW_COUNT = 16;
+
+    private SyntheticTrackableFeed feed;
+    private ImageFeedProcessor processor;
+    private final float[] translation = new float[3];
+    private final float[] rotation = new float[4];
+    private float sum;
+
+    @Setup
+    public void setUp() {
+        feed = new SyntheticTrackableFeed(IMAGE_COUNT, IN_VIEW_COUNT, 10, 42);
+        processor = new ImageFeedProcessor(new ImageFeedProcessor.Listener() {
+            @Override
+            public void onImageTracking(TrackableFeed feed, int update) {
+                feed.getCenterPose(update, translation, rotation);
+                sum += translation[0] + rotation[3];
+            }
+
+            @Override
+            public void onImageStopped(int index) {
+                sum -= index;
+            }
+        });
+        // Every image has been updated once, so the processor's state arrays have grown.
+        for (int i = 0; i < IMAGE_COUNT * 10; i++) {
+            feed.advance();
+            processor.process(feed);
+        }
+    }
+
+    /** The next frame of the feed, which allocates nothing either, through the processor. */
+    @Benchmark
+    public float process() {
+        feed.advance();
+        processor.process(feed);
+        return sum + processor.getTrackingCount();
+    }
+}
@@ -0,0 +1,56 @@
+package me.mischka.augmentedlearning;
+
+import me.mischka.common.motion.Spring;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks one frame of the springs {@code AugmentedImageTransformableNode} moves models with,
+ * at different frame rates. A gesture keeps moving the targets, so the springs never come to rest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MotionBenchmark {
+    @Param({"30", "60", "120"})
+    public int frameRate;
+
+    private Spring position;
+    private Spring rotation;
+    private Spring scale;
+    private float deltaSeconds;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        position = new Spring(3, 0.08f, 0.0005f);
+        rotation = new Spring(4, 0.06f, 0.0005f);
+        scale = new Spring(1, 0.08f, 0.001f);
+        rotation.snap(3, 1);
+        scale.snap(0, 1);
+        deltaSeconds = 1f / frameRate;
+    }
+
+    /** A target update from a gesture followed by a step of every spring. */
+    @Benchmark
+    public float frame() {
+        float t = (frame++ & 1023) * deltaSeconds;
+        position.setTarget(0, t * 0.1f);
+        position.setTarget(2, -t * 0.05f);
+        rotation.setTarget(1, (float) Math.sin(t) * 0.5f);
+        scale.setTarget(0, 1 + t * 0.01f);
+        position.update(deltaSeconds);
+        rotation.update(deltaSeconds);
+        scale.update(deltaSeconds);
+        return position.get(0) + rotation.get(1) + scale.get(0);
+    }
+}
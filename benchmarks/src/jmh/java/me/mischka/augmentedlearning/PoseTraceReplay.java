@@ -0,0 +1,184 @@
+package me.mischka.augmentedlearning;
+
+import me.mischka.common.motion.PoseFilter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Replays image pose traces through {@link PoseFilter} and the re-anchoring rule of {@code
+ * AugmentedImageLifecycleManager}, and reports how much jitter is removed, how far the filter lags
+ * and how often anchors would be recreated.
+ *
+ * <p>Traces are the lines {@code AugmentedImageLifecycleManager} logs under the {@code PoseTrace}
+ * tag: {@code index,timestampNanos,tx,ty,tz,qx,qy,qz,qw}. Record one with
+ * {@code adb shell setprop log.tag.PoseTrace VERBOSE} and {@code adb logcat -s PoseTrace:V -v raw}.
+ * Without a trace, a synthetic one is replayed: an image at rest with tracking noise, moved by hand
+ * and left at rest again.
+ *
+ * <p>Arguments: {@code [trace] [positionMinCutoff positionBeta rotationMinCutoff rotationBeta
+ * [reanchorDistance reanchorAngleDegrees]]}.
+ */
+public class PoseTraceReplay {
+    /** One pose of a trace. */
+    private static final class Sample {
+        final long timestampNanos;
+        final float[] translation;
+        final float[] rotation;
+
+        Sample(long timestampNanos, float[] translation, float[] rotation) {
+            this.timestampNanos = timestampNanos;
+            this.translation = translation;
+            this.rotation = rotation;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int parameterStart = args.length % 2 == 1 ? 1 : 0;
+        Map<Integer, List<Sample>> traces =
+                parameterStart == 1 ? read(args[0]) : synthetic();
+
+        float[] parameters = {
+                PoseFilter.DEFAULT_POSITION_MIN_CUTOFF, PoseFilter.DEFAULT_POSITION_BETA,
+                PoseFilter.DEFAULT_ROTATION_MIN_CUTOFF, PoseFilter.DEFAULT_ROTATION_BETA,
+                PoseFilter.DEFAULT_MAX_DRIFT_DISTANCE, (float) Math.toDegrees(PoseFilter.DEFAULT_MAX_DRIFT_ANGLE)
+        };
+        for (int i = parameterStart; i < args.length; i++) {
+            parameters[i - parameterStart] = Float.parseFloat(args[i]);
+        }
+
+        System.out.println("image\tsamples\traw jitter mm\tfiltered jitter mm\tmean lag mm\tmax lag mm\tanchors");
+        for (Map.Entry<Integer, List<Sample>> trace : traces.entrySet()) {
+            replay(trace.getKey(), trace.getValue(), parameters);
+        }
+    }
+
+    private static void replay(int index, List<Sample> samples, float[] parameters) {
+        PoseFilter filter = new PoseFilter(parameters[0], parameters[1], parameters[2], parameters[3]);
+        float reanchorDistance = parameters[4];
+        float reanchorAngle = (float) Math.toRadians(parameters[5]);
+
+        float[] filtered = new float[3];
+        float[] anchorTranslation = new float[3];
+        float[] anchorRotation = new float[4];
+        float[][] raw = new float[3][3];
+        float[][] smooth = new float[3][3];
+
+        double rawJitter = 0;
+        double filteredJitter = 0;
+        double lagSum = 0;
+        double maxLag = 0;
+        int anchors = 0;
+
+        for (int i = 0; i < samples.size(); i++) {
+            Sample sample = samples.get(i);
+            float[] translation = sample.translation;
+            filter.filter(sample.timestampNanos, translation, sample.rotation);
+            filter.getTranslation(filtered);
+
+            if (anchors == 0 || filter.hasDrifted(anchorTranslation, anchorRotation, reanchorDistance, reanchorAngle)) {
+                filter.getTranslation(anchorTranslation);
+                filter.getRotation(anchorRotation);
+                anchors++;
+            }
+
+            double lag = distance(translation, filtered);
+            lagSum += lag;
+            maxLag = Math.max(maxLag, lag);
+
+            // Jitter is the second difference of the position: zero for any steady motion.
+            System.arraycopy(raw[1], 0, raw[0], 0, 3);
+            System.arraycopy(raw[2], 0, raw[1], 0, 3);
+            System.arraycopy(translation, 0, raw[2], 0, 3);
+            System.arraycopy(smooth[1], 0, smooth[0], 0, 3);
+            System.arraycopy(smooth[2], 0, smooth[1], 0, 3);
+            System.arraycopy(filtered, 0, smooth[2], 0, 3);
+            if (i >= 2) {
+                rawJitter += secondDifference(raw);
+                filteredJitter += secondDifference(smooth);
+            }
+        }
+
+        int n = Math.max(1, samples.size() - 2);
+        System.out.println(String.format(Locale.ROOT, "%d\t%d\t%.3f\t%.3f\t%.2f\t%.2f\t%d",
+                index, samples.size(), Math.sqrt(rawJitter / n) * 1000, Math.sqrt(filteredJitter / n) * 1000,
+                lagSum / samples.size() * 1000, maxLag * 1000, anchors));
+    }
+
+    private static double secondDifference(float[][] positions) {
+        double sum = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            double d = positions[2][axis] - 2 * positions[1][axis] + positions[0][axis];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    private static double distance(float[] a, float[] b) {
+        double dx = a[0] - b[0];
+        double dy = a[1] - b[1];
+        double dz = a[2] - b[2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /** Reads a trace into samples by image index. */
+    private static Map<Integer, List<Sample>> read(String path) throws IOException {
+        Map<Integer, List<Sample>> traces = new TreeMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || !Character.isDigit(line.charAt(0))) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length != 9) {
+                    continue;
+                }
+                float[] values = new float[7];
+                for (int i = 0; i < 7; i++) {
+                    values[i] = Float.parseFloat(fields[i + 2]);
+                }
+                traces.computeIfAbsent(Integer.parseInt(fields[0]), k -> new ArrayList<>()).add(new Sample(
+                        Long.parseLong(fields[1]),
+                        Arrays.copyOfRange(values, 0, 3),
+                        Arrays.copyOfRange(values, 3, 7)));
+            }
+        }
+        return traces;
+    }
+
+    /** Five seconds at rest, a one second slide of 20 cm with a 30 degree turn, and five more at rest. */
+    private static Map<Integer, List<Sample>> synthetic() {
+        Random random = new Random(7);
+        List<Sample> trace = new ArrayList<>();
+        int frames = 11 * 30;
+        for (int i = 0; i < frames; i++) {
+            float t = i / 30f;
+            float progress = Math.max(0, Math.min(1, t - 5));
+            // Smoothstep, so the hand accelerates and decelerates.
+            progress = progress * progress * (3 - 2 * progress);
+            float angle = (float) Math.toRadians(30 * progress + random.nextGaussian() * 0.5);
+            float[] translation = {
+                    0.2f * progress + (float) random.nextGaussian() * 0.002f,
+                    (float) random.nextGaussian() * 0.002f,
+                    -0.5f + (float) random.nextGaussian() * 0.002f
+            };
+            float[] rotation = {0, (float) Math.sin(angle / 2), 0, (float) Math.cos(angle / 2)};
+            trace.add(new Sample(i * 1_000_000_000L / 30, translation, rotation));
+        }
+        Map<Integer, List<Sample>> traces = new TreeMap<>();
+        traces.put(0, trace);
+        return traces;
+    }
+}
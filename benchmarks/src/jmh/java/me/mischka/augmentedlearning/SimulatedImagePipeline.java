@@ -0,0 +1,200 @@
+package me.mischka.augmentedlearning;
+
+import me.mischka.common.helpers.ViewFrustum;
+import me.mischka.common.motion.PoseFilter;
+
+/**
+ * The anchor, model and node pipeline of the app, with the ARCore anchors and Sceneform nodes
+ * reduced to their state, so that {@link ImageFeedProcessor} can drive it on the JVM.
+ *
+ * <p>Each step follows the class it stands in for: {@code AugmentedImageLifecycleManager} anchors
+ * newly tracked images and follows tracked ones through their {@link PoseFilter}, re-anchoring when
+ * they drift; {@code ModelAdmission} keeps at most {@code maxLiveModels} models through the app's
+ * {@link ModelBudget}, each model costing 1 and taking {@code loadFrames} frames to load; {@code
+ * VisibilityScheduler} suspends, fades and releases nodes through the app's {@link NodeVisibility}.
+ * Nothing is allocated once every image has had a node.
+ */
+public class SimulatedImagePipeline implements ImageFeedProcessor.Listener, NodeVisibility.Nodes {
+    private static final float BOUNDING_RADIUS = 0.1f;
+
+    private final int loadFrames;
+    private final ModelBudget modelBudget;
+    private final NodeVisibility visibility = new NodeVisibility(this);
+
+    private final float[] translation = new float[3];
+    private final float[] rotation = new float[4];
+
+    // By image index. Pose filters outlive the nodes they belong to, to be reused when a released
+    // node is created again.
+    private final PoseFilter[] poseFilters;
+    private final boolean[] hasNode;
+    private final boolean[] anchored;
+    private final float[][] anchorTranslations;
+    private final float[][] anchorRotations;
+    private final int[] loadFramesLeft;
+
+    private int anchorsCreated;
+    private int reanchors;
+    private int modelsLoaded;
+    private int modelsReleased;
+    private int nodesSuspended;
+    private int nodesReleased;
+
+    public SimulatedImagePipeline(int imageCount, int maxLiveModels, int loadFrames) {
+        this.loadFrames = loadFrames;
+        modelBudget = new ModelBudget(maxLiveModels);
+        poseFilters = new PoseFilter[imageCount];
+        hasNode = new boolean[imageCount];
+        anchored = new boolean[imageCount];
+        anchorTranslations = new float[imageCount][3];
+        anchorRotations = new float[imageCount][4];
+        loadFramesLeft = new int[imageCount];
+    }
+
+    @Override
+    public void onImageTracking(TrackableFeed feed, int update) {
+        int index = feed.getIndex(update);
+        long timestampNanos = feed.getTimestampNanos();
+        modelBudget.onSeen(index, timestampNanos);
+        if (!hasNode[index]) {
+            admit(index);
+            if (poseFilters[index] == null) {
+                poseFilters[index] = new PoseFilter();
+            }
+            hasNode[index] = true;
+        } else if (!modelBudget.isAdmitted(index)) {
+            admit(index);
+        }
+        PoseFilter poseFilter = poseFilters[index];
+
+        feed.getCenterPose(update, translation, rotation);
+        if (anchored[index]) {
+            poseFilter.filter(timestampNanos, translation, rotation);
+            if (poseFilter.hasDrifted(anchorTranslations[index], anchorRotations[index],
+                    PoseFilter.DEFAULT_MAX_DRIFT_DISTANCE, PoseFilter.DEFAULT_MAX_DRIFT_ANGLE)) {
+                poseFilter.getTranslation(translation);
+                poseFilter.getRotation(rotation);
+                anchor(index);
+                reanchors++;
+            }
+        } else {
+            poseFilter.reset();
+            poseFilter.filter(timestampNanos, translation, rotation);
+            anchor(index);
+            anchored[index] = true;
+        }
+
+        visibility.onImageUpdated(index, timestampNanos);
+    }
+
+    @Override
+    public void onImageStopped(int index) {
+        anchored[index] = false;
+    }
+
+    /** Loads models and classifies the anchored nodes against the camera, once per frame. */
+    public void update(long now, float[] viewMatrix, float[] projectionMatrix) {
+        for (int index = 0; index < loadFramesLeft.length; index++) {
+            if (loadFramesLeft[index] > 0 && --loadFramesLeft[index] == 0) {
+                modelsLoaded++;
+            }
+        }
+        visibility.update(poseFilters.length, now, viewMatrix, projectionMatrix);
+    }
+
+    @Override
+    public boolean isAnchored(int index) {
+        return anchored[index];
+    }
+
+    @Override
+    public boolean isTracking(int index) {
+        return true;
+    }
+
+    @Override
+    public boolean isInView(int index, ViewFrustum frustum) {
+        float[] position = anchorTranslations[index];
+        return frustum.intersectsSphere(position[0], position[1], position[2], BOUNDING_RADIUS);
+    }
+
+    @Override
+    public void setEnabled(int index, boolean enabled) {
+        if (!enabled) {
+            nodesSuspended++;
+        }
+    }
+
+    @Override
+    public void setFade(int index, float fade) {
+        // Nothing is rendered.
+    }
+
+    @Override
+    public void release(int index) {
+        anchored[index] = false;
+        hasNode[index] = false;
+        releaseModel(index);
+        nodesReleased++;
+    }
+
+    public int getAnchorsCreated() {
+        return anchorsCreated;
+    }
+
+    public int getReanchors() {
+        return reanchors;
+    }
+
+    public int getModelsLoaded() {
+        return modelsLoaded;
+    }
+
+    public int getModelsReleased() {
+        return modelsReleased;
+    }
+
+    public int getNodesSuspended() {
+        return nodesSuspended;
+    }
+
+    public int getNodesReleased() {
+        return nodesReleased;
+    }
+
+    public int getLiveModelCount() {
+        return modelBudget.getLiveCount();
+    }
+
+    /** Returns the number of nodes that are anchored and not suspended or stale. */
+    public int getVisibleNodeCount() {
+        int count = 0;
+        for (int i = 0; i < anchored.length; i++) {
+            if (anchored[i] && visibility.isVisible(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void anchor(int index) {
+        System.arraycopy(translation, 0, anchorTranslations[index], 0, 3);
+        System.arraycopy(rotation, 0, anchorRotations[index], 0, 4);
+        anchorsCreated++;
+    }
+
+    private void admit(int index) {
+        int victim;
+        while ((victim = modelBudget.findVictim(index, 1)) >= 0) {
+            releaseModel(victim);
+            modelsReleased++;
+        }
+        modelBudget.admit(index, 1);
+        loadFramesLeft[index] = loadFrames;
+    }
+
+    private void releaseModel(int index) {
+        modelBudget.release(index);
+        loadFramesLeft[index] = 0;
+    }
+}
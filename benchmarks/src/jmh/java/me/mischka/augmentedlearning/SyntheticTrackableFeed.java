@@ -0,0 +1,316 @@
+package me.mischka.augmentedlearning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A {@link TrackableFeed} of made-up images, played a frame at a time with {@link #advance}, so the
+ * frame loop can run on the JVM with as many images as wanted.
+ *
+ * <p>The images are cards on a wall, {@link #COLUMNS} to a row, {@link #SPACING} meters apart and
+ * {@link #WALL_DISTANCE} meters in front of the camera. A randomized feed pans the camera along the
+ * wall, a card every {@code framesPerCard} frames, and updates the cards in view every frame: a card
+ * coming into view is detected, PAUSED, then tracked, with a couple of millimeters of noise on its
+ * pose. Now and then a tracked card is moved by hand, or its tracking is lost or stopped. Cards out
+ * of view are not updated, as with ARCore 1.5.
+ *
+ * <p>A scripted feed plays lines of {@code frame,index,state[,tx,ty,tz[,qx,qy,qz,qw]]}, frames
+ * counting from 0 in increasing order; images without a pose are at their place on the wall. Lines
+ * that are empty or start with {@code #} are skipped.
+ *
+ * <p>Updates are written into preallocated arrays, so playing a feed allocates nothing.
+ */
+public class SyntheticTrackableFeed implements TrackableFeed {
+    public static final long FRAME_NANOS = 1_000_000_000L / 30;
+    public static final int COLUMNS = 20;
+    public static final float SPACING = 0.25f;
+    public static final float WALL_DISTANCE = 1.5f;
+
+    private static final float NOISE = 0.002f;
+    private static final float MOVE = 0.05f;
+    // Per tracked card per frame.
+    private static final float MOVE_RATE = 0.002f;
+    private static final float PAUSE_RATE = 0.001f;
+    private static final float STOP_RATE = 0.0002f;
+
+    private final int imageCount;
+    private final String[] names;
+    // By image index: how far it was moved by hand, and its state, null until detected.
+    private final float[] offsets;
+    private final State[] states;
+
+    private final int inViewCount;
+    private final int framesPerCard;
+    private final Random random;
+
+    // Scripted feeds: the updates of every frame, one after the other.
+    private final int[] scriptFrames;
+    private final int[] scriptIndices;
+    private final State[] scriptStates;
+    private final float[][] scriptPoses;
+    private int scriptPosition;
+
+    private long frame = -1;
+    private int updateCount;
+    private int[] updateIndices;
+    private State[] updateStates;
+    private float[] updatePoses;
+
+    /**
+     * A randomized feed of {@code imageCount} cards, {@code inViewCount} of them in view at a time,
+     * panning a card every {@code framesPerCard} frames.
+     */
+    public SyntheticTrackableFeed(int imageCount, int inViewCount, int framesPerCard, long seed) {
+        this(imageCount, inViewCount, framesPerCard, new Random(seed), null, null, null, null);
+    }
+
+    private SyntheticTrackableFeed(int imageCount, int inViewCount, int framesPerCard, Random random,
+                                   int[] scriptFrames, int[] scriptIndices, State[] scriptStates,
+                                   float[][] scriptPoses) {
+        this.imageCount = imageCount;
+        this.inViewCount = Math.min(inViewCount, imageCount);
+        this.framesPerCard = Math.max(1, framesPerCard);
+        this.random = random;
+        this.scriptFrames = scriptFrames;
+        this.scriptIndices = scriptIndices;
+        this.scriptStates = scriptStates;
+        this.scriptPoses = scriptPoses;
+
+        names = new String[imageCount];
+        for (int i = 0; i < imageCount; i++) {
+            names[i] = String.format(Locale.ROOT, "card%04d", i);
+        }
+        offsets = new float[imageCount];
+        states = new State[imageCount];
+        updateIndices = new int[imageCount];
+        updateStates = new State[imageCount];
+        updatePoses = new float[imageCount * 7];
+    }
+
+    /** Reads a scripted feed from the file at {@code path}. */
+    public static SyntheticTrackableFeed read(String path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return script(lines);
+        }
+    }
+
+    /** Returns a scripted feed of {@code lines}. */
+    public static SyntheticTrackableFeed script(List<String> lines) {
+        List<String[]> records = new ArrayList<>();
+        int imageCount = 0;
+        int lastFrame = 0;
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length != 3 && fields.length != 6 && fields.length != 10) {
+                throw new IllegalArgumentException("Expected frame,index,state[,tx,ty,tz[,qx,qy,qz,qw]]: " + line);
+            }
+            int frame = Integer.parseInt(fields[0].trim());
+            if (frame < lastFrame) {
+                throw new IllegalArgumentException("Frames out of order: " + line);
+            }
+            lastFrame = frame;
+            imageCount = Math.max(imageCount, Integer.parseInt(fields[1].trim()) + 1);
+            records.add(fields);
+        }
+
+        int[] frames = new int[records.size()];
+        int[] indices = new int[records.size()];
+        State[] states = new State[records.size()];
+        float[][] poses = new float[records.size()][];
+        for (int i = 0; i < records.size(); i++) {
+            String[] fields = records.get(i);
+            frames[i] = Integer.parseInt(fields[0].trim());
+            indices[i] = Integer.parseInt(fields[1].trim());
+            states[i] = State.valueOf(fields[2].trim().toUpperCase(Locale.ROOT));
+            if (fields.length > 3) {
+                float[] pose = {0, 0, 0, 0, 0, 0, 1};
+                for (int j = 3; j < fields.length; j++) {
+                    pose[j - 3] = Float.parseFloat(fields[j].trim());
+                }
+                poses[i] = pose;
+            }
+        }
+        return new SyntheticTrackableFeed(imageCount, 0, 1, null, frames, indices, states, poses);
+    }
+
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    /** The number of the current frame, from 0. */
+    public long getFrame() {
+        return frame;
+    }
+
+    /** Moves on to the next frame, returning false once a scripted feed is over. */
+    public boolean advance() {
+        frame++;
+        updateCount = 0;
+        if (scriptFrames != null) {
+            return playScript();
+        }
+
+        int first = getFirstInView();
+        for (int n = 0; n < inViewCount; n++) {
+            int index = (first + n) % imageCount;
+            State state = states[index];
+            if (state == null || state == State.STOPPED) {
+                state = State.PAUSED;
+            } else if (state == State.PAUSED) {
+                state = State.TRACKING;
+            } else {
+                float event = random.nextFloat();
+                if (event < STOP_RATE) {
+                    state = State.STOPPED;
+                } else if (event < STOP_RATE + PAUSE_RATE) {
+                    state = State.PAUSED;
+                } else if (event < STOP_RATE + PAUSE_RATE + MOVE_RATE) {
+                    offsets[index] += MOVE;
+                }
+            }
+            states[index] = state;
+
+            int pose = updateCount * 7;
+            updatePoses[pose] = getX(index) + offsets[index] + noise();
+            updatePoses[pose + 1] = getY(index) + noise();
+            updatePoses[pose + 2] = -WALL_DISTANCE + noise();
+            updatePoses[pose + 3] = 0;
+            updatePoses[pose + 4] = 0;
+            updatePoses[pose + 5] = 0;
+            updatePoses[pose + 6] = 1;
+            addUpdate(index, state);
+        }
+        return true;
+    }
+
+    private boolean playScript() {
+        if (scriptPosition == scriptFrames.length) {
+            return false;
+        }
+        while (scriptPosition < scriptFrames.length && scriptFrames[scriptPosition] == frame) {
+            int index = scriptIndices[scriptPosition];
+            if (updateCount == updateIndices.length) {
+                updateIndices = Arrays.copyOf(updateIndices, updateCount * 2);
+                updateStates = Arrays.copyOf(updateStates, updateCount * 2);
+                updatePoses = Arrays.copyOf(updatePoses, updateCount * 2 * 7);
+            }
+            int pose = updateCount * 7;
+            float[] scripted = scriptPoses[scriptPosition];
+            if (scripted != null) {
+                System.arraycopy(scripted, 0, updatePoses, pose, 7);
+            } else {
+                updatePoses[pose] = getX(index);
+                updatePoses[pose + 1] = getY(index);
+                updatePoses[pose + 2] = -WALL_DISTANCE;
+                updatePoses[pose + 3] = 0;
+                updatePoses[pose + 4] = 0;
+                updatePoses[pose + 5] = 0;
+                updatePoses[pose + 6] = 1;
+            }
+            addUpdate(index, scriptStates[scriptPosition]);
+            scriptPosition++;
+        }
+        return true;
+    }
+
+    private void addUpdate(int index, State state) {
+        updateIndices[updateCount] = index;
+        updateStates[updateCount] = state;
+        updateCount++;
+    }
+
+    /**
+     * Copies the camera's column-major view matrix into {@code out}: looking straight at the wall,
+     * centered on the cards in view.
+     */
+    public void getViewMatrix(float[] out) {
+        int center = imageCount == 0 ? 0 : (getFirstInView() + inViewCount / 2) % imageCount;
+        Arrays.fill(out, 0);
+        out[0] = 1;
+        out[5] = 1;
+        out[10] = 1;
+        out[15] = 1;
+        out[12] = -getX(center);
+        out[13] = -getY(center);
+    }
+
+    /**
+     * Copies a column-major, 60 degree, portrait projection matrix between {@code near} and {@code
+     * far} into {@code out}.
+     */
+    public static void getProjectionMatrix(float[] out, float near, float far) {
+        float focal = (float) (1 / Math.tan(Math.toRadians(30)));
+        float aspect = 9f / 16;
+        Arrays.fill(out, 0);
+        out[0] = focal / aspect;
+        out[5] = focal;
+        out[10] = -(far + near) / (far - near);
+        out[11] = -1;
+        out[14] = -2 * far * near / (far - near);
+    }
+
+    private int getFirstInView() {
+        return imageCount == 0 ? 0 : (int) ((frame / framesPerCard) % imageCount);
+    }
+
+    private static float getX(int index) {
+        return (index % COLUMNS) * SPACING;
+    }
+
+    private static float getY(int index) {
+        return (index / COLUMNS) * SPACING;
+    }
+
+    private float noise() {
+        return (float) random.nextGaussian() * NOISE;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return frame * FRAME_NANOS;
+    }
+
+    @Override
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    @Override
+    public int getIndex(int update) {
+        return updateIndices[update];
+    }
+
+    @Override
+    public String getName(int update) {
+        int index = updateIndices[update];
+        return index < names.length ? names[index] : "card" + index;
+    }
+
+    @Override
+    public State getState(int update) {
+        return updateStates[update];
+    }
+
+    @Override
+    public void getCenterPose(int update, float[] translation, float[] rotation) {
+        System.arraycopy(updatePoses, update * 7, translation, 0, 3);
+        System.arraycopy(updatePoses, update * 7 + 3, rotation, 0, 4);
+    }
+}
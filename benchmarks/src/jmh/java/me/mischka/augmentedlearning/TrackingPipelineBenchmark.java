@@ -0,0 +1,69 @@
+package me.mischka.augmentedlearning;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks one frame of the image pipeline, from the updated images to the anchored nodes, with
+ * different numbers of images, all of them or a tenth in view. Images are played by a randomized
+ * {@link SyntheticTrackableFeed} through the app's {@link ImageFeedProcessor} into a {@link
+ * SimulatedImagePipeline}.
+ *
+ * <p>Before measuring, the camera pans past every image once, so that every image has had a node
+ * and some have gone stale and been released, as after a long session.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrackingPipelineBenchmark {
+    // A card every third of a second.
+    private static final int FRAMES_PER_CARD = 10;
+    // About as many of the bundled models as DeviceTier.MID admits, and a load of 200ms each.
+    private static final int MAX_LIVE_MODELS = 24;
+    private static final int LOAD_FRAMES = 6;
+
+    private static final float NEAR_PLANE = 0.1f;
+    private static final float FAR_PLANE = 100f;
+
+    @Param({"10", "100", "500"})
+    public int imageCount;
+
+    @Param({"10", "100"})
+    public int inViewPercent;
+
+    private SyntheticTrackableFeed feed;
+    private ImageFeedProcessor processor;
+    private SimulatedImagePipeline pipeline;
+    private final float[] viewMatrix = new float[16];
+    private final float[] projectionMatrix = new float[16];
+
+    @Setup
+    public void setUp() {
+        int inViewCount = Math.max(1, imageCount * inViewPercent / 100);
+        feed = new SyntheticTrackableFeed(imageCount, inViewCount, FRAMES_PER_CARD, 42);
+        pipeline = new SimulatedImagePipeline(imageCount, MAX_LIVE_MODELS, LOAD_FRAMES);
+        processor = new ImageFeedProcessor(pipeline);
+        SyntheticTrackableFeed.getProjectionMatrix(projectionMatrix, NEAR_PLANE, FAR_PLANE);
+        for (int i = 0; i < imageCount * FRAMES_PER_CARD; i++) {
+            frame();
+        }
+    }
+
+    /** Plays the next frame of the feed through the pipeline. */
+    @Benchmark
+    public int frame() {
+        feed.advance();
+        processor.process(feed);
+        feed.getViewMatrix(viewMatrix);
+        pipeline.update(feed.getTimestampNanos(), viewMatrix, projectionMatrix);
+        return processor.getTrackingCount() + pipeline.getAnchorsCreated();
+    }
+}
@@ -0,0 +1,68 @@
+package me.mischka.augmentedlearning;
+
+import me.mischka.common.metrics.Histogram;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Plays a {@link SyntheticTrackableFeed} through {@link ImageFeedProcessor} and a {@link
+ * SimulatedImagePipeline}, and reports the time per frame and what the pipeline did.
+ *
+ * <p>Arguments: either a script, see {@link SyntheticTrackableFeed}, or {@code [imageCount
+ * [inViewCount [frames [maxLiveModels [loadFrames]]]]]} for a randomized feed, by default 200 images,
+ * 20 in view, for 10 minutes at 30 frames per second.
+ */
+public class TrackingSimulation {
+    private static final int FRAMES_PER_CARD = 10;
+    private static final float NEAR_PLANE = 0.1f;
+    private static final float FAR_PLANE = 100f;
+
+    public static void main(String[] args) throws IOException {
+        SyntheticTrackableFeed feed;
+        long frames;
+        int maxLiveModels = 24;
+        int loadFrames = 6;
+        if (args.length == 1 && !args[0].matches("\\d+")) {
+            feed = SyntheticTrackableFeed.read(args[0]);
+            frames = Long.MAX_VALUE;
+        } else {
+            int imageCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+            int inViewCount = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+            frames = args.length > 2 ? Long.parseLong(args[2]) : 10 * 60 * 30;
+            maxLiveModels = args.length > 3 ? Integer.parseInt(args[3]) : maxLiveModels;
+            loadFrames = args.length > 4 ? Integer.parseInt(args[4]) : loadFrames;
+            feed = new SyntheticTrackableFeed(imageCount, inViewCount, FRAMES_PER_CARD, 7);
+        }
+
+        SimulatedImagePipeline pipeline = new SimulatedImagePipeline(feed.getImageCount(), maxLiveModels, loadFrames);
+        ImageFeedProcessor processor = new ImageFeedProcessor(pipeline);
+        float[] viewMatrix = new float[16];
+        float[] projectionMatrix = new float[16];
+        SyntheticTrackableFeed.getProjectionMatrix(projectionMatrix, NEAR_PLANE, FAR_PLANE);
+
+        Histogram frameNanos = new Histogram();
+        long updates = 0;
+        while (feed.getFrame() + 1 < frames && feed.advance()) {
+            long start = System.nanoTime();
+            processor.process(feed);
+            feed.getViewMatrix(viewMatrix);
+            pipeline.update(feed.getTimestampNanos(), viewMatrix, projectionMatrix);
+            frameNanos.record(System.nanoTime() - start);
+            updates += feed.getUpdateCount();
+        }
+
+        System.out.println(String.format(Locale.ROOT,
+                "images=%d frames=%d updates=%d tracking=%d visible=%d liveModels=%d",
+                feed.getImageCount(), frameNanos.getCount(), updates, processor.getTrackingCount(),
+                pipeline.getVisibleNodeCount(), pipeline.getLiveModelCount()));
+        System.out.println(String.format(Locale.ROOT,
+                "anchors=%d reanchors=%d modelsLoaded=%d modelsReleased=%d nodesSuspended=%d nodesReleased=%d",
+                pipeline.getAnchorsCreated(), pipeline.getReanchors(), pipeline.getModelsLoaded(),
+                pipeline.getModelsReleased(), pipeline.getNodesSuspended(), pipeline.getNodesReleased()));
+        System.out.println(String.format(Locale.ROOT,
+                "frame us: mean=%.1f p50=%.1f p99=%.1f max=%.1f",
+                frameNanos.getMean() / 1000.0, frameNanos.getPercentile(50) / 1000.0,
+                frameNanos.getPercentile(99) / 1000.0, frameNanos.getMax() / 1000.0));
+    }
+}
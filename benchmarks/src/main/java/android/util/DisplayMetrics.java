@@ -0,0 +1,7 @@
+package android.util;
+
+/** JVM stand-in for the display metrics used by the gesture stack. */
+public class DisplayMetrics {
+    public float xdpi = 420;
+    public float ydpi = 420;
+}
@@ -0,0 +1,131 @@
+package android.view;
+
+/**
+ * JVM stand-in for {@code MotionEvent}, covering the accessors the gesture stack reads. Unlike the
+ * real class it is mutable, so benchmarks can replay a synthetic pointer stream without
+ * allocating, and its {@link #addBatch} takes plain coordinates rather than {@code PointerCoords}.
+ */
+public final class MotionEvent {
+    public static final int ACTION_MASK = 0xff;
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MOVE = 2;
+    public static final int ACTION_CANCEL = 3;
+    public static final int ACTION_POINTER_DOWN = 5;
+    public static final int ACTION_POINTER_UP = 6;
+    public static final int ACTION_POINTER_INDEX_SHIFT = 8;
+
+    private static final int MAX_POINTERS = 10;
+    private static final int MAX_HISTORY = 16;
+
+    private int action;
+    private int actionIndex;
+    private long eventTime;
+    private int pointerCount;
+    private final int[] pointerIds = new int[MAX_POINTERS];
+    private final float[] xs = new float[MAX_POINTERS];
+    private final float[] ys = new float[MAX_POINTERS];
+    private int historySize;
+    private final long[] historicalEventTimes = new long[MAX_HISTORY];
+    private final float[][] historicalXs = new float[MAX_HISTORY][MAX_POINTERS];
+    private final float[][] historicalYs = new float[MAX_HISTORY][MAX_POINTERS];
+
+    /** Creates an event with one pointer per coordinate. Pointer ids are the same as their indices. */
+    public static MotionEvent create(int action, int actionIndex, long eventTime, float[] xs, float[] ys) {
+        MotionEvent event = new MotionEvent();
+        event.set(action, actionIndex, eventTime, xs, ys);
+        return event;
+    }
+
+    public void set(int action, int actionIndex, long eventTime, float[] xs, float[] ys) {
+        this.action = action;
+        this.actionIndex = actionIndex;
+        this.eventTime = eventTime;
+        historySize = 0;
+        pointerCount = xs.length;
+        for (int i = 0; i < pointerCount; i++) {
+            pointerIds[i] = i;
+            this.xs[i] = xs[i];
+            this.ys[i] = ys[i];
+        }
+    }
+
+    /**
+     * Moves the current sample into the history and makes {@code xs} and {@code ys}, for the same
+     * pointers, the current one.
+     */
+    public void addBatch(long eventTime, float[] xs, float[] ys) {
+        historicalEventTimes[historySize] = this.eventTime;
+        System.arraycopy(this.xs, 0, historicalXs[historySize], 0, pointerCount);
+        System.arraycopy(this.ys, 0, historicalYs[historySize], 0, pointerCount);
+        historySize++;
+        this.eventTime = eventTime;
+        System.arraycopy(xs, 0, this.xs, 0, pointerCount);
+        System.arraycopy(ys, 0, this.ys, 0, pointerCount);
+    }
+
+    public int getAction() {
+        return action | (actionIndex << ACTION_POINTER_INDEX_SHIFT);
+    }
+
+    public int getActionMasked() {
+        return action;
+    }
+
+    public int getActionIndex() {
+        return actionIndex;
+    }
+
+    public long getEventTime() {
+        return eventTime;
+    }
+
+    public int getPointerCount() {
+        return pointerCount;
+    }
+
+    public int getPointerId(int pointerIndex) {
+        return pointerIds[pointerIndex];
+    }
+
+    public int findPointerIndex(int pointerId) {
+        for (int i = 0; i < pointerCount; i++) {
+            if (pointerIds[i] == pointerId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public float getX() {
+        return xs[0];
+    }
+
+    public float getY() {
+        return ys[0];
+    }
+
+    public float getX(int pointerIndex) {
+        return xs[pointerIndex];
+    }
+
+    public float getY(int pointerIndex) {
+        return ys[pointerIndex];
+    }
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    public long getHistoricalEventTime(int pos) {
+        return historicalEventTimes[pos];
+    }
+
+    public float getHistoricalX(int pointerIndex, int pos) {
+        return historicalXs[pos][pointerIndex];
+    }
+
+    public float getHistoricalY(int pointerIndex, int pos) {
+        return historicalYs[pos][pointerIndex];
+    }
+}
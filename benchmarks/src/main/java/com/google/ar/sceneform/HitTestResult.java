@@ -0,0 +1,5 @@
+package com.google.ar.sceneform;
+
+/** JVM stand-in for a Sceneform hit test result. The gesture stack only passes it along. */
+public class HitTestResult {
+}
@@ -0,0 +1,105 @@
+package com.google.ar.sceneform.math;
+
+/**
+ * JVM stand-in for the Sceneform quaternion, with the same allocation behavior as the operations
+ * the gesture stack uses.
+ */
+public class Quaternion {
+    public float x;
+    public float y;
+    public float z;
+    public float w = 1;
+
+    public Quaternion() {
+    }
+
+    public Quaternion(float x, float y, float z, float w) {
+        set(x, y, z, w);
+        normalize();
+    }
+
+    public Quaternion(Quaternion q) {
+        set(q.x, q.y, q.z, q.w);
+    }
+
+    /** Creates a rotation of {@code angle} degrees about {@code axis}. */
+    public Quaternion(Vector3 axis, float angle) {
+        setFromAxisAngle(axis, angle);
+    }
+
+    public void set(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+    }
+
+    public void set(Quaternion q) {
+        set(q.x, q.y, q.z, q.w);
+    }
+
+    public void setFromAxisAngle(Vector3 axis, float angle) {
+        Vector3 normalizedAxis = axis.normalized();
+        float halfAngle = (float) Math.toRadians(angle) * 0.5f;
+        float sin = (float) Math.sin(halfAngle);
+        set(normalizedAxis.x * sin, normalizedAxis.y * sin, normalizedAxis.z * sin, (float) Math.cos(halfAngle));
+    }
+
+    public boolean normalize() {
+        float lengthSquared = x * x + y * y + z * z + w * w;
+        if (Vector3.almostEqual(lengthSquared, 0)) {
+            set(0, 0, 0, 1);
+            return false;
+        }
+        if (!Vector3.almostEqual(lengthSquared, 1)) {
+            float inverse = 1 / (float) Math.sqrt(lengthSquared);
+            set(x * inverse, y * inverse, z * inverse, w * inverse);
+        }
+        return true;
+    }
+
+    public Quaternion normalized() {
+        Quaternion result = new Quaternion(this);
+        result.normalize();
+        return result;
+    }
+
+    public Quaternion inverted() {
+        return new Quaternion(-x, -y, -z, w);
+    }
+
+    public Vector3 rotateVector(Vector3 src) {
+        // v' = v + 2w(q x v) + 2(q x (q x v))
+        float cx = y * src.z - z * src.y;
+        float cy = z * src.x - x * src.z;
+        float cz = x * src.y - y * src.x;
+        float ccx = y * cz - z * cy;
+        float ccy = z * cx - x * cz;
+        float ccz = x * cy - y * cx;
+        return new Vector3(
+                src.x + 2 * (w * cx + ccx),
+                src.y + 2 * (w * cy + ccy),
+                src.z + 2 * (w * cz + ccz));
+    }
+
+    public Vector3 inverseRotateVector(Vector3 src) {
+        return inverted().rotateVector(src);
+    }
+
+    public static Quaternion multiply(Quaternion lhs, Quaternion rhs) {
+        return new Quaternion(
+                lhs.w * rhs.x + lhs.x * rhs.w + lhs.y * rhs.z - lhs.z * rhs.y,
+                lhs.w * rhs.y - lhs.x * rhs.z + lhs.y * rhs.w + lhs.z * rhs.x,
+                lhs.w * rhs.z + lhs.x * rhs.y - lhs.y * rhs.x + lhs.z * rhs.w,
+                lhs.w * rhs.w - lhs.x * rhs.x - lhs.y * rhs.y - lhs.z * rhs.z);
+    }
+
+    public static Quaternion identity() {
+        return new Quaternion();
+    }
+
+    @Override
+    public String toString() {
+        return "[x=" + x + ", y=" + y + ", z=" + z + ", w=" + w + "]";
+    }
+}
@@ -0,0 +1,135 @@
+package com.google.ar.sceneform.math;
+
+/**
+ * JVM stand-in for the Sceneform vector, with the same allocation behavior: the static operations
+ * and {@link #scaled}, {@link #normalized} and {@link #negated} return new vectors.
+ */
+public class Vector3 {
+    private static final float EPSILON = 1e-5f;
+
+    public float x;
+    public float y;
+    public float z;
+
+    public Vector3() {
+    }
+
+    public Vector3(float x, float y, float z) {
+        set(x, y, z);
+    }
+
+    public Vector3(Vector3 v) {
+        set(v);
+    }
+
+    public void set(Vector3 v) {
+        set(v.x, v.y, v.z);
+    }
+
+    public void set(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public float lengthSquared() {
+        return x * x + y * y + z * z;
+    }
+
+    public float length() {
+        return (float) Math.sqrt(lengthSquared());
+    }
+
+    public Vector3 scaled(float a) {
+        return new Vector3(x * a, y * a, z * a);
+    }
+
+    public Vector3 negated() {
+        return new Vector3(-x, -y, -z);
+    }
+
+    public Vector3 normalized() {
+        Vector3 result = new Vector3(this);
+        float lengthSquared = lengthSquared();
+        if (!almostEqual(lengthSquared, 0) && !almostEqual(lengthSquared, 1)) {
+            float inverse = 1 / (float) Math.sqrt(lengthSquared);
+            result.set(x * inverse, y * inverse, z * inverse);
+        }
+        return result;
+    }
+
+    public static Vector3 add(Vector3 lhs, Vector3 rhs) {
+        return new Vector3(lhs.x + rhs.x, lhs.y + rhs.y, lhs.z + rhs.z);
+    }
+
+    public static Vector3 subtract(Vector3 lhs, Vector3 rhs) {
+        return new Vector3(lhs.x - rhs.x, lhs.y - rhs.y, lhs.z - rhs.z);
+    }
+
+    public static float dot(Vector3 lhs, Vector3 rhs) {
+        return lhs.x * rhs.x + lhs.y * rhs.y + lhs.z * rhs.z;
+    }
+
+    public static Vector3 cross(Vector3 lhs, Vector3 rhs) {
+        return new Vector3(
+                lhs.y * rhs.z - lhs.z * rhs.y,
+                lhs.z * rhs.x - lhs.x * rhs.z,
+                lhs.x * rhs.y - lhs.y * rhs.x);
+    }
+
+    /** Returns the angle between two vectors in degrees. */
+    public static float angleBetweenVectors(Vector3 a, Vector3 b) {
+        float combinedLength = a.length() * b.length();
+        if (almostEqual(combinedLength, 0)) {
+            return 0;
+        }
+        float cos = Math.max(-1, Math.min(1, dot(a, b) / combinedLength));
+        return (float) Math.toDegrees(Math.acos(cos));
+    }
+
+    public static boolean equals(Vector3 lhs, Vector3 rhs) {
+        return almostEqual(lhs.x, rhs.x) && almostEqual(lhs.y, rhs.y) && almostEqual(lhs.z, rhs.z);
+    }
+
+    public static Vector3 zero() {
+        return new Vector3();
+    }
+
+    public static Vector3 one() {
+        return new Vector3(1, 1, 1);
+    }
+
+    public static Vector3 forward() {
+        return new Vector3(0, 0, -1);
+    }
+
+    public static Vector3 back() {
+        return new Vector3(0, 0, 1);
+    }
+
+    public static Vector3 up() {
+        return new Vector3(0, 1, 0);
+    }
+
+    public static Vector3 down() {
+        return new Vector3(0, -1, 0);
+    }
+
+    public static Vector3 right() {
+        return new Vector3(1, 0, 0);
+    }
+
+    public static Vector3 left() {
+        return new Vector3(-1, 0, 0);
+    }
+
+    static boolean almostEqual(float a, float b) {
+        float difference = Math.abs(a - b);
+        return difference <= EPSILON || difference <= Math.max(Math.abs(a), Math.abs(b)) * EPSILON;
+    }
+
+    @Override
+    public String toString() {
+        return "[x=" + x + ", y=" + y + ", z=" + z + "]";
+    }
+}
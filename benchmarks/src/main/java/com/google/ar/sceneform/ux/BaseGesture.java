@@ -0,0 +1,107 @@
+package com.google.ar.sceneform.ux;
+
+import android.view.MotionEvent;
+
+import com.google.ar.sceneform.HitTestResult;
+
+/** JVM stand-in for the Sceneform UX gesture base class, with the same start/update/finish cycle. */
+public abstract class BaseGesture<T extends BaseGesture<T>> {
+    /** Interface definition for callbacks to be invoked by a gesture. */
+    public interface OnGestureEventListener<T extends BaseGesture<T>> {
+        void onUpdated(T gesture);
+
+        void onFinished(T gesture);
+    }
+
+    protected final GesturePointersUtility gesturePointersUtility;
+
+    private boolean hasStarted;
+    private boolean justStarted;
+    private boolean hasFinished;
+    private boolean wasCancelled;
+    private OnGestureEventListener<T> eventListener;
+
+    public BaseGesture(GesturePointersUtility gesturePointersUtility) {
+        this.gesturePointersUtility = gesturePointersUtility;
+    }
+
+    public boolean hasStarted() {
+        return hasStarted;
+    }
+
+    public boolean justStarted() {
+        return justStarted;
+    }
+
+    public boolean hasFinished() {
+        return hasFinished;
+    }
+
+    public boolean wasCancelled() {
+        return wasCancelled;
+    }
+
+    public float inchesToPixels(float inches) {
+        return gesturePointersUtility.inchesToPixels(inches);
+    }
+
+    public float pixelsToInches(float pixels) {
+        return gesturePointersUtility.pixelsToInches(pixels);
+    }
+
+    public void setGestureEventListener(OnGestureEventListener<T> listener) {
+        eventListener = listener;
+    }
+
+    public void onTouch(HitTestResult hitTestResult, MotionEvent motionEvent) {
+        if (!hasStarted && canStart(hitTestResult, motionEvent)) {
+            start(hitTestResult, motionEvent);
+            return;
+        }
+        justStarted = false;
+        if (hasStarted && updateGesture(hitTestResult, motionEvent)) {
+            dispatchUpdateEvent();
+        }
+    }
+
+    protected abstract boolean canStart(HitTestResult hitTestResult, MotionEvent motionEvent);
+
+    protected abstract void onStart(HitTestResult hitTestResult, MotionEvent motionEvent);
+
+    protected abstract boolean updateGesture(HitTestResult hitTestResult, MotionEvent motionEvent);
+
+    protected abstract void onCancel();
+
+    protected abstract void onFinish();
+
+    protected void cancel() {
+        wasCancelled = true;
+        onCancel();
+        complete();
+    }
+
+    protected void complete() {
+        hasFinished = true;
+        if (hasStarted) {
+            onFinish();
+            if (eventListener != null) {
+                eventListener.onFinished(getSelf());
+            }
+        }
+    }
+
+    protected abstract T getSelf();
+
+    private void start(HitTestResult hitTestResult, MotionEvent motionEvent) {
+        hasStarted = true;
+        justStarted = true;
+        onStart(hitTestResult, motionEvent);
+        dispatchUpdateEvent();
+    }
+
+    private void dispatchUpdateEvent() {
+        if (eventListener != null) {
+            eventListener.onUpdated(getSelf());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.google.ar.sceneform.ux;
+
+import android.view.MotionEvent;
+
+import com.google.ar.sceneform.HitTestResult;
+
+import java.util.ArrayList;
+
+/** JVM stand-in for the Sceneform UX gesture recognizer base class. */
+public abstract class BaseGestureRecognizer<T extends BaseGesture<T>> {
+    /** Interface definition for callbacks to be invoked when a gesture starts. */
+    public interface OnGestureStartedListener<T extends BaseGesture<T>> {
+        void onGestureStarted(T gesture);
+    }
+
+    protected final GesturePointersUtility gesturePointersUtility;
+    protected final ArrayList<T> gestures = new ArrayList<>();
+    private final ArrayList<OnGestureStartedListener<T>> gestureStartedListeners = new ArrayList<>();
+
+    public BaseGestureRecognizer(GesturePointersUtility gesturePointersUtility) {
+        this.gesturePointersUtility = gesturePointersUtility;
+    }
+
+    public void addOnGestureStartedListener(OnGestureStartedListener<T> listener) {
+        if (!gestureStartedListeners.contains(listener)) {
+            gestureStartedListeners.add(listener);
+        }
+    }
+
+    public void removeOnGestureStartedListener(OnGestureStartedListener<T> listener) {
+        gestureStartedListeners.remove(listener);
+    }
+
+    public void onTouch(HitTestResult hitTestResult, MotionEvent motionEvent) {
+        tryCreateGestures(hitTestResult, motionEvent);
+
+        for (int i = 0; i < gestures.size(); i++) {
+            T gesture = gestures.get(i);
+            gesture.onTouch(hitTestResult, motionEvent);
+            if (gesture.justStarted()) {
+                for (int j = 0; j < gestureStartedListeners.size(); j++) {
+                    gestureStartedListeners.get(j).onGestureStarted(gesture);
+                }
+            }
+        }
+
+        for (int i = gestures.size() - 1; i >= 0; i--) {
+            T gesture = gestures.get(i);
+            if (gesture.hasFinished()) {
+                gestures.remove(i);
+                gesture.setGestureEventListener(null);
+            }
+        }
+    }
+
+    protected abstract void tryCreateGestures(HitTestResult hitTestResult, MotionEvent motionEvent);
+}
@@ -0,0 +1,43 @@
+package com.google.ar.sceneform.ux;
+
+import android.util.DisplayMetrics;
+import android.view.MotionEvent;
+
+import com.google.ar.sceneform.math.Vector3;
+
+import java.util.HashSet;
+
+/** JVM stand-in for the Sceneform UX pointer bookkeeping shared by gestures. */
+public class GesturePointersUtility {
+    private final DisplayMetrics displayMetrics;
+    private final HashSet<Integer> retainedPointerIds = new HashSet<>();
+
+    public GesturePointersUtility(DisplayMetrics displayMetrics) {
+        this.displayMetrics = displayMetrics;
+    }
+
+    public void retainPointerId(int pointerId) {
+        retainedPointerIds.add(pointerId);
+    }
+
+    public void releasePointerId(int pointerId) {
+        retainedPointerIds.remove(pointerId);
+    }
+
+    public boolean isPointerIdRetained(int pointerId) {
+        return retainedPointerIds.contains(pointerId);
+    }
+
+    public float inchesToPixels(float inches) {
+        return inches * displayMetrics.xdpi;
+    }
+
+    public float pixelsToInches(float pixels) {
+        return pixels / displayMetrics.xdpi;
+    }
+
+    public static Vector3 motionEventToPosition(MotionEvent me, int pointerId) {
+        int index = me.findPointerIndex(pointerId);
+        return new Vector3(me.getX(index), me.getY(index), 0);
+    }
+}
@@ -0,0 +1,98 @@
+package me.mischka.augmentedlearning;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModelBudgetTest {
+    @Test
+    public void admitsWithoutVictimWhileTheModelFits() {
+        ModelBudget budget = new ModelBudget(3);
+        budget.onSeen(0, 1);
+        assertEquals(-1, budget.findVictim(0, 2));
+        budget.admit(0, 2);
+        budget.onSeen(1, 1);
+        assertEquals(-1, budget.findVictim(1, 1));
+        budget.admit(1, 1);
+
+        assertEquals(3, budget.getUsed());
+        assertEquals(2, budget.getLiveCount());
+        assertTrue(budget.isAdmitted(0));
+        assertTrue(budget.isAdmitted(1));
+    }
+
+    @Test
+    public void evictsLeastRecentlySeenFirst() {
+        ModelBudget budget = new ModelBudget(3);
+        seenAndAdmitted(budget, 2, 10);
+        seenAndAdmitted(budget, 0, 20);
+        seenAndAdmitted(budget, 1, 30);
+
+        budget.onSeen(3, 40);
+        assertEquals(2, budget.findVictim(3, 1));
+        budget.release(2);
+        assertEquals(-1, budget.findVictim(3, 1));
+        budget.admit(3, 1);
+
+        budget.onSeen(4, 50);
+        assertEquals(0, budget.findVictim(4, 1));
+    }
+
+    @Test
+    public void neverEvictsModelsSeenInTheLatestTwoFrames() {
+        ModelBudget budget = new ModelBudget(2);
+        seenAndAdmitted(budget, 0, 10);
+        seenAndAdmitted(budget, 1, 20);
+
+        // Image 0 was last seen before the previous frame, image 1 in it.
+        budget.onSeen(2, 30);
+        assertEquals(0, budget.findVictim(2, 1));
+        budget.release(0);
+        assertEquals(-1, budget.findVictim(2, 1));
+    }
+
+    @Test
+    public void admitsOverBudgetWhenEverythingIsInView() {
+        ModelBudget budget = new ModelBudget(2);
+        seenAndAdmitted(budget, 0, 10);
+        seenAndAdmitted(budget, 1, 10);
+
+        budget.onSeen(0, 20);
+        budget.onSeen(1, 20);
+        budget.onSeen(2, 20);
+        assertEquals(-1, budget.findVictim(2, 1));
+        budget.admit(2, 1);
+
+        assertEquals(3, budget.getUsed());
+        assertEquals(3, budget.getLiveCount());
+        assertTrue(budget.isAdmitted(0));
+        assertTrue(budget.isAdmitted(1));
+    }
+
+    @Test
+    public void releaseAndClearReturnTheirCost() {
+        ModelBudget budget = new ModelBudget(10);
+        seenAndAdmitted(budget, 0, 10);
+        budget.onSeen(1, 10);
+        budget.admit(1, 4);
+
+        budget.release(1);
+        budget.release(1);
+        assertFalse(budget.isAdmitted(1));
+        assertEquals(1, budget.getUsed());
+        assertEquals(1, budget.getLiveCount());
+
+        budget.clear();
+        assertFalse(budget.isAdmitted(0));
+        assertEquals(0, budget.getUsed());
+        assertEquals(0, budget.getLiveCount());
+    }
+
+    private static void seenAndAdmitted(ModelBudget budget, int index, long timestampNanos) {
+        budget.onSeen(index, timestampNanos);
+        assertEquals(-1, budget.findVictim(index, 1));
+        budget.admit(index, 1);
+    }
+}
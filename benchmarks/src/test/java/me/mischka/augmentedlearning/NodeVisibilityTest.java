@@ -0,0 +1,201 @@
+package me.mischka.augmentedlearning;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import me.mischka.common.helpers.ViewFrustum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NodeVisibilityTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final int IMAGE_COUNT = 10;
+    private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+    /** Nodes whose state is set by the test, recording what the visibility does to them. */
+    private static class FakeNodes implements NodeVisibility.Nodes {
+        final boolean[] anchored = new boolean[IMAGE_COUNT];
+        final boolean[] inView = new boolean[IMAGE_COUNT];
+        final boolean[] enabled = new boolean[IMAGE_COUNT];
+        final float[] fades = new float[IMAGE_COUNT];
+        final int[] releases = new int[IMAGE_COUNT];
+
+        @Override
+        public boolean isAnchored(int index) {
+            return anchored[index];
+        }
+
+        @Override
+        public boolean isTracking(int index) {
+            return true;
+        }
+
+        @Override
+        public boolean isInView(int index, ViewFrustum frustum) {
+            return inView[index];
+        }
+
+        @Override
+        public void setEnabled(int index, boolean enabled) {
+            this.enabled[index] = enabled;
+        }
+
+        @Override
+        public void setFade(int index, float fade) {
+            fades[index] = fade;
+        }
+
+        @Override
+        public void release(int index) {
+            anchored[index] = false;
+            releases[index]++;
+        }
+    }
+
+    private FakeNodes nodes;
+    private NodeVisibility visibility;
+
+    @Before
+    public void setUp() {
+        nodes = new FakeNodes();
+        Arrays.fill(nodes.enabled, true);
+        Arrays.fill(nodes.fades, 1);
+        visibility = new NodeVisibility(nodes);
+    }
+
+    @Test
+    public void newlyAnchoredNodeInViewIsVisible() {
+        anchor(0, SECOND);
+        visibility.update(IMAGE_COUNT, SECOND, IDENTITY, IDENTITY);
+
+        assertTrue(visibility.isVisible(0));
+        assertTrue(nodes.enabled[0]);
+        assertFalse(visibility.isVisible(1));
+    }
+
+    @Test
+    public void offScreenNodeIsDisabledAndEnabledAgainInView() {
+        anchor(0, SECOND);
+        visibility.update(IMAGE_COUNT, SECOND, IDENTITY, IDENTITY);
+
+        nodes.inView[0] = false;
+        visibility.onImageUpdated(0, 2 * SECOND);
+        visibility.update(IMAGE_COUNT, 2 * SECOND, IDENTITY, IDENTITY);
+        assertFalse(visibility.isVisible(0));
+        assertFalse(nodes.enabled[0]);
+
+        nodes.inView[0] = true;
+        visibility.onImageUpdated(0, 3 * SECOND);
+        visibility.update(IMAGE_COUNT, 3 * SECOND, IDENTITY, IDENTITY);
+        assertTrue(visibility.isVisible(0));
+        assertTrue(nodes.enabled[0]);
+    }
+
+    @Test
+    public void nodeWithoutUpdatesGoesStaleAndFadesOut() {
+        anchor(0, SECOND);
+        visibility.update(IMAGE_COUNT, SECOND, IDENTITY, IDENTITY);
+
+        long stale = SECOND + seconds(NodeVisibility.STALE_SECONDS);
+        visibility.update(IMAGE_COUNT, stale - SECOND / 10, IDENTITY, IDENTITY);
+        assertTrue(visibility.isVisible(0));
+        assertEquals(1, nodes.fades[0], 0);
+
+        visibility.update(IMAGE_COUNT, stale + seconds(NodeVisibility.FADE_SECONDS / 2), IDENTITY, IDENTITY);
+        assertFalse(visibility.isVisible(0));
+        assertEquals(0.5f, nodes.fades[0], 1e-3f);
+
+        visibility.update(IMAGE_COUNT, stale + seconds(NodeVisibility.FADE_SECONDS), IDENTITY, IDENTITY);
+        assertEquals(0, nodes.fades[0], 0);
+        assertEquals(0, nodes.releases[0]);
+    }
+
+    @Test
+    public void staleNodeComesBackWhenUpdated() {
+        anchor(0, SECOND);
+        visibility.update(IMAGE_COUNT, SECOND, IDENTITY, IDENTITY);
+        long later = SECOND + seconds(NodeVisibility.STALE_SECONDS + NodeVisibility.FADE_SECONDS);
+        visibility.update(IMAGE_COUNT, later, IDENTITY, IDENTITY);
+        assertEquals(0, nodes.fades[0], 0);
+
+        visibility.onImageUpdated(0, later + SECOND);
+        assertEquals(1, nodes.fades[0], 0);
+        visibility.update(IMAGE_COUNT, later + SECOND, IDENTITY, IDENTITY);
+        assertTrue(visibility.isVisible(0));
+    }
+
+    @Test
+    public void staleNodeIsReleasedOnce() {
+        anchor(0, SECOND);
+        visibility.update(IMAGE_COUNT, SECOND, IDENTITY, IDENTITY);
+
+        long release = SECOND + seconds(NodeVisibility.STALE_SECONDS + NodeVisibility.RELEASE_SECONDS);
+        visibility.update(IMAGE_COUNT, release - SECOND / 10, IDENTITY, IDENTITY);
+        assertEquals(0, nodes.releases[0]);
+        visibility.update(IMAGE_COUNT, release, IDENTITY, IDENTITY);
+        assertEquals(1, nodes.releases[0]);
+        visibility.update(IMAGE_COUNT, release + SECOND, IDENTITY, IDENTITY);
+        assertEquals(1, nodes.releases[0]);
+        assertFalse(visibility.isVisible(0));
+    }
+
+    @Test
+    public void offScreenNodesAreCheckedInTurn() {
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            anchor(i, SECOND);
+            nodes.inView[i] = false;
+        }
+        visibility.update(IMAGE_COUNT, SECOND, IDENTITY, IDENTITY);
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            assertFalse(nodes.enabled[i]);
+            nodes.inView[i] = true;
+        }
+
+        int frames = (IMAGE_COUNT + NodeVisibility.OFFSCREEN_CHECKS_PER_FRAME - 1)
+                / NodeVisibility.OFFSCREEN_CHECKS_PER_FRAME;
+        for (int frame = 1; frame <= frames; frame++) {
+            visibility.update(IMAGE_COUNT, SECOND + frame, IDENTITY, IDENTITY);
+            int enabled = 0;
+            for (int i = 0; i < IMAGE_COUNT; i++) {
+                enabled += nodes.enabled[i] ? 1 : 0;
+            }
+            assertEquals(Math.min(IMAGE_COUNT, frame * NodeVisibility.OFFSCREEN_CHECKS_PER_FRAME), enabled);
+        }
+    }
+
+    @Test
+    public void staleOffScreenNodesDoNotTakeTheTurnsOfOthers() {
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            anchor(i, SECOND);
+            nodes.inView[i] = false;
+        }
+        visibility.update(IMAGE_COUNT, SECOND, IDENTITY, IDENTITY);
+
+        // Only the last image is still updated, once every other node has gone stale.
+        long now = SECOND + seconds(NodeVisibility.STALE_SECONDS + 1);
+        visibility.onImageUpdated(IMAGE_COUNT - 1, now);
+        for (int frame = 0; frame < IMAGE_COUNT; frame++) {
+            visibility.update(IMAGE_COUNT, now + frame, IDENTITY, IDENTITY);
+        }
+
+        nodes.inView[IMAGE_COUNT - 1] = true;
+        visibility.update(IMAGE_COUNT, now + IMAGE_COUNT, IDENTITY, IDENTITY);
+        assertTrue(visibility.isVisible(IMAGE_COUNT - 1));
+        assertTrue(nodes.enabled[IMAGE_COUNT - 1]);
+        assertFalse(nodes.enabled[0]);
+    }
+
+    private void anchor(int index, long timestampNanos) {
+        nodes.anchored[index] = true;
+        nodes.inView[index] = true;
+        visibility.onImageUpdated(index, timestampNanos);
+    }
+
+    private static long seconds(float seconds) {
+        return (long) (seconds * SECOND);
+    }
+}
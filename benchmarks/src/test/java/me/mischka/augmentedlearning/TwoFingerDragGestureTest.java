@@ -0,0 +1,109 @@
+package me.mischka.augmentedlearning;
+
+import android.util.DisplayMetrics;
+import android.view.MotionEvent;
+
+import com.google.ar.sceneform.ux.GesturePointersUtility;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TwoFingerDragGestureTest {
+    // Fingers 200 pixels apart, well within the 0.1 inch slop after 8 steps of STEP, past it after 9.
+    private static final float STEP = 5;
+    private static final float[] START_XS = {400, 600};
+    private static final float[] START_YS = {1200, 1200};
+
+    private GesturePointersUtility gesturePointersUtility;
+    private TwoFingerDragGesture gesture;
+    private long eventTime;
+
+    @Before
+    public void setUp() {
+        gesturePointersUtility = new GesturePointersUtility(new DisplayMetrics());
+        MotionEvent pointerDown = MotionEvent.create(MotionEvent.ACTION_POINTER_DOWN, 1, 0, START_XS, START_YS);
+        gesture = new TwoFingerDragGesture(gesturePointersUtility, pointerDown, 0);
+    }
+
+    @Test
+    public void startsOnceBothFingersMovePastTheSlopTogether() {
+        for (int step = 1; step <= 8; step++) {
+            gesture.onTouch(null, move(0, -step * STEP, 0, -step * STEP));
+            assertFalse("started after " + step + " steps", gesture.hasStarted());
+        }
+        gesture.onTouch(null, move(0, -9 * STEP, 0, -9 * STEP));
+        assertTrue(gesture.hasStarted());
+        assertTrue(gesturePointersUtility.isPointerIdRetained(0));
+        assertTrue(gesturePointersUtility.isPointerIdRetained(1));
+    }
+
+    @Test
+    public void doesNotStartWhenFingersMoveApart() {
+        for (int step = 1; step <= 20; step++) {
+            gesture.onTouch(null, move(-step * STEP, 0, step * STEP, 0));
+        }
+        assertFalse(gesture.hasStarted());
+    }
+
+    @Test
+    public void startsFromTheHistoryOfACoalescedMove() {
+        MotionEvent move = move(0, -STEP, 0, -STEP);
+        for (int step = 2; step <= 10; step++) {
+            addSample(move, 0, -step * STEP, 0, -step * STEP);
+        }
+        gesture.onTouch(null, move);
+        assertTrue(gesture.hasStarted());
+    }
+
+    @Test
+    public void deltasAddUpToTheMidpointMovement() {
+        for (int step = 1; step <= 10 && !gesture.hasStarted(); step++) {
+            gesture.onTouch(null, move(0, -step * STEP, 0, -step * STEP));
+        }
+        assertTrue(gesture.hasStarted());
+
+        float totalX = 0;
+        float totalY = 0;
+        for (int event = 1; event <= 5; event++) {
+            // Each event carries four samples, like a coalesced move.
+            MotionEvent move = move(event * 4 - 3, -50 - event * 40, event * 4 - 3, -50 - event * 40);
+            for (int sample = 2; sample <= 4; sample++) {
+                addSample(move, event * 4 - 4 + sample, -50 - event * 40, event * 4 - 4 + sample, -50 - event * 40);
+            }
+            gesture.onTouch(null, move);
+            totalX += gesture.getAverageDeltaPosition().x;
+            totalY += gesture.getAverageDeltaPosition().y;
+        }
+        // From 9 steps up, where the drag started, to the last sample.
+        assertEquals(20, totalX, 1e-3f);
+        assertEquals(-250 + 9 * STEP, totalY, 1e-3f);
+    }
+
+    @Test
+    public void releasesThePointersWhenAFingerLifts() {
+        for (int step = 1; step <= 10; step++) {
+            gesture.onTouch(null, move(0, -step * STEP, 0, -step * STEP));
+        }
+        gesture.onTouch(null, MotionEvent.create(MotionEvent.ACTION_POINTER_UP, 1, ++eventTime, START_XS, START_YS));
+
+        assertTrue(gesture.hasFinished());
+        assertFalse(gesture.wasCancelled());
+        assertFalse(gesturePointersUtility.isPointerIdRetained(0));
+        assertFalse(gesturePointersUtility.isPointerIdRetained(1));
+    }
+
+    /** Returns a move with the fingers at the given offsets from where they went down. */
+    private MotionEvent move(float dx0, float dy0, float dx1, float dy1) {
+        return MotionEvent.create(MotionEvent.ACTION_MOVE, 0, ++eventTime,
+                new float[] {START_XS[0] + dx0, START_XS[1] + dx1}, new float[] {START_YS[0] + dy0, START_YS[1] + dy1});
+    }
+
+    private void addSample(MotionEvent move, float dx0, float dy0, float dx1, float dy1) {
+        move.addBatch(++eventTime,
+                new float[] {START_XS[0] + dx0, START_XS[1] + dx1}, new float[] {START_YS[0] + dy0, START_YS[1] + dy1});
+    }
+}
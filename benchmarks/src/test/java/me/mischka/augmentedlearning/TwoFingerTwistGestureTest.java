@@ -0,0 +1,109 @@
+package me.mischka.augmentedlearning;
+
+import android.util.DisplayMetrics;
+import android.view.MotionEvent;
+
+import com.google.ar.sceneform.ux.GesturePointersUtility;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TwoFingerTwistGestureTest {
+    private static final float CENTER_X = 500;
+    private static final float CENTER_Y = 1200;
+    private static final float RADIUS = 100;
+
+    private GesturePointersUtility gesturePointersUtility;
+    private TwoFingerTwistGesture gesture;
+    private long eventTime;
+
+    @Before
+    public void setUp() {
+        gesturePointersUtility = new GesturePointersUtility(new DisplayMetrics());
+        gesture = new TwoFingerTwistGesture(
+                gesturePointersUtility, turnedTo(MotionEvent.ACTION_POINTER_DOWN, 1, 0), 0);
+    }
+
+    @Test
+    public void startsOnceTheFingersTurnPastTheSlop() {
+        for (int degrees = 1; degrees <= 14; degrees++) {
+            gesture.onTouch(null, turnedTo(MotionEvent.ACTION_MOVE, 0, degrees));
+            assertFalse("started at " + degrees + " degrees", gesture.hasStarted());
+        }
+        gesture.onTouch(null, turnedTo(MotionEvent.ACTION_MOVE, 0, 15.5f));
+        assertTrue(gesture.hasStarted());
+        assertEquals(0, gesture.getDeltaRotationDegrees(), 0);
+        assertTrue(gesturePointersUtility.isPointerIdRetained(0));
+        assertTrue(gesturePointersUtility.isPointerIdRetained(1));
+    }
+
+    @Test
+    public void doesNotStartWhenTheFingersMoveTogether() {
+        for (int step = 1; step <= 20; step++) {
+            gesture.onTouch(null, MotionEvent.create(MotionEvent.ACTION_MOVE, 0, ++eventTime,
+                    new float[] {CENTER_X - RADIUS, CENTER_X + RADIUS},
+                    new float[] {CENTER_Y - step * 10, CENTER_Y - step * 10}));
+        }
+        assertFalse(gesture.hasStarted());
+    }
+
+    @Test
+    public void addsUpTheRotationOverEverySampleOfAnEvent() {
+        gesture.onTouch(null, turnedTo(MotionEvent.ACTION_MOVE, 0, 20));
+        assertTrue(gesture.hasStarted());
+
+        // 300 degrees in one event: its first and last samples alone would read as -60.
+        MotionEvent move = turnedTo(MotionEvent.ACTION_MOVE, 0, 80);
+        for (int sample = 2; sample <= 5; sample++) {
+            turnTo(move, 20 + sample * 60);
+        }
+        gesture.onTouch(null, move);
+        assertEquals(300, gesture.getDeltaRotationDegrees(), 1e-2f);
+
+        gesture.onTouch(null, turnedTo(MotionEvent.ACTION_MOVE, 0, 310));
+        assertEquals(-10, gesture.getDeltaRotationDegrees(), 1e-2f);
+    }
+
+    @Test
+    public void cancelsWhenAnotherGestureHasThePointers() {
+        gesturePointersUtility.retainPointerId(0);
+        gesture.onTouch(null, turnedTo(MotionEvent.ACTION_MOVE, 0, 30));
+
+        assertFalse(gesture.hasStarted());
+        assertTrue(gesture.wasCancelled());
+    }
+
+    @Test
+    public void releasesThePointersWhenAFingerLifts() {
+        gesture.onTouch(null, turnedTo(MotionEvent.ACTION_MOVE, 0, 20));
+        gesture.onTouch(null, turnedTo(MotionEvent.ACTION_POINTER_UP, 1, 20));
+
+        assertTrue(gesture.hasFinished());
+        assertFalse(gesture.wasCancelled());
+        assertFalse(gesturePointersUtility.isPointerIdRetained(0));
+        assertFalse(gesturePointersUtility.isPointerIdRetained(1));
+    }
+
+    /** Returns an event with the fingers on either side of the center, turned by {@code degrees}. */
+    private MotionEvent turnedTo(int action, int actionIndex, float degrees) {
+        return MotionEvent.create(action, actionIndex, ++eventTime, xs(degrees), ys(degrees));
+    }
+
+    private void turnTo(MotionEvent move, float degrees) {
+        move.addBatch(++eventTime, xs(degrees), ys(degrees));
+    }
+
+    private static float[] xs(float degrees) {
+        float dx = (float) Math.cos(Math.toRadians(degrees)) * RADIUS;
+        return new float[] {CENTER_X - dx, CENTER_X + dx};
+    }
+
+    private static float[] ys(float degrees) {
+        float dy = (float) Math.sin(Math.toRadians(degrees)) * RADIUS;
+        return new float[] {CENTER_Y - dy, CENTER_Y + dy};
+    }
+}
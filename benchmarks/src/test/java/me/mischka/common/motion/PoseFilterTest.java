@@ -0,0 +1,117 @@
+package me.mischka.common.motion;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PoseFilterTest {
+    private static final long FRAME_NANOS = 16_666_667L;
+    private static final float[] IDENTITY = {0, 0, 0, 1};
+
+    private final PoseFilter filter = new PoseFilter();
+    private final float[] translation = new float[3];
+    private final float[] rotation = new float[4];
+
+    @Test
+    public void firstPosePassesAsIs() {
+        filter.filter(0, new float[] {1, 2, 3}, new float[] {0, 0.6f, 0, 0.8f});
+
+        filter.getTranslation(translation);
+        filter.getRotation(rotation);
+        assertArrayEquals(new float[] {1, 2, 3}, translation, 0);
+        assertArrayEquals(new float[] {0, 0.6f, 0, 0.8f}, rotation, 0);
+    }
+
+    @Test
+    public void convergesOnAPoseThatStopsMoving() {
+        filter.filter(0, new float[3], IDENTITY);
+        float[] target = {0.1f, -0.05f, 0.2f};
+        float[] turned = aroundY(30);
+        for (int frame = 1; frame <= 120; frame++) {
+            filter.filter(frame * FRAME_NANOS, target, turned);
+        }
+
+        filter.getTranslation(translation);
+        assertArrayEquals(target, translation, 0.001f);
+        assertFalse(filter.hasDrifted(target, turned, 0.001f, (float) Math.toRadians(0.5)));
+    }
+
+    @Test
+    public void smoothsJitterAtRest() {
+        Random random = new Random(17);
+        float[] sample = new float[3];
+        double rawError = 0;
+        double filteredError = 0;
+        for (int frame = 0; frame < 600; frame++) {
+            for (int axis = 0; axis < 3; axis++) {
+                sample[axis] = (float) random.nextGaussian() * 0.002f;
+            }
+            filter.filter(frame * FRAME_NANOS, sample, IDENTITY);
+            if (frame >= 60) {
+                filter.getTranslation(translation);
+                rawError += lengthSquared(sample);
+                filteredError += lengthSquared(translation);
+            }
+        }
+        assertTrue("filtered error " + Math.sqrt(filteredError) + " raw " + Math.sqrt(rawError),
+                filteredError < rawError * 0.25);
+    }
+
+    @Test
+    public void followsAMovingImageWithinTheDriftDistance() {
+        // A hand-moved image, at half a meter per second.
+        float speed = 0.5f;
+        float maxLag = 0;
+        for (int frame = 0; frame < 120; frame++) {
+            float x = speed * frame * FRAME_NANOS / 1e9f;
+            filter.filter(frame * FRAME_NANOS, new float[] {x, 0, 0}, IDENTITY);
+            filter.getTranslation(translation);
+            if (frame >= 30) {
+                maxLag = Math.max(maxLag, x - translation[0]);
+            }
+        }
+        assertTrue("lag " + maxLag, maxLag < PoseFilter.DEFAULT_MAX_DRIFT_DISTANCE / 2);
+    }
+
+    @Test
+    public void driftIsMeasuredAgainstBothThresholds() {
+        filter.filter(0, new float[3], IDENTITY);
+
+        assertFalse(filter.hasDrifted(new float[] {0.01f, 0, 0}, IDENTITY, 0.02f, (float) Math.toRadians(4)));
+        assertTrue(filter.hasDrifted(new float[] {0.03f, 0, 0}, IDENTITY, 0.02f, (float) Math.toRadians(4)));
+        assertFalse(filter.hasDrifted(new float[3], aroundY(3), 0.02f, (float) Math.toRadians(4)));
+        assertTrue(filter.hasDrifted(new float[3], aroundY(5), 0.02f, (float) Math.toRadians(4)));
+        // q and -q are the same rotation.
+        float[] negated = aroundY(3);
+        for (int i = 0; i < 4; i++) {
+            negated[i] = -negated[i];
+        }
+        assertFalse(filter.hasDrifted(new float[3], negated, 0.02f, (float) Math.toRadians(4)));
+    }
+
+    @Test
+    public void resetStartsOverFromTheNextPose() {
+        filter.filter(0, new float[3], IDENTITY);
+        filter.filter(FRAME_NANOS, new float[3], IDENTITY);
+        filter.reset();
+        assertFalse(filter.isInitialized());
+
+        filter.filter(2 * FRAME_NANOS, new float[] {1, 0, 0}, IDENTITY);
+        filter.getTranslation(translation);
+        assertEquals(1, translation[0], 0);
+    }
+
+    private static float[] aroundY(float degrees) {
+        double half = Math.toRadians(degrees) / 2;
+        return new float[] {0, (float) Math.sin(half), 0, (float) Math.cos(half)};
+    }
+
+    private static double lengthSquared(float[] v) {
+        return v[0] * v[0] + v[1] * v[1] + v[2] * v[2];
+    }
+}
@@ -0,0 +1,63 @@
+package me.mischka.common.motion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpringTest {
+    private static final float SMOOTH_TIME = 0.08f;
+    private static final float EPSILON = 0.0005f;
+
+    @Test
+    public void settlesOnItsTargetWithoutOvershoot() {
+        Spring spring = new Spring(2, SMOOTH_TIME, EPSILON);
+        spring.setTarget(0, 1);
+        spring.setTarget(1, -2);
+
+        float previous0 = 0;
+        float previous1 = 0;
+        int frames = 0;
+        while (spring.isActive()) {
+            assertTrue(spring.update(1 / 60f));
+            assertTrue("component 0 at " + spring.get(0), spring.get(0) >= previous0 && spring.get(0) <= 1);
+            assertTrue("component 1 at " + spring.get(1), spring.get(1) <= previous1 && spring.get(1) >= -2);
+            previous0 = spring.get(0);
+            previous1 = spring.get(1);
+            assertTrue("still moving after " + frames + " frames", ++frames < 60);
+        }
+        assertEquals(1, spring.get(0), 0);
+        assertEquals(-2, spring.get(1), 0);
+        assertFalse(spring.update(1 / 60f));
+    }
+
+    @Test
+    public void movesTheSameAtAnyFrameRate() {
+        Spring slow = new Spring(1, SMOOTH_TIME, EPSILON);
+        Spring fast = new Spring(1, SMOOTH_TIME, EPSILON);
+        slow.setTarget(0, 1);
+        fast.setTarget(0, 1);
+        for (int frame = 0; frame < 3; frame++) {
+            slow.update(1 / 30f);
+        }
+        for (int frame = 0; frame < 12; frame++) {
+            fast.update(1 / 120f);
+        }
+        assertEquals(slow.get(0), fast.get(0), 1e-4f);
+    }
+
+    @Test
+    public void snapPutsAComponentAtRest() {
+        Spring spring = new Spring(1, SMOOTH_TIME, EPSILON);
+        spring.setTarget(0, 1);
+        spring.update(1 / 60f);
+        spring.snap(0, 0.25f);
+
+        assertEquals(0.25f, spring.get(0), 0);
+        assertEquals(0.25f, spring.getTarget(0), 0);
+        spring.update(1 / 60f);
+        assertEquals(0.25f, spring.get(0), 0);
+        assertFalse(spring.isActive());
+    }
+}
@@ -0,0 +1,232 @@
+package me.mischka.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs the models of each image category, with their levels of detail, into an uncompressed,
+ * indexed archive read by {@code ContentPacks} in the app.
+ *
+ * <p>The pack of an image is named after its category, see {@link ContentFiles#packOf}, and
+ * written to the output directory as {@code name.pack}. Models are stored once per pack, in image
+ * list order, each followed by the levels of detail in the lod list of {@link GenerateLodsTask}. Models listed in the model descriptor that have not been converted into the assets
+ * directory are skipped with a warning.
+ *
+ * <p>Layout, big-endian:
+ *
+ * <pre>
+ * int    magic ('ALCP')
+ * short  version
+ * int    entry count, followed by that many entries of:
+ *          UTF   model asset path
+ *          long  offset of the model from the start of the pack
+ *          long  length of the model
+ * the models, each starting on a multiple of ALIGNMENT
+ * </pre>
+ */
+@CacheableTask
+public class BuildContentPacksTask extends DefaultTask {
+    public static final int MAGIC = 0x414C4350;
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".pack";
+
+    // Keeps models on page boundaries, so a model can be mapped or read without touching its
+    // neighbours' pages.
+    private static final int ALIGNMENT = 4096;
+
+    private File imageList;
+    private File modelDescriptor;
+    private File lodList;
+    private File assetsDir;
+    private File outputDir;
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public File getImageList() {
+        return imageList;
+    }
+
+    public void setImageList(File imageList) {
+        this.imageList = imageList;
+    }
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public File getModelDescriptor() {
+        return modelDescriptor;
+    }
+
+    public void setModelDescriptor(File modelDescriptor) {
+        this.modelDescriptor = modelDescriptor;
+    }
+
+    /** The levels of detail of the models, as written by {@link GenerateLodsTask}. None if unset. */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public File getLodList() {
+        return lodList;
+    }
+
+    public void setLodList(File lodList) {
+        this.lodList = lodList;
+    }
+
+    /** The directory the converted models are in, and their asset paths are relative to. */
+    @Internal
+    public File getAssetsDir() {
+        return assetsDir;
+    }
+
+    public void setAssetsDir(File assetsDir) {
+        this.assetsDir = assetsDir;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public List<File> getModels() {
+        List<File> files = new ArrayList<>();
+        try {
+            for (List<String> paths : modelsByPack().values()) {
+                for (String path : paths) {
+                    files.add(new File(assetsDir, path));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return files;
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    @TaskAction
+    public void build() throws IOException {
+        getProject().delete(getProject().fileTree(outputDir).include("*" + EXTENSION));
+        outputDir.mkdirs();
+
+        for (Map.Entry<String, List<String>> pack : modelsByPack().entrySet()) {
+            List<String> paths = new ArrayList<>();
+            for (String path : pack.getValue()) {
+                if (new File(assetsDir, path).isFile()) {
+                    paths.add(path);
+                } else {
+                    getLogger().warn("Model " + path + " of pack " + pack.getKey() + " not found, skipping it");
+                }
+            }
+            write(new File(outputDir, pack.getKey() + EXTENSION), paths);
+        }
+    }
+
+    private void write(File file, List<String> paths) throws IOException {
+        long[] lengths = new long[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            lengths[i] = new File(assetsDir, paths.get(i)).length();
+        }
+
+        // The index is written to find out its size, and with it where the first model starts.
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        long[] offsets = new long[paths.size()];
+        writeIndex(new DataOutputStream(index), paths, offsets, lengths);
+        long offset = align(index.size());
+        for (int i = 0; i < paths.size(); i++) {
+            offsets[i] = offset;
+            offset = align(offset + lengths[i]);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            writeIndex(out, paths, offsets, lengths);
+            for (int i = 0; i < paths.size(); i++) {
+                pad(out, offsets[i]);
+                Files.copy(new File(assetsDir, paths.get(i)).toPath(), out);
+            }
+        }
+        getLogger().info("Wrote " + paths.size() + " models, " + file.length() + " bytes, to " + file);
+    }
+
+    private static void writeIndex(DataOutputStream out, List<String> paths, long[] offsets, long[] lengths)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(paths.size());
+        for (int i = 0; i < paths.size(); i++) {
+            out.writeUTF(paths.get(i));
+            out.writeLong(offsets[i]);
+            out.writeLong(lengths[i]);
+        }
+        out.flush();
+    }
+
+    private static void pad(DataOutputStream out, long offset) throws IOException {
+        while (out.size() < offset) {
+            out.write(0);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /** Returns the asset paths of the models of each pack, levels of detail included. */
+    private Map<String, List<String>> modelsByPack() throws IOException {
+        Map<String, String[]> models = new HashMap<>();
+        for (String[] fields : ContentFiles.readRecords(modelDescriptor)) {
+            if (fields.length < 2) {
+                throw new GradleException(modelDescriptor + ": missing model for " + fields[0]);
+            }
+            models.put(fields[0], fields);
+        }
+
+        Map<String, Integer> lodCounts = ContentFiles.readLodCounts(lodList);
+        Map<String, List<String>> packs = new LinkedHashMap<>();
+        for (String[] image : ContentFiles.readRecords(imageList)) {
+            String[] model = models.get(image[0]);
+            if (model == null) {
+                throw new GradleException(modelDescriptor + ": no model for image " + image[0]);
+            }
+            List<String> paths = packs.computeIfAbsent(ContentFiles.packOf(image), pack -> new ArrayList<>());
+            add(paths, model[1]);
+            int lods = lodCounts.getOrDefault(model[1], 0);
+            for (int level = 1; level <= lods; level++) {
+                add(paths, ContentFiles.lodPath(model[1], level));
+            }
+        }
+        return packs;
+    }
+
+    private static void add(List<String> paths, String path) {
+        if (!paths.contains(path)) {
+            paths.add(path);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package me.mischka.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds an ARCore augmented image database with {@code arcoreimg build-db}.
+ *
+ * <p>The image list and every image it references are inputs, so the database is only rebuilt
+ * when one of them changes.
+ */
+@CacheableTask
+public class BuildImageDatabaseTask extends DefaultTask {
+    private String arcoreimg = "arcoreimg";
+    private File imageList;
+    private File baseDir;
+    private File database;
+
+    @Input
+    public String getArcoreimg() {
+        return arcoreimg;
+    }
+
+    public void setArcoreimg(String arcoreimg) {
+        this.arcoreimg = arcoreimg;
+    }
+
+    @InputFile
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public File getImageList() {
+        return imageList;
+    }
+
+    public void setImageList(File imageList) {
+        this.imageList = imageList;
+    }
+
+    /** The directory image paths in the image list are relative to. */
+    @Internal
+    public File getBaseDir() {
+        return baseDir;
+    }
+
+    public void setBaseDir(File baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public List<File> getTargetImages() {
+        List<File> images = new ArrayList<>();
+        try {
+            for (String[] record : ContentFiles.readRecords(imageList)) {
+                if (record.length > 1) {
+                    images.add(new File(baseDir, record[1]));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return images;
+    }
+
+    @OutputFile
+    public File getDatabase() {
+        return database;
+    }
+
+    public void setDatabase(File database) {
+        this.database = database;
+    }
+
+    /** The image list {@code arcoreimg} writes next to the database, in database index order. */
+    @OutputFile
+    public File getDatabaseImageList() {
+        return new File(database.getPath() + "-imglist.txt");
+    }
+
+    @TaskAction
+    public void build() {
+        getProject().exec(spec -> {
+            spec.setWorkingDir(baseDir);
+            spec.commandLine(
+                    arcoreimg,
+                    "build-db",
+                    "--input_image_list_path=" + imageList.getAbsolutePath(),
+                    "--output_db_path=" + database.getAbsolutePath());
+        });
+    }
+}
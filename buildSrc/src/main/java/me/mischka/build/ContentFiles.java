@@ -0,0 +1,74 @@
+package me.mischka.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Helpers for the pipe-separated content lists under {@code app/sampledata}. */
+public final class ContentFiles {
+    private ContentFiles() {
+    }
+
+    /**
+     * Reads the records of a pipe-separated list such as {@code image_list.txt}, skipping blank
+     * lines and {@code #} comments. Fields are trimmed.
+     */
+    public static List<String[]> readRecords(File file) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\|", -1);
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fields[i].trim();
+            }
+            records.add(fields);
+        }
+        return records;
+    }
+
+    /**
+     * Reads the lod list written by {@link GenerateLodsTask}: the number of levels of detail by
+     * model asset path. Returns an empty map for a missing or {@code null} list.
+     */
+    public static Map<String, Integer> readLodCounts(File lodList) throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        if (lodList == null || !lodList.isFile()) {
+            return counts;
+        }
+        for (String[] fields : readRecords(lodList)) {
+            counts.put(fields[0], Integer.parseInt(fields[1]));
+        }
+        return counts;
+    }
+
+    /** Returns the category of an image list record: the directory its image is in. */
+    public static String categoryOf(String[] image) {
+        if (image.length < 2) {
+            return "";
+        }
+        File parent = new File(image[1]).getParentFile();
+        return parent == null ? "" : parent.getName();
+    }
+
+    /** Returns the content pack of an image list record: its category, or {@code common} if it has none. */
+    public static String packOf(String[] image) {
+        String category = categoryOf(image);
+        return category.isEmpty() ? "common" : category;
+    }
+
+    /** Returns the asset path of a level of detail of a model, as {@code ContentManifest.lodPath} does. */
+    public static String lodPath(String modelPath, int level) {
+        int extension = modelPath.lastIndexOf('.');
+        String base = extension < 0 ? modelPath : modelPath.substring(0, extension);
+        String suffix = extension < 0 ? "" : modelPath.substring(extension);
+        return base + "_lod" + level + suffix;
+    }
+}
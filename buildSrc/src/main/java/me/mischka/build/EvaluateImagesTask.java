@@ -0,0 +1,325 @@
+package me.mischka.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.IsolationMode;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Scores every target image of the image list with {@code arcoreimg eval-img} and looks for targets
+ * that look alike, writing the results as a JSON report.
+ *
+ * <p>ARCore detects images scoring below about 75 slowly or not at all, and images that look alike
+ * make it take longer to tell them apart, or show the wrong model. Images are scored and hashed in
+ * parallel; look-alikes are pairs whose {@link ImageHash difference hashes} differ in at most
+ * {@code maxDuplicateDistance} bits. If {@code arcoreimg} is not installed only look-alikes are
+ * reported. With {@code failOnIssues}, the build fails on any low score or look-alike.
+ *
+ * <p>The report looks like:
+ *
+ * <pre>
+ * {
+ *   "minScore": 75,
+ *   "maxDuplicateDistance": 6,
+ *   "images": [
+ *     {"name": "apple", "path": "app/sampledata/input-images/fruits/apple.jpg", "score": 90, "hash": "e8f0...", "lowScore": false},
+ *     ...
+ *   ],
+ *   "duplicates": [{"a": "lemon", "b": "orange", "distance": 4}],
+ *   "lowScoreCount": 0,
+ *   "duplicateCount": 1
+ * }
+ * </pre>
+ *
+ * <p>{@code score} is null for images {@code arcoreimg} could not score.
+ */
+public class EvaluateImagesTask extends DefaultTask {
+    private final WorkerExecutor workerExecutor;
+
+    private String arcoreimg = "arcoreimg";
+    private File imageList;
+    private File baseDir;
+    private int minScore = 75;
+    private int maxDuplicateDistance = 6;
+    private boolean failOnIssues;
+    private File reportFile;
+
+    @Inject
+    public EvaluateImagesTask(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor;
+    }
+
+    @Input
+    public String getArcoreimg() {
+        return arcoreimg;
+    }
+
+    public void setArcoreimg(String arcoreimg) {
+        this.arcoreimg = arcoreimg;
+    }
+
+    @InputFile
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public File getImageList() {
+        return imageList;
+    }
+
+    public void setImageList(File imageList) {
+        this.imageList = imageList;
+    }
+
+    /** The directory image paths in the image list are relative to. */
+    @Internal
+    public File getBaseDir() {
+        return baseDir;
+    }
+
+    public void setBaseDir(File baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public List<File> getTargetImages() {
+        List<File> images = new ArrayList<>();
+        for (String[] record : readImageList()) {
+            images.add(new File(baseDir, record[1]));
+        }
+        return images;
+    }
+
+    /** Lowest {@code arcoreimg} score, out of 100, an image may have. */
+    @Input
+    public int getMinScore() {
+        return minScore;
+    }
+
+    public void setMinScore(int minScore) {
+        this.minScore = minScore;
+    }
+
+    /** Most bits the hashes of two images may differ in for them to count as look-alikes. */
+    @Input
+    public int getMaxDuplicateDistance() {
+        return maxDuplicateDistance;
+    }
+
+    public void setMaxDuplicateDistance(int maxDuplicateDistance) {
+        this.maxDuplicateDistance = maxDuplicateDistance;
+    }
+
+    @Input
+    public boolean isFailOnIssues() {
+        return failOnIssues;
+    }
+
+    public void setFailOnIssues(boolean failOnIssues) {
+        this.failOnIssues = failOnIssues;
+    }
+
+    @OutputFile
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    @TaskAction
+    public void evaluate() throws IOException {
+        List<String[]> images = readImageList();
+        File resultDir = getTemporaryDir();
+        List<File> resultFiles = new ArrayList<>();
+        for (int i = 0; i < images.size(); i++) {
+            String[] image = images.get(i);
+            File source = new File(baseDir, image[1]);
+            File resultFile = new File(resultDir, i + ".result");
+            resultFiles.add(resultFile);
+            workerExecutor.submit(Evaluate.class, config -> {
+                config.setIsolationMode(IsolationMode.NONE);
+                config.setDisplayName("Evaluate " + image[0]);
+                config.setParams(arcoreimg, source, resultFile);
+            });
+        }
+        workerExecutor.await();
+
+        int[] scores = new int[images.size()];
+        long[] hashes = new long[images.size()];
+        int unscored = 0;
+        for (int i = 0; i < images.size(); i++) {
+            String[] result = new String(Files.readAllBytes(resultFiles.get(i).toPath()), StandardCharsets.UTF_8)
+                    .trim().split("\t");
+            scores[i] = Integer.parseInt(result[0]);
+            hashes[i] = Long.parseUnsignedLong(result[1], 16);
+            if (scores[i] < 0) {
+                unscored++;
+            }
+        }
+
+        List<String> issues = new ArrayList<>();
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"minScore\": ").append(minScore).append(",\n");
+        json.append("  \"maxDuplicateDistance\": ").append(maxDuplicateDistance).append(",\n");
+        json.append("  \"images\": [\n");
+        int lowScoreCount = 0;
+        for (int i = 0; i < images.size(); i++) {
+            boolean lowScore = scores[i] >= 0 && scores[i] < minScore;
+            if (lowScore) {
+                lowScoreCount++;
+                issues.add(images.get(i)[0] + " scores " + scores[i]);
+            }
+            json.append("    {\"name\": ").append(quote(images.get(i)[0]))
+                    .append(", \"path\": ").append(quote(images.get(i)[1]))
+                    .append(", \"score\": ").append(scores[i] >= 0 ? String.valueOf(scores[i]) : "null")
+                    .append(", \"hash\": ").append(quote(String.format(Locale.ROOT, "%016x", hashes[i])))
+                    .append(", \"lowScore\": ").append(lowScore)
+                    .append(i + 1 < images.size() ? "},\n" : "}\n");
+        }
+        json.append("  ],\n");
+
+        json.append("  \"duplicates\": [");
+        int duplicateCount = 0;
+        for (int i = 0; i < images.size(); i++) {
+            for (int j = i + 1; j < images.size(); j++) {
+                int distance = ImageHash.distance(hashes[i], hashes[j]);
+                if (distance > maxDuplicateDistance) {
+                    continue;
+                }
+                json.append(duplicateCount == 0 ? "\n" : ",\n");
+                json.append("    {\"a\": ").append(quote(images.get(i)[0]))
+                        .append(", \"b\": ").append(quote(images.get(j)[0]))
+                        .append(", \"distance\": ").append(distance).append('}');
+                duplicateCount++;
+                issues.add(images.get(i)[0] + " looks like " + images.get(j)[0] + " (distance " + distance + ")");
+            }
+        }
+        json.append(duplicateCount == 0 ? "],\n" : "\n  ],\n");
+        json.append("  \"lowScoreCount\": ").append(lowScoreCount).append(",\n");
+        json.append("  \"duplicateCount\": ").append(duplicateCount).append('\n');
+        json.append("}\n");
+
+        reportFile.getParentFile().mkdirs();
+        Files.write(reportFile.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+        if (unscored > 0) {
+            getLogger().warn(unscored + " of " + images.size() + " images could not be scored with " + arcoreimg);
+        }
+        getLogger().lifecycle("Images: " + lowScoreCount + " below a score of " + minScore + ", "
+                + duplicateCount + " look-alike pairs, see " + reportFile);
+        for (String issue : issues) {
+            getLogger().warn(issue);
+        }
+
+        if (failOnIssues && !issues.isEmpty()) {
+            throw new GradleException("Target images need attention: " + issues);
+        }
+    }
+
+    private List<String[]> readImageList() {
+        List<String[]> images = new ArrayList<>();
+        try {
+            for (String[] record : ContentFiles.readRecords(imageList)) {
+                if (record.length > 1) {
+                    images.add(record);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return images;
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Scores and hashes one image, writing {@code score<TAB>hash} to the result file, with a score
+     * of -1 if {@code arcoreimg} could not score it.
+     */
+    public static class Evaluate implements Runnable {
+        private final String arcoreimg;
+        private final File source;
+        private final File resultFile;
+
+        @Inject
+        public Evaluate(String arcoreimg, File source, File resultFile) {
+            this.arcoreimg = arcoreimg;
+            this.source = source;
+            this.resultFile = resultFile;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long hash = ImageHash.of(source);
+                int score = score();
+                Files.write(resultFile.toPath(),
+                        (score + "\t" + Long.toHexString(hash) + "\n").getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Returns the last number {@code arcoreimg} prints, which is the score, or -1. */
+        private int score() {
+            Process process;
+            try {
+                process = new ProcessBuilder(arcoreimg, "eval-img", "--input_image_path=" + source.getAbsolutePath())
+                        .redirectErrorStream(true)
+                        .start();
+            } catch (IOException e) {
+                return -1;
+            }
+
+            int score = -1;
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.matches("\\d{1,3}")) {
+                        score = Integer.parseInt(line);
+                    }
+                }
+                return process.waitFor() == 0 ? score : -1;
+            } catch (IOException e) {
+                return -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+    }
+}
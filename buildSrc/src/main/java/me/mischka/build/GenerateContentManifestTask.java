@@ -0,0 +1,169 @@
+package me.mischka.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates the binary content manifest read by {@code ContentManifest} in the app.
+ *
+ * <p>Entries are written in image list order, which is also the order {@code arcoreimg} assigns
+ * database indices in, so the app can look everything up by {@code AugmentedImage.getIndex()}.
+ * The category of an image is the name of the directory its target image is in.
+ *
+ * <p>Layout, big-endian:
+ *
+ * <pre>
+ * int    magic ('ALCM')
+ * short  version
+ * short  category count, followed by that many UTF category names
+ * int    entry count, followed by that many entries of:
+ *          UTF   name
+ *          UTF   model asset path
+ *          byte  look direction (see LOOK_DIRECTIONS)
+ *          float scale
+ *          short category
+ *          byte  number of reduced levels of detail, from the lod list of GenerateLodsTask
+ * </pre>
+ */
+@CacheableTask
+public class GenerateContentManifestTask extends DefaultTask {
+    public static final int MAGIC = 0x414C434D;
+    public static final int VERSION = 3;
+
+    /** Look directions, in the order of their encoded values. */
+    public static final List<String> LOOK_DIRECTIONS =
+            Arrays.asList("left", "right", "up", "down", "forward", "back");
+
+    private File imageList;
+    private File modelDescriptor;
+    private File lodList;
+    private File outputFile;
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public File getImageList() {
+        return imageList;
+    }
+
+    public void setImageList(File imageList) {
+        this.imageList = imageList;
+    }
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public File getModelDescriptor() {
+        return modelDescriptor;
+    }
+
+    public void setModelDescriptor(File modelDescriptor) {
+        this.modelDescriptor = modelDescriptor;
+    }
+
+    /** The levels of detail of the models, as written by {@link GenerateLodsTask}. None if unset. */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public File getLodList() {
+        return lodList;
+    }
+
+    public void setLodList(File lodList) {
+        this.lodList = lodList;
+    }
+
+    @OutputFile
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    @TaskAction
+    public void generate() throws IOException {
+        Map<String, String[]> models = new HashMap<>();
+        for (String[] fields : ContentFiles.readRecords(modelDescriptor)) {
+            if (fields.length < 2) {
+                throw new GradleException(modelDescriptor + ": missing model for " + fields[0]);
+            }
+            models.put(fields[0], fields);
+        }
+
+        Map<String, Integer> lodCounts = ContentFiles.readLodCounts(lodList);
+        List<String> categories = new ArrayList<>();
+        List<String[]> images = ContentFiles.readRecords(imageList);
+
+        outputFile.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(outputFile)))) {
+            for (String[] image : images) {
+                String category = ContentFiles.categoryOf(image);
+                if (!categories.contains(category)) {
+                    categories.add(category);
+                }
+            }
+
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(categories.size());
+            for (String category : categories) {
+                out.writeUTF(category);
+            }
+
+            out.writeInt(images.size());
+            for (String[] image : images) {
+                String name = image[0];
+                String[] model = models.get(name);
+                if (model == null) {
+                    throw new GradleException(modelDescriptor + ": no model for image " + name);
+                }
+
+                String look = field(model, 2, "left");
+                int lookIndex = LOOK_DIRECTIONS.indexOf(look);
+                if (lookIndex < 0) {
+                    throw new GradleException(modelDescriptor + ": unknown look direction " + look + " for " + name);
+                }
+
+                out.writeUTF(name);
+                out.writeUTF(model[1]);
+                out.writeByte(lookIndex);
+                out.writeFloat(parseFloat(field(model, 3, "1"), name));
+                out.writeShort(categories.indexOf(ContentFiles.categoryOf(image)));
+                out.writeByte(lodCounts.getOrDefault(model[1], 0));
+            }
+        }
+
+        getLogger().info("Wrote " + images.size() + " images in " + categories.size() + " categories to " + outputFile);
+    }
+
+    private static String field(String[] fields, int index, String defaultValue) {
+        return index < fields.length && !fields[index].isEmpty() ? fields[index] : defaultValue;
+    }
+
+    private float parseFloat(String value, String name) {
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            throw new GradleException(modelDescriptor + ": invalid number " + value + " for " + name, e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package me.mischka.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.IsolationMode;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates decimated level-of-detail meshes for the OBJ models whose source is at least {@code
+ * minSourceBytes}.
+ *
+ * <p>For a model converted to {@code name.sfb}, level {@code n} is written to the output directory
+ * as {@code name_lodn.obj} with a matching {@code name_lodn.sfa}, which copies the model's
+ * description, by default its own {@code .sfa}, and points at the decimated mesh. Level 1 uses the
+ * first entry of {@code resolutions}, and so on, so resolutions should decrease. Models are
+ * decimated in parallel.
+ *
+ * <p>{@link #getLevels()} lists the levels to convert, known before the task runs. The lod list
+ * names every model that got levels and their count, as {@code name.sfb|count} records, for the
+ * content manifest and the content packs.
+ */
+@CacheableTask
+public class GenerateLodsTask extends DefaultTask {
+    private final WorkerExecutor workerExecutor;
+
+    private List<SceneformAssets.Model> models = new ArrayList<>();
+    private List<Integer> resolutions = new ArrayList<>();
+    private long minSourceBytes;
+    private Map<String, String> descriptions = new HashMap<>();
+    private File outputDir;
+
+    @Inject
+    public GenerateLodsTask(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor;
+    }
+
+    @Internal
+    public List<SceneformAssets.Model> getModels() {
+        return models;
+    }
+
+    public void setModels(List<SceneformAssets.Model> models) {
+        this.models = models;
+    }
+
+    /** The models that get levels of detail: those with an OBJ source of at least {@code minSourceBytes}. */
+    @Internal
+    public List<SceneformAssets.Model> getLodModels() {
+        List<SceneformAssets.Model> lodModels = new ArrayList<>();
+        for (SceneformAssets.Model model : models) {
+            File source = getProject().file(model.getSource());
+            if (source.getName().toLowerCase().endsWith(".obj") && source.length() >= minSourceBytes) {
+                lodModels.add(model);
+            }
+        }
+        return lodModels;
+    }
+
+    /** Every level to convert, with paths relative to the project directory. */
+    @Internal
+    public List<SceneformAssets.Model> getLevels() {
+        List<SceneformAssets.Model> levels = new ArrayList<>();
+        for (SceneformAssets.Model model : getLodModels()) {
+            for (int level = 1; level <= resolutions.size(); level++) {
+                String name = outputName(model) + "_lod" + level;
+                levels.add(new SceneformAssets.Model(
+                        getProject().relativePath(new File(outputDir, name + ".obj")),
+                        getProject().relativePath(new File(outputDir, name + ".sfa")),
+                        model.getOutput() + "_lod" + level));
+            }
+        }
+        return levels;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public List<File> getSources() {
+        List<File> files = new ArrayList<>();
+        for (SceneformAssets.Model model : getLodModels()) {
+            files.add(getProject().file(model.getSource()));
+            files.add(getProject().file(description(model)));
+        }
+        return files;
+    }
+
+    @Input
+    public List<String> getOutputNames() {
+        List<String> names = new ArrayList<>();
+        for (SceneformAssets.Model model : getLodModels()) {
+            names.add(outputName(model));
+        }
+        return names;
+    }
+
+    @Input
+    public long getMinSourceBytes() {
+        return minSourceBytes;
+    }
+
+    public void setMinSourceBytes(long minSourceBytes) {
+        this.minSourceBytes = minSourceBytes;
+    }
+
+    /**
+     * The {@code .sfa} to base the levels of a model on, by output name, e.g. one with optimized
+     * textures. Models without one use their own.
+     */
+    @Internal
+    public Map<String, String> getDescriptions() {
+        return descriptions;
+    }
+
+    public void setDescriptions(Map<String, String> descriptions) {
+        this.descriptions = descriptions;
+    }
+
+    @Input
+    public List<Integer> getResolutions() {
+        return resolutions;
+    }
+
+    public void setResolutions(List<Integer> resolutions) {
+        this.resolutions = resolutions;
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    @OutputFile
+    public File getLodList() {
+        return new File(outputDir, "lods.txt");
+    }
+
+    @TaskAction
+    public void generate() throws IOException {
+        getProject().delete(getProject().fileTree(outputDir));
+        outputDir.mkdirs();
+
+        StringBuilder lodList = new StringBuilder("# model|levels of detail, written by GenerateLodsTask\n");
+        for (SceneformAssets.Model model : getLodModels()) {
+            lodList.append(outputName(model)).append(".sfb|").append(resolutions.size()).append('\n');
+            for (int level = 1; level <= resolutions.size(); level++) {
+                String name = outputName(model) + "_lod" + level;
+                File source = getProject().file(model.getSource());
+                File sfa = getProject().file(description(model));
+                File targetObj = new File(outputDir, name + ".obj");
+                File targetSfa = new File(outputDir, name + ".sfa");
+                String objPath = getProject().relativePath(targetObj).replace(File.separatorChar, '/');
+                int resolution = resolutions.get(level - 1);
+
+                workerExecutor.submit(Decimate.class, config -> {
+                    config.setIsolationMode(IsolationMode.NONE);
+                    config.setDisplayName("Decimate " + name);
+                    config.setParams(source, sfa, targetObj, targetSfa, objPath, resolution);
+                });
+            }
+        }
+        workerExecutor.await();
+        Files.write(getLodList().toPath(), lodList.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String description(SceneformAssets.Model model) {
+        String description = descriptions.get(outputName(model));
+        return description != null ? description : model.getSfa();
+    }
+
+    private static String outputName(SceneformAssets.Model model) {
+        return new File(model.getOutput()).getName();
+    }
+
+    /** Decimates one model at one level and writes its description. */
+    public static class Decimate implements Runnable {
+        private final File source;
+        private final File sfa;
+        private final File targetObj;
+        private final File targetSfa;
+        private final String objPath;
+        private final int resolution;
+
+        @Inject
+        public Decimate(File source, File sfa, File targetObj, File targetSfa, String objPath, Integer resolution) {
+            this.source = source;
+            this.sfa = sfa;
+            this.targetObj = targetObj;
+            this.targetSfa = targetSfa;
+            this.objPath = objPath;
+            this.resolution = resolution;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ObjDecimator.Result result = new ObjDecimator(resolution).decimate(source, targetObj);
+                System.out.println(targetObj.getName() + ": " + result);
+
+                String description = new String(Files.readAllBytes(sfa.toPath()), StandardCharsets.UTF_8);
+                Files.write(targetSfa.toPath(),
+                        SceneformAssets.replaceModelSource(description, objPath).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
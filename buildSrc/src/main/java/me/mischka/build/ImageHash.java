@@ -0,0 +1,57 @@
+package me.mischka.build;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Perceptual difference hashes, used to find target images that look alike.
+ *
+ * <p>The image is shrunk to 9 by 8 grey pixels and each bit says whether a pixel is brighter than
+ * its right neighbour. Scaling, recompression and small changes in brightness leave the hash nearly
+ * the same, so the number of differing bits measures how alike two images look.
+ */
+public final class ImageHash {
+    private static final int WIDTH = 9;
+    private static final int HEIGHT = 8;
+
+    private ImageHash() {
+    }
+
+    /** Returns the difference hash of the image in {@code file}. */
+    public static long of(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unable to read " + file);
+        }
+        return of(image);
+    }
+
+    public static long of(BufferedImage image) {
+        // Area averaging looks at every source pixel, unlike the faster hints of drawImage.
+        Image scaled = image.getScaledInstance(WIDTH, HEIGHT, Image.SCALE_AREA_AVERAGING);
+        BufferedImage grey = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = grey.createGraphics();
+        graphics.drawImage(scaled, 0, 0, null);
+        graphics.dispose();
+
+        long hash = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH - 1; x++) {
+                hash <<= 1;
+                if (grey.getRaster().getSample(x, y, 0) > grey.getRaster().getSample(x + 1, y, 0)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /** Returns how many bits of the hashes differ, from 0 for alike to 64. */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
@@ -0,0 +1,215 @@
+package me.mischka.build;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Simplifies Wavefront OBJ meshes by vertex clustering.
+ *
+ * <p>The bounding box of the mesh is divided into a grid with {@code resolution} cells along its
+ * longest side. Every vertex is moved to the average position of the vertices in its cell, and
+ * triangles that collapse as a result are dropped. Texture coordinates, normals, groups and
+ * material assignments are kept, so the result can be converted with the same {@code .sfa}
+ * materials as the source.
+ */
+public final class ObjDecimator {
+    private final int resolution;
+
+    /** Statistics for one decimated mesh. */
+    public static final class Result {
+        public final int sourceVertices;
+        public final int vertices;
+        public final int sourceTriangles;
+        public final int triangles;
+
+        Result(int sourceVertices, int vertices, int sourceTriangles, int triangles) {
+            this.sourceVertices = sourceVertices;
+            this.vertices = vertices;
+            this.sourceTriangles = sourceTriangles;
+            this.triangles = triangles;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d -> %d vertices, %d -> %d triangles",
+                    sourceVertices, vertices, sourceTriangles, triangles);
+        }
+    }
+
+    public ObjDecimator(int resolution) {
+        if (resolution < 1) {
+            throw new IllegalArgumentException("resolution must be positive: " + resolution);
+        }
+        this.resolution = resolution;
+    }
+
+    /**
+     * Decimates {@code source} into {@code target}. {@code mtllib} references are rewritten so they
+     * still point at the source's material libraries.
+     */
+    public Result decimate(File source, File target) throws IOException {
+        List<String> lines = Files.readAllLines(source.toPath(), StandardCharsets.UTF_8);
+
+        List<float[]> positions = new ArrayList<>();
+        for (String line : lines) {
+            if (line.trim().startsWith("v ")) {
+                String[] parts = line.trim().split("\\s+");
+                positions.add(new float[] {
+                        Float.parseFloat(parts[1]), Float.parseFloat(parts[2]), Float.parseFloat(parts[3])
+                });
+            }
+        }
+
+        int[] clusterOf = new int[positions.size()];
+        List<float[]> clusters = cluster(positions, clusterOf);
+
+        int sourceTriangles = 0;
+        int triangles = 0;
+        int vertices = 0;
+        int textureCoordinates = 0;
+        int normals = 0;
+        File sourceDir = source.getAbsoluteFile().getParentFile();
+        File targetDir = target.getAbsoluteFile().getParentFile();
+        targetDir.mkdirs();
+
+        try (BufferedWriter out = Files.newBufferedWriter(target.toPath(), StandardCharsets.UTF_8)) {
+            out.write("# Decimated from " + source.getName() + " with a " + resolution + " cell grid\n");
+            for (float[] cluster : clusters) {
+                out.write(String.format(Locale.US, "v %f %f %f\n", cluster[0], cluster[1], cluster[2]));
+            }
+
+            for (String line : lines) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+
+                if (trimmed.startsWith("v ")) {
+                    // Replaced by the clustered positions written above.
+                    vertices++;
+                } else if (trimmed.startsWith("vt ")) {
+                    textureCoordinates++;
+                    out.write(trimmed);
+                    out.write('\n');
+                } else if (trimmed.startsWith("vn ")) {
+                    normals++;
+                    out.write(trimmed);
+                    out.write('\n');
+                } else if (trimmed.startsWith("f ")) {
+                    String[] corners = trimmed.substring(2).trim().split("\\s+");
+                    int[][] indices = new int[corners.length][];
+                    for (int i = 0; i < corners.length; i++) {
+                        indices[i] = parseCorner(corners[i], vertices, textureCoordinates, normals);
+                    }
+
+                    // Triangulate as a fan and keep the triangles that still have area.
+                    for (int i = 1; i + 1 < indices.length; i++) {
+                        sourceTriangles++;
+                        int a = clusterOf[indices[0][0]];
+                        int b = clusterOf[indices[i][0]];
+                        int c = clusterOf[indices[i + 1][0]];
+                        if (a == b || b == c || a == c) {
+                            continue;
+                        }
+                        triangles++;
+                        out.write("f " + corner(a, indices[0]) + " " + corner(b, indices[i]) + " "
+                                + corner(c, indices[i + 1]) + "\n");
+                    }
+                } else if (trimmed.startsWith("mtllib ")) {
+                    File library = new File(sourceDir, trimmed.substring("mtllib ".length()).trim());
+                    out.write("mtllib " + targetDir.toPath().relativize(library.toPath()).toString()
+                            .replace(File.separatorChar, '/') + "\n");
+                } else {
+                    out.write(trimmed);
+                    out.write('\n');
+                }
+            }
+        }
+
+        return new Result(positions.size(), clusters.size(), sourceTriangles, triangles);
+    }
+
+    private List<float[]> cluster(List<float[]> positions, int[] clusterOf) {
+        float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (float[] position : positions) {
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(min[axis], position[axis]);
+                max[axis] = Math.max(max[axis], position[axis]);
+            }
+        }
+
+        float extent = Math.max(max[0] - min[0], Math.max(max[1] - min[1], max[2] - min[2]));
+        float cellSize = extent > 0 ? extent / resolution : 1;
+
+        Map<Long, Integer> cellToCluster = new HashMap<>();
+        List<float[]> sums = new ArrayList<>();
+        for (int i = 0; i < positions.size(); i++) {
+            float[] position = positions.get(i);
+            long x = (long) ((position[0] - min[0]) / cellSize);
+            long y = (long) ((position[1] - min[1]) / cellSize);
+            long z = (long) ((position[2] - min[2]) / cellSize);
+            long key = (x << 42) | (y << 21) | z;
+
+            Integer cluster = cellToCluster.get(key);
+            if (cluster == null) {
+                cluster = sums.size();
+                cellToCluster.put(key, cluster);
+                sums.add(new float[4]);
+            }
+            float[] sum = sums.get(cluster);
+            sum[0] += position[0];
+            sum[1] += position[1];
+            sum[2] += position[2];
+            sum[3]++;
+            clusterOf[i] = cluster;
+        }
+
+        for (float[] sum : sums) {
+            sum[0] /= sum[3];
+            sum[1] /= sum[3];
+            sum[2] /= sum[3];
+        }
+        return sums;
+    }
+
+    /**
+     * Parses a face corner ({@code v}, {@code v/vt}, {@code v//vn} or {@code v/vt/vn}) into zero-based
+     * indices, -1 where absent. Negative OBJ indices are relative to the elements read so far.
+     */
+    private static int[] parseCorner(String corner, int positions, int textureCoordinates, int normals) {
+        String[] parts = corner.split("/", -1);
+        int[] indices = {-1, -1, -1};
+        int[] counts = {positions, textureCoordinates, normals};
+        for (int i = 0; i < Math.min(3, parts.length); i++) {
+            if (parts[i].isEmpty()) {
+                continue;
+            }
+            int index = Integer.parseInt(parts[i]);
+            indices[i] = index < 0 ? counts[i] + index : index - 1;
+        }
+        return indices;
+    }
+
+    private static String corner(int cluster, int[] indices) {
+        StringBuilder builder = new StringBuilder().append(cluster + 1);
+        if (indices[1] >= 0 || indices[2] >= 0) {
+            builder.append('/');
+            if (indices[1] >= 0) {
+                builder.append(indices[1] + 1);
+            }
+        }
+        if (indices[2] >= 0) {
+            builder.append('/').append(indices[2] + 1);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,318 @@
+package me.mischka.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.IsolationMode;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shrinks the textures of Sceneform models before they are packaged into {@code .sfb} files.
+ *
+ * <p>For every model, the textures named in its {@code .sfa} are optimized with a
+ * {@link TextureOptimizer} into {@code outputDir/name/}, next to a copy of the {@code .sfa} that
+ * points at them; convert that copy instead of the original. The largest texture size depends on
+ * the category of the image that shows the model, looked up through the image list and model
+ * descriptor. Textures that can't be read, or would not get smaller, are left as they are.
+ *
+ * <p>The report lists the texture bytes before and after for each model. If {@code budgetBytes} is
+ * set, the build fails when a model's textures are still over it.
+ */
+@CacheableTask
+public class OptimizeTexturesTask extends DefaultTask {
+    private final WorkerExecutor workerExecutor;
+
+    private List<SceneformAssets.Model> models = new ArrayList<>();
+    private File imageList;
+    private File modelDescriptor;
+    private Map<String, Integer> maxSizes = new HashMap<>();
+    private int defaultMaxSize = 1024;
+    private float jpegQuality = 0.85f;
+    private long budgetBytes;
+    private File outputDir;
+    private File reportFile;
+
+    @Inject
+    public OptimizeTexturesTask(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor;
+    }
+
+    @Internal
+    public List<SceneformAssets.Model> getModels() {
+        return models;
+    }
+
+    public void setModels(List<SceneformAssets.Model> models) {
+        this.models = models;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public List<File> getSources() {
+        List<File> files = new ArrayList<>();
+        for (SceneformAssets.Model model : models) {
+            File sfa = getProject().file(model.getSfa());
+            files.add(sfa);
+            for (String texture : SceneformAssets.readSamplerFiles(read(sfa))) {
+                files.add(getProject().file(texture));
+            }
+        }
+        return files;
+    }
+
+    @Input
+    public List<String> getOutputNames() {
+        List<String> names = new ArrayList<>();
+        for (SceneformAssets.Model model : models) {
+            names.add(outputName(model));
+        }
+        return names;
+    }
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public File getImageList() {
+        return imageList;
+    }
+
+    public void setImageList(File imageList) {
+        this.imageList = imageList;
+    }
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public File getModelDescriptor() {
+        return modelDescriptor;
+    }
+
+    public void setModelDescriptor(File modelDescriptor) {
+        this.modelDescriptor = modelDescriptor;
+    }
+
+    /** Largest texture size by image category. */
+    @Input
+    public Map<String, Integer> getMaxSizes() {
+        return maxSizes;
+    }
+
+    public void setMaxSizes(Map<String, Integer> maxSizes) {
+        this.maxSizes = maxSizes;
+    }
+
+    /** Largest texture size for models whose category is unknown or has no entry in {@code maxSizes}. */
+    @Input
+    public int getDefaultMaxSize() {
+        return defaultMaxSize;
+    }
+
+    public void setDefaultMaxSize(int defaultMaxSize) {
+        this.defaultMaxSize = defaultMaxSize;
+    }
+
+    @Input
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+
+    public void setJpegQuality(float jpegQuality) {
+        this.jpegQuality = jpegQuality;
+    }
+
+    /** Most texture bytes a model may have after optimization, or 0 for no limit. */
+    @Input
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    @OutputFile
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    /** Returns the optimized {@code .sfa} for {@code model}, relative to the project directory. */
+    public String optimizedSfa(SceneformAssets.Model model) {
+        String name = outputName(model);
+        return getProject().relativePath(new File(new File(outputDir, name), name + ".sfa"));
+    }
+
+    @TaskAction
+    public void optimize() throws IOException {
+        Map<String, String> categories = modelCategories();
+        Map<String, File> sizeFiles = new LinkedHashMap<>();
+
+        for (SceneformAssets.Model model : models) {
+            String name = outputName(model);
+            String category = categories.get(name + ".sfb");
+            Integer maxSize = category != null ? maxSizes.get(category) : null;
+            int size = maxSize != null ? maxSize : defaultMaxSize;
+
+            File sfa = getProject().file(model.getSfa());
+            File targetSfa = getProject().file(optimizedSfa(model));
+            File sizeFile = new File(targetSfa.getParentFile(), name + ".sizes");
+            sizeFiles.put(name, sizeFile);
+
+            File projectDir = getProject().getProjectDir();
+            workerExecutor.submit(Optimize.class, config -> {
+                config.setIsolationMode(IsolationMode.NONE);
+                config.setDisplayName("Optimize textures of " + name);
+                config.setParams(projectDir, sfa, targetSfa, sizeFile, size, jpegQuality);
+            });
+        }
+        workerExecutor.await();
+
+        StringBuilder report = new StringBuilder("# model\tbytes before\tbytes after\tbytes saved\n");
+        List<String> overBudget = new ArrayList<>();
+        long totalBefore = 0;
+        long totalAfter = 0;
+        for (Map.Entry<String, File> entry : sizeFiles.entrySet()) {
+            String[] sizes = new String(Files.readAllBytes(entry.getValue().toPath()), StandardCharsets.UTF_8)
+                    .trim().split("\t");
+            long before = Long.parseLong(sizes[0]);
+            long after = Long.parseLong(sizes[1]);
+            totalBefore += before;
+            totalAfter += after;
+            report.append(entry.getKey()).append('\t').append(before).append('\t').append(after).append('\t')
+                    .append(before - after).append('\n');
+            if (budgetBytes > 0 && after > budgetBytes) {
+                overBudget.add(entry.getKey() + " (" + after + " bytes)");
+            }
+        }
+        report.append("total\t").append(totalBefore).append('\t').append(totalAfter).append('\t')
+                .append(totalBefore - totalAfter).append('\n');
+
+        reportFile.getParentFile().mkdirs();
+        Files.write(reportFile.toPath(), report.toString().getBytes(StandardCharsets.UTF_8));
+        getLogger().lifecycle("Textures: " + totalBefore + " -> " + totalAfter + " bytes, see " + reportFile);
+
+        if (!overBudget.isEmpty()) {
+            throw new GradleException("Textures over the budget of " + budgetBytes + " bytes: " + overBudget);
+        }
+    }
+
+    /** Maps model assets to the category of the image that shows them. */
+    private Map<String, String> modelCategories() throws IOException {
+        Map<String, String> modelsByImage = new HashMap<>();
+        for (String[] fields : ContentFiles.readRecords(modelDescriptor)) {
+            if (fields.length > 1) {
+                modelsByImage.put(fields[0], fields[1]);
+            }
+        }
+
+        Map<String, String> categories = new HashMap<>();
+        for (String[] image : ContentFiles.readRecords(imageList)) {
+            String model = modelsByImage.get(image[0]);
+            if (model != null) {
+                categories.put(model, ContentFiles.categoryOf(image));
+            }
+        }
+        return categories;
+    }
+
+    private static String outputName(SceneformAssets.Model model) {
+        return new File(model.getOutput()).getName();
+    }
+
+    private static String read(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Optimizes the textures of one model, writes its rewritten description and records the texture
+     * bytes before and after.
+     */
+    public static class Optimize implements Runnable {
+        private final File projectDir;
+        private final File sfa;
+        private final File targetSfa;
+        private final File sizeFile;
+        private final int maxSize;
+        private final float jpegQuality;
+
+        @Inject
+        public Optimize(File projectDir, File sfa, File targetSfa, File sizeFile, Integer maxSize, Float jpegQuality) {
+            this.projectDir = projectDir;
+            this.sfa = sfa;
+            this.targetSfa = targetSfa;
+            this.sizeFile = sizeFile;
+            this.maxSize = maxSize;
+            this.jpegQuality = jpegQuality;
+        }
+
+        @Override
+        public void run() {
+            try {
+                TextureOptimizer optimizer = new TextureOptimizer(maxSize, jpegQuality);
+                File modelDir = targetSfa.getParentFile();
+                String description = read(sfa);
+                long before = 0;
+                long after = 0;
+
+                for (String path : SceneformAssets.readSamplerFiles(description)) {
+                    File texture = new File(projectDir, path);
+                    if (!texture.isFile()) {
+                        continue;
+                    }
+                    before += texture.length();
+
+                    File optimized = optimizer.optimize(texture, modelDir);
+                    if (optimized == null) {
+                        after += texture.length();
+                        continue;
+                    }
+                    after += optimized.length();
+                    String optimizedPath = projectDir.toPath().relativize(optimized.toPath()).toString()
+                            .replace(File.separatorChar, '/');
+                    description = SceneformAssets.replaceSamplerFile(description, path, optimizedPath);
+                }
+
+                modelDir.mkdirs();
+                Files.write(targetSfa.toPath(), description.getBytes(StandardCharsets.UTF_8));
+                Files.write(sizeFile.toPath(), (before + "\t" + after + "\n").getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
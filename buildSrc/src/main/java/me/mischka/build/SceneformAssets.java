@@ -0,0 +1,161 @@
+package me.mischka.build;
+
+import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileTree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the models to convert with the Sceneform plugin.
+ *
+ * <p>Every {@code .sfa} under the sample data directory describes one model, and its {@code model}
+ * section names the source file to convert. A model is converted into {@code src/main/assets} under
+ * the name of its {@code .sfa}, unless that is overridden. Descriptions whose source file is missing
+ * are skipped.
+ */
+public final class SceneformAssets {
+    private static final Pattern MODEL_SECTION = Pattern.compile("\\bmodel\\s*:\\s*\\{");
+    private static final Pattern FILE_FIELD = Pattern.compile("\\bfile\\s*:\\s*'([^']*)'");
+    private static final Pattern SAMPLERS_SECTION = Pattern.compile("\\bsamplers\\s*:\\s*\\[");
+
+    /** A model to convert. Paths are relative to the project directory. */
+    public static final class Model {
+        private final String source;
+        private final String sfa;
+        private final String output;
+
+        Model(String source, String sfa, String output) {
+            this.source = source;
+            this.sfa = sfa;
+            this.output = output;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getSfa() {
+            return sfa;
+        }
+
+        /** The output path, without the {@code .sfb} extension. */
+        public String getOutput() {
+            return output;
+        }
+
+        @Override
+        public String toString() {
+            return sfa + " -> " + output;
+        }
+    }
+
+    private SceneformAssets() {
+    }
+
+    /**
+     * @param outputNames output names by {@code .sfa} path relative to {@code sampleDataDir}.
+     * @param excludes    Ant-style patterns, relative to {@code sampleDataDir}, of descriptions to skip.
+     */
+    public static List<Model> discover(
+            Project project, File sampleDataDir, Map<String, String> outputNames, List<String> excludes) {
+        ConfigurableFileTree tree = project.fileTree(sampleDataDir);
+        tree.include("**/*.sfa");
+        tree.exclude(excludes);
+
+        List<Model> models = new ArrayList<>();
+        for (File sfa : tree.getFiles()) {
+            String source = readModelSource(sfa);
+            if (source == null || !project.file(source).isFile()) {
+                project.getLogger().info("Skipping " + sfa + ": model source " + source + " not found");
+                continue;
+            }
+
+            String key = sampleDataDir.toPath().relativize(sfa.toPath()).toString().replace(File.separatorChar, '/');
+            String name = outputNames.get(key);
+            if (name == null) {
+                name = sfa.getName().substring(0, sfa.getName().length() - ".sfa".length());
+            }
+            models.add(new Model(source, project.relativePath(sfa), "src/main/assets/" + name));
+        }
+        models.sort((a, b) -> a.getSfa().compareTo(b.getSfa()));
+        return models;
+    }
+
+    /** Returns the source file named in the {@code model} section of an {@code .sfa}. */
+    public static String readModelSource(File sfa) {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(sfa.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Matcher file = findModelSource(text);
+        return file != null ? file.group(1) : null;
+    }
+
+    /** Returns {@code sfa} with the source file of its {@code model} section replaced. */
+    public static String replaceModelSource(String sfa, String source) {
+        Matcher file = findModelSource(sfa);
+        if (file == null) {
+            throw new IllegalArgumentException("No model source in description");
+        }
+        return sfa.substring(0, file.start(1)) + source + sfa.substring(file.end(1));
+    }
+
+    /** Returns the texture files named in the {@code samplers} section of an {@code .sfa}. */
+    public static List<String> readSamplerFiles(String sfa) {
+        List<String> files = new ArrayList<>();
+        int end = samplersEnd(sfa);
+        Matcher samplers = SAMPLERS_SECTION.matcher(sfa);
+        if (end < 0 || !samplers.find()) {
+            return files;
+        }
+        Matcher file = FILE_FIELD.matcher(sfa).region(samplers.end(), end);
+        while (file.find()) {
+            files.add(file.group(1));
+        }
+        return files;
+    }
+
+    /** Returns {@code sfa} with the sampler texture file {@code from} replaced by {@code to}. */
+    public static String replaceSamplerFile(String sfa, String from, String to) {
+        return sfa.replace("file: '" + from + "'", "file: '" + to + "'");
+    }
+
+    /** Returns the offset of the bracket closing the {@code samplers} section, or -1. */
+    private static int samplersEnd(String sfa) {
+        Matcher samplers = SAMPLERS_SECTION.matcher(sfa);
+        if (!samplers.find()) {
+            return -1;
+        }
+        int depth = 1;
+        for (int i = samplers.end(); i < sfa.length(); i++) {
+            char c = sfa.charAt(i);
+            if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Matcher findModelSource(String sfa) {
+        Matcher model = MODEL_SECTION.matcher(sfa);
+        if (!model.find()) {
+            return null;
+        }
+        Matcher file = FILE_FIELD.matcher(sfa);
+        return file.find(model.end()) ? file : null;
+    }
+}
@@ -0,0 +1,141 @@
+package me.mischka.build;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Shrinks model textures for packaging.
+ *
+ * <p>Textures are scaled down to power-of-two dimensions no larger than {@code maxSize}, so the GPU
+ * can build a complete mipmap chain for them, and re-encoded: opaque textures as JPEG, textures
+ * with transparency as PNG. Scaling walks down the mip chain, halving the image with bilinear
+ * filtering until the next halving would pass the target size, which avoids the aliasing of a
+ * single large downscale.
+ */
+public final class TextureOptimizer {
+    private final int maxSize;
+    private final float jpegQuality;
+
+    public TextureOptimizer(int maxSize, float jpegQuality) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Optimizes {@code source} into {@code targetDir}.
+     *
+     * @return the file written, or null if the texture can't be read or would not get smaller.
+     */
+    public File optimize(File source, File targetDir) throws IOException {
+        BufferedImage image = ImageIO.read(source);
+        if (image == null) {
+            return null;
+        }
+
+        int width = targetSize(image.getWidth());
+        int height = targetSize(image.getHeight());
+        boolean resized = width != image.getWidth() || height != image.getHeight();
+        if (resized) {
+            image = scale(image, width, height);
+        }
+
+        boolean transparent = hasTransparency(image);
+        String name = source.getName();
+        int extension = name.lastIndexOf('.');
+        String baseName = extension < 0 ? name : name.substring(0, extension);
+        File target = new File(targetDir, baseName + (transparent ? ".png" : ".jpg"));
+        targetDir.mkdirs();
+
+        if (transparent) {
+            ImageIO.write(image, "png", target);
+        } else {
+            writeJpeg(opaque(image), target);
+        }
+
+        if (!resized && target.length() >= source.length()) {
+            target.delete();
+            return null;
+        }
+        return target;
+    }
+
+    /** Returns the largest power of two that is no larger than {@code size} or the maximum size. */
+    private int targetSize(int size) {
+        return Integer.highestOneBit(Math.min(size, maxSize));
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, type);
+            Graphics2D graphics = next.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            graphics.dispose();
+            current = next;
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    private static boolean hasTransparency(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return false;
+        }
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if ((image.getRGB(x, y) >>> 24) != 0xFF) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static BufferedImage opaque(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR
+                || image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return rgb;
+    }
+
+    private void writeJpeg(BufferedImage image, File target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG encoder available");
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+
+        target.delete();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -1,3 +1,7 @@
+# Scores target images with arcoreimg, printing the path and score of each. To score every image
+# in the image list and check for look-alikes, run make eval-db instead.
 arcoreimg-eval() {
-	arcoreimg eval-img --input_image_path="$1"
+	for image in "$@"; do
+		printf '%s\t%s\n' "$image" "$(arcoreimg eval-img --input_image_path="$image")"
+	done
 }